@@ -0,0 +1,177 @@
+/**
+ * Copyright 2021 Jan Lolling jan.lolling@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jlo.talendcomp.camunda.dmn;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the per row path of the component: clearVariables, setting the input values, evaluate, next
+ * and reading the output values. evaluateRowBound uses the slot and column index methods
+ * the generated MAIN code uses, evaluateRow the name based methods.
+ * The input rows cycle through a fixed set of values, therefore the result cache has a high hit rate if enabled.
+ * Run with: mvn -P jmh verify
+ *
+ * @author jan.lolling@gmail.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DmnRunnerBenchmark {
+
+	@Param({"dish", "surcharge", "collect_sum"})
+	public String dmn;
+	@Param({"false", "true"})
+	public boolean cacheResults;
+	@Param({"CAMUNDA", "COMPILED", "BITSET"})
+	public String evaluationMode;
+	private DmnRunner runner;
+	private String[] inputNames;
+	private int[] inputSlots;
+	private int outputColumn;
+	private Object[][] rows;
+	private int rowIndex = 0;
+
+	@Setup
+	public void setup() throws Exception {
+		runner = new DmnRunner();
+		runner.setCacheResults(cacheResults);
+		runner.setEvaluationMode(evaluationMode);
+		if ("dish".equals(dmn)) {
+			runner.loadDmnFromResource("decision", "/dish-decision.dmn11.dmn");
+			inputNames = new String[] {"season", "guestCount"};
+			String[] seasons = new String[] {"Fall", "Winter", "Spring", "Summer"};
+			int[] guestCounts = new int[] {2, 6, 8, 10};
+			rows = new Object[seasons.length * guestCounts.length][];
+			int r = 0;
+			for (String season : seasons) {
+				for (int guestCount : guestCounts) {
+					rows[r++] = new Object[] {season, guestCount};
+				}
+			}
+			runner.addExpectedOutputVariable("desiredDish");
+		} else if ("surcharge".equals(dmn)) {
+			runner.loadDmnFromResource("surcharges", "/surcharge_example.dmn");
+			inputNames = new String[] {"material", "finish", "foiling", "width", "length"};
+			String[] materials = new String[] {"Stahl", "Aluminium", "Kupfer", "Plaste"};
+			String[] finishes = new String[] {"gebürstet", "poliert"};
+			int[] widths = new int[] {1500, 2500};
+			rows = new Object[materials.length * finishes.length * widths.length][];
+			int r = 0;
+			for (String material : materials) {
+				for (String finish : finishes) {
+					for (int width : widths) {
+						rows[r++] = new Object[] {material, finish, "Gold", width, 6000};
+					}
+				}
+			}
+			runner.addExpectedOutputVariable("surcharge");
+		} else if ("collect_sum".equals(dmn)) {
+			runner.loadDmnFromResource("surcharge", "/collect_sum_example.dmn");
+			inputNames = new String[] {"product", "type", "grade", "width"};
+			String[] grades = new String[] {"4307", "4301", "4404", "4571"};
+			int[] widths = new int[] {1000, 2000, 3000, 4000};
+			rows = new Object[grades.length * widths.length][];
+			int r = 0;
+			for (String grade : grades) {
+				for (int width : widths) {
+					rows[r++] = new Object[] {"Product1", "1", grade, width};
+				}
+			}
+			runner.addExpectedOutputVariable("surcharge");
+		} else {
+			throw new IllegalArgumentException("Unknown dmn: " + dmn);
+		}
+		inputSlots = new int[inputNames.length];
+		for (int i = 0; i < inputNames.length; i++) {
+			runner.addAvailableInputVariable(inputNames[i]);
+			inputSlots[i] = runner.bindInputVariable(inputNames[i]);
+		}
+		if ("dish".equals(dmn)) {
+			outputColumn = runner.bindOutputColumn("desiredDish", "String", true, null);
+		} else {
+			outputColumn = runner.bindOutputColumn("surcharge", "Integer", true, null);
+		}
+		runner.validateInputVariables();
+		runner.validateOutputVariables();
+	}
+
+	@TearDown
+	public void tearDown() {
+		runner.close();
+	}
+
+	@Benchmark
+	public void evaluateRow(Blackhole bh) throws Exception {
+		Object[] row = rows[rowIndex];
+		if (++rowIndex == rows.length) {
+			rowIndex = 0;
+		}
+		runner.clearVariables();
+		for (int i = 0; i < inputNames.length; i++) {
+			runner.addInputValue(inputNames[i], row[i]);
+		}
+		runner.evaluate();
+		if ("dish".equals(dmn)) {
+			while (runner.next()) {
+				bh.consume(runner.getOutputValueAsString("desiredDish", true));
+			}
+		} else {
+			while (runner.next()) {
+				bh.consume(runner.getOutputValueAsInteger("surcharge", true));
+			}
+		}
+	}
+
+	@Benchmark
+	public void evaluateRowBound(Blackhole bh) throws Exception {
+		Object[] row = rows[rowIndex];
+		if (++rowIndex == rows.length) {
+			rowIndex = 0;
+		}
+		runner.clearVariables();
+		for (int i = 0; i < inputSlots.length; i++) {
+			runner.setInputValue(inputSlots[i], row[i]);
+		}
+		runner.evaluate();
+		if ("dish".equals(dmn)) {
+			while (runner.next()) {
+				bh.consume(runner.getOutputValueAsString(outputColumn));
+			}
+		} else {
+			while (runner.next()) {
+				bh.consume(runner.getOutputValueAsInteger(outputColumn));
+			}
+		}
+	}
+
+}
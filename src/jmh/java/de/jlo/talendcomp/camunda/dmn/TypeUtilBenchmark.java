@@ -0,0 +1,101 @@
+/**
+ * Copyright 2021 Jan Lolling jan.lolling@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jlo.talendcomp.camunda.dmn;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the conversions of the input and output values: TypeUtil and GenericDateUtil.parseDate.
+ * Run with: mvn -P jmh verify
+ *
+ * @author jan.lolling@gmail.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TypeUtilBenchmark {
+
+	private final TypeUtil typeUtil = new TypeUtil();
+
+	@Benchmark
+	public Integer convertStringToInteger() throws Exception {
+		return typeUtil.convertToInteger("12345", null);
+	}
+
+	@Benchmark
+	public Long convertStringToLong() throws Exception {
+		return typeUtil.convertToLong("1234567890", null);
+	}
+
+	@Benchmark
+	public Double convertStringToDouble() throws Exception {
+		return typeUtil.convertToDouble("12345.678", null);
+	}
+
+	@Benchmark
+	public Double convertStringToDoubleGerman() throws Exception {
+		return typeUtil.convertToDouble("12.345,678", "de");
+	}
+
+	@Benchmark
+	public Object convertStringToBigDecimal() throws Exception {
+		return typeUtil.convertToBigDecimal("12345.678", null);
+	}
+
+	@Benchmark
+	public Boolean convertStringToBoolean() throws Exception {
+		return typeUtil.convertToBoolean("true", null);
+	}
+
+	@Benchmark
+	public String convertDoubleToString() throws Exception {
+		return typeUtil.convertToString(Double.valueOf(12345.678), null);
+	}
+
+	@Benchmark
+	public Object convertStringToDateWithPattern() throws Exception {
+		return typeUtil.convertToDate("2021-05-02 12:34:56", "yyyy-MM-dd HH:mm:ss", null);
+	}
+
+	@Benchmark
+	public Object parseDate() throws Exception {
+		return GenericDateUtil.parseDate("2021-05-02 12:34:56");
+	}
+
+	@Benchmark
+	public Object parseDateOnly() throws Exception {
+		return GenericDateUtil.parseDate("2021-05-02");
+	}
+
+	@Benchmark
+	public Object parseDateGerman() throws Exception {
+		return GenericDateUtil.parseDate("02.05.2021");
+	}
+
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright 2021 Jan Lolling jan.lolling@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jlo.talendcomp.camunda.dmn;
+
+import org.camunda.bpm.dmn.engine.DmnDecisionResult;
+
+/**
+ * Results of a batch evaluation indexed by the input row.
+ * Rows with identical input values share the same decision result,
+ * therefore the results are stored only once per distinct input.
+ *
+ * @author jan.lolling@gmail.com
+ */
+public final class BatchResult {
+
+	private final int[] rowToResult;
+	private final DmnDecisionResult[] distinctResults;
+
+	BatchResult(int[] rowToResult, DmnDecisionResult[] distinctResults) {
+		this.rowToResult = rowToResult;
+		this.distinctResults = distinctResults;
+	}
+
+	/**
+	 * @return number of input rows
+	 */
+	public int size() {
+		return rowToResult.length;
+	}
+
+	/**
+	 * @return number of distinct input rows which were actually evaluated or taken from the cache
+	 */
+	public int countDistinctRows() {
+		return distinctResults.length;
+	}
+
+	/**
+	 * returns the decision result for an input row
+	 * @param row the index of the input row
+	 * @return the result
+	 */
+	public DmnDecisionResult getResult(int row) {
+		return distinctResults[rowToResult[row]];
+	}
+
+	/**
+	 * @param row the index of the input row
+	 * @return number of result records for this input row
+	 */
+	public int countResultRows(int row) {
+		DmnDecisionResult result = getResult(row);
+		return result != null ? result.size() : 0;
+	}
+
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright 2021 Jan Lolling jan.lolling@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jlo.talendcomp.camunda.dmn;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Matches the rules of a compiled decision table with bitsets.
+ * For every input column the result of all input entries for a value is kept as rule bitset
+ * and the bitsets of the columns are combined with AND.
+ * Input values repeat much more often per column than the combination of all input values,
+ * therefore the bitsets are memoized per column and value.
+ * The memo is bounded, if a column exceeds the maximum number of values its memo is cleared.
+ * This class is thread safe.
+ *
+ * @author jan.lolling@gmail.com
+ */
+public final class BitsetRuleMatcher {
+
+	public static final int DEFAULT_MAX_VALUES_PER_COLUMN = 10000;
+	private static final Object NULL_KEY = new Object();
+	private final CompiledDecisionTable table;
+	private final int countWords;
+	private final ConcurrentHashMap<Object, ColumnBits>[] memos;
+	private final int maxValuesPerColumn;
+
+	/**
+	 * The rules an input value can match in one column
+	 */
+	static final class ColumnBits {
+
+		/** rules matching the value or which have to be checked by the FEEL engine */
+		final long[] possible;
+		/** rules which have to be checked by the FEEL engine, null if there are none */
+		final long[] unknown;
+
+		ColumnBits(long[] possible, long[] unknown) {
+			this.possible = possible;
+			this.unknown = unknown;
+		}
+
+	}
+
+	/**
+	 * creates the matcher
+	 * @param table the compiled decision table
+	 * @param maxValuesPerColumn the maximum number of memoized values per input column, 0 or less means no memo
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	BitsetRuleMatcher(CompiledDecisionTable table, int maxValuesPerColumn) {
+		this.table = table;
+		this.maxValuesPerColumn = maxValuesPerColumn;
+		countWords = (table.countRules() + 63) / 64;
+		memos = new ConcurrentHashMap[table.countInputs()];
+		for (int i = 0; i < memos.length; i++) {
+			memos[i] = new ConcurrentHashMap<>();
+		}
+	}
+
+	/**
+	 * returns the rules the value can match in the input column
+	 * @param input the index of the input column
+	 * @param value the tested input value
+	 * @return the bitsets (must not be modified)
+	 */
+	ColumnBits getColumnBits(int input, Object value) {
+		Object key = getMemoKey(value);
+		if (key == null || maxValuesPerColumn <= 0) {
+			return computeColumnBits(input, value);
+		}
+		ConcurrentHashMap<Object, ColumnBits> memo = memos[input];
+		ColumnBits bits = memo.get(key);
+		if (bits == null) {
+			bits = computeColumnBits(input, value);
+			if (memo.size() >= maxValuesPerColumn) {
+				memo.clear();
+			}
+			memo.put(key, bits);
+		}
+		return bits;
+	}
+
+	/**
+	 * only immutable values with a reliable equals can be memoized
+	 * @return the key or null if the value cannot be memoized
+	 */
+	private static Object getMemoKey(Object value) {
+		if (value == null) {
+			return NULL_KEY;
+		} else if (value instanceof String
+				|| value instanceof Boolean
+				|| value instanceof Integer
+				|| value instanceof Long
+				|| value instanceof Short
+				|| value instanceof Byte
+				|| value instanceof Double
+				|| value instanceof Float
+				|| value instanceof BigDecimal
+				|| value instanceof BigInteger) {
+			return value;
+		} else {
+			return null;
+		}
+	}
+
+	private ColumnBits computeColumnBits(int input, Object value) {
+		long[] possible = new long[countWords];
+		long[] unknown = null;
+		for (int r = 0; r < table.countRules(); r++) {
+			int result = table.test(input, r, value);
+			if (result == CompiledUnaryTest.NO_MATCH) {
+				continue;
+			}
+			possible[r >>> 6] |= 1L << r;
+			if (result == CompiledUnaryTest.UNKNOWN) {
+				if (unknown == null) {
+					unknown = new long[countWords];
+				}
+				unknown[r >>> 6] |= 1L << r;
+			}
+		}
+		return new ColumnBits(possible, unknown);
+	}
+
+	static boolean isSet(long[] bits, int rule) {
+		return (bits[rule >>> 6] & (1L << rule)) != 0;
+	}
+
+	int countWords() {
+		return countWords;
+	}
+
+	/**
+	 * @param input the index of the input column
+	 * @return the number of memoized values of the column
+	 */
+	public int countMemoizedValues(int input) {
+		return memos[input].size();
+	}
+
+}
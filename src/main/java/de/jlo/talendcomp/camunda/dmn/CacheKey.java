@@ -0,0 +1,165 @@
+/**
+ * Copyright 2021 Jan Lolling jan.lolling@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jlo.talendcomp.camunda.dmn;
+
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Key for the result cache built from the ordered input variables.
+ * The instance used for the current row is reused for every row,
+ * only the key stored in the cache is a copy of it.
+ * That way a cache hit does not allocate anything.
+ *
+ * @author jan.lolling@gmail.com
+ */
+public final class CacheKey {
+
+	private String[] names;
+	private Object[] values;
+	private int size = 0;
+	private int hash = 1;
+
+	public CacheKey() {
+		this(16);
+	}
+
+	public CacheKey(int initialCapacity) {
+		names = new String[initialCapacity];
+		values = new Object[initialCapacity];
+	}
+
+	/**
+	 * removes all values. The slot arrays will be reused
+	 */
+	public void clear() {
+		Arrays.fill(values, 0, size, null);
+		size = 0;
+		hash = 1;
+	}
+
+	/**
+	 * adds or replaces the value for a variable
+	 * @param name the variable name
+	 * @param value the value
+	 */
+	public void set(String name, Object value) {
+		for (int i = 0; i < size; i++) {
+			if (names[i] == name || names[i].equals(name)) {
+				values[i] = value;
+				rehash();
+				return;
+			}
+		}
+		if (size == names.length) {
+			names = Arrays.copyOf(names, size * 2);
+			values = Arrays.copyOf(values, size * 2);
+		}
+		names[size] = name;
+		values[size] = value;
+		size++;
+		hash = 31 * (31 * hash + name.hashCode()) + hashValue(value);
+	}
+
+	private void rehash() {
+		int h = 1;
+		for (int i = 0; i < size; i++) {
+			h = 31 * (31 * h + names[i].hashCode()) + hashValue(values[i]);
+		}
+		hash = h;
+	}
+
+	private static int hashValue(Object value) {
+		return value != null ? value.hashCode() : 0;
+	}
+
+	/**
+	 * creates an independent copy to be stored in the cache.
+	 * Date values are mutable and will be copied, a later change of the row value must not change the stored key.
+	 * @return the copy
+	 */
+	public CacheKey copy() {
+		CacheKey c = new CacheKey(0);
+		c.names = Arrays.copyOf(names, size);
+		c.values = Arrays.copyOf(values, size);
+		for (int i = 0; i < size; i++) {
+			if (c.values[i] instanceof Date) {
+				// clone keeps the class, e.g. java.sql.Timestamp with its nanos
+				c.values[i] = ((Date) c.values[i]).clone();
+			}
+		}
+		c.size = size;
+		c.hash = hash;
+		return c;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public Object getValue(int index) {
+		return values[index];
+	}
+
+	public String getName(int index) {
+		return names[index];
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (o instanceof CacheKey == false) {
+			return false;
+		}
+		CacheKey other = (CacheKey) o;
+		if (other.hash != hash || other.size != size) {
+			return false;
+		}
+		for (int i = 0; i < size; i++) {
+			if (names[i] != other.names[i] && names[i].equals(other.names[i]) == false) {
+				return false;
+			}
+			Object v1 = values[i];
+			Object v2 = other.values[i];
+			if (v1 != v2 && (v1 == null || v1.equals(v2) == false)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			sb.append(names[i]);
+			sb.append("=");
+			sb.append(values[i]);
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,254 @@
+/**
+ * Copyright 2021 Jan Lolling jan.lolling@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jlo.talendcomp.camunda.dmn;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.camunda.bpm.dmn.engine.impl.DefaultDmnEngineConfiguration;
+import org.camunda.bpm.dmn.engine.impl.DmnDecisionTableImpl;
+import org.camunda.bpm.dmn.engine.impl.DmnDecisionTableOutputImpl;
+import org.camunda.bpm.dmn.engine.impl.DmnDecisionTableRuleImpl;
+import org.camunda.bpm.dmn.engine.impl.DmnExpressionImpl;
+import org.camunda.bpm.dmn.engine.impl.evaluation.ExpressionEvaluationHandler;
+import org.camunda.bpm.dmn.engine.impl.hitpolicy.HitPolicyEntry;
+import org.camunda.bpm.engine.variable.Variables;
+import org.camunda.bpm.engine.variable.type.ValueType;
+import org.camunda.bpm.engine.variable.value.TypedValue;
+import org.camunda.bpm.model.dmn.BuiltinAggregator;
+import org.camunda.bpm.model.dmn.HitPolicy;
+
+/**
+ * The aggregation of a decision table with the hit policy COLLECT and SUM, MIN, MAX or COUNT
+ * computed with primitive values. The output entries of the rules are number literals,
+ * they are evaluated and converted once when the table is compiled.
+ * The aggregation of the matching rules does not create an output entry per rule.
+ * The conversion rules of the Camunda hit policy handlers are kept: the values are aggregated as Integer
+ * if all values can be converted to Integer, otherwise as Long and otherwise as Double.
+ * If the values of the matching rules cannot be aggregated, the Camunda handler has to do it (and reports the error).
+ * This class is immutable.
+ *
+ * @author jan.lolling@gmail.com
+ */
+final class CollectAggregation {
+
+	/** the result of {@link #aggregate(int[], int)} if the Camunda handler must aggregate the values */
+	static final TypedValue NOT_AGGREGATED = Variables.untypedNullValue();
+	private static final Pattern NUMBER_LITERAL = Pattern.compile("-?[0-9]+(\\.[0-9]+)?");
+	private static final int AS_INTEGER = 1;
+	private static final int AS_LONG = 2;
+	private static final int AS_DOUBLE = 4;
+	private final BuiltinAggregator aggregator;
+	private final String outputName;
+	/** per rule: false if the rule has no output entry */
+	private final boolean[] hasValue;
+	/** per rule: the conversions the Camunda handler can apply to the value */
+	private final int[] conversions;
+	private final int[] intValues;
+	private final long[] longValues;
+	private final double[] doubleValues;
+
+	private CollectAggregation(BuiltinAggregator aggregator, String outputName, int countRules) {
+		this.aggregator = aggregator;
+		this.outputName = outputName;
+		this.hasValue = new boolean[countRules];
+		this.conversions = new int[countRules];
+		this.intValues = new int[countRules];
+		this.longValues = new long[countRules];
+		this.doubleValues = new double[countRules];
+	}
+
+	/**
+	 * prepares the aggregation of a decision table
+	 * @param decisionTable the decision table
+	 * @param configuration the engine configuration
+	 * @param expressionHandler the evaluation of the output entries
+	 * @return the aggregation or null if the table has an other hit policy, more than one output
+	 * or an output entry which is not a number literal
+	 */
+	static CollectAggregation create(DmnDecisionTableImpl decisionTable, DefaultDmnEngineConfiguration configuration, ExpressionEvaluationHandler expressionHandler) {
+		HitPolicyEntry hitPolicy = decisionTable.getHitPolicyHandler() != null ? decisionTable.getHitPolicyHandler().getHitPolicyEntry() : null;
+		if (hitPolicy == null || hitPolicy.getHitPolicy() != HitPolicy.COLLECT || hitPolicy.getAggregator() == null) {
+			return null;
+		}
+		if (decisionTable.getOutputs().size() != 1) {
+			return null;
+		}
+		DmnDecisionTableOutputImpl output = decisionTable.getOutputs().get(0);
+		List<DmnDecisionTableRuleImpl> rules = decisionTable.getRules();
+		CollectAggregation aggregation = new CollectAggregation(hitPolicy.getAggregator(), output.getOutputName(), rules.size());
+		for (int r = 0; r < rules.size(); r++) {
+			DmnExpressionImpl conclusion = rules.get(r).getConclusions().get(0);
+			if (CompiledDecisionTable.isNonEmptyExpression(conclusion) == false) {
+				continue;
+			}
+			// COUNT does not use the values, but the Camunda handler evaluates and converts them like for the other aggregators
+			aggregation.hasValue[r] = true;
+			if (CompiledDecisionTable.isFeel(expressionHandler, conclusion.getExpressionLanguage(), configuration.getDefaultOutputEntryExpressionLanguage()) == false
+					|| NUMBER_LITERAL.matcher(conclusion.getExpression().trim()).matches() == false) {
+				return null;
+			}
+			String language = conclusion.getExpressionLanguage() != null ? conclusion.getExpressionLanguage() : configuration.getDefaultOutputEntryExpressionLanguage();
+			try {
+				Object value = expressionHandler.evaluateExpression(language, conclusion, Variables.emptyVariableContext());
+				aggregation.setValue(r, output.getTypeDefinition().transform(value));
+			} catch (RuntimeException e) {
+				// the error will be reported by the Camunda evaluation
+				return null;
+			}
+		}
+		return aggregation;
+	}
+
+	/**
+	 * keeps the value with the conversions of the Camunda handler (AbstractCollectNumberHitPolicyHandler)
+	 */
+	private void setValue(int rule, TypedValue typedValue) {
+		ValueType type = typedValue.getType();
+		Object value = typedValue.getValue();
+		if (value == null) {
+			// only a sum ignores null values, leave it to the Camunda handler
+			return;
+		}
+		if (ValueType.INTEGER.equals(type) || (type == null && value instanceof Integer)) {
+			conversions[rule] |= AS_INTEGER;
+			intValues[rule] = (Integer) value;
+		}
+		if (ValueType.LONG.equals(type) || (type == null && value instanceof Long)) {
+			conversions[rule] |= AS_LONG;
+			longValues[rule] = (Long) value;
+		} else if (type == null) {
+			try {
+				longValues[rule] = Long.valueOf(value.toString());
+				conversions[rule] |= AS_LONG;
+			} catch (NumberFormatException e) {
+				// not convertible
+			}
+		}
+		if (ValueType.DOUBLE.equals(type) || (type == null && value instanceof Double)) {
+			conversions[rule] |= AS_DOUBLE;
+			doubleValues[rule] = (Double) value;
+		} else if (type == null) {
+			try {
+				doubleValues[rule] = Double.valueOf(value.toString());
+				conversions[rule] |= AS_DOUBLE;
+			} catch (NumberFormatException e) {
+				// not convertible
+			}
+		}
+	}
+
+	/**
+	 * @param rules the matching rules
+	 * @param count the number of matching rules
+	 * @return the name of the result or null if no matching rule has an output entry
+	 */
+	String getResultName(int[] rules, int count) {
+		for (int c = 0; c < count; c++) {
+			if (hasValue[rules[c]]) {
+				return outputName;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * aggregates the values of the matching rules
+	 * @param rules the matching rules in document order
+	 * @param count the number of matching rules
+	 * @return the aggregated value, null if there are no values or NOT_AGGREGATED if the values must be aggregated by the Camunda handler
+	 */
+	TypedValue aggregate(int[] rules, int count) {
+		int countValues = 0;
+		int common = AS_INTEGER | AS_LONG | AS_DOUBLE;
+		for (int c = 0; c < count; c++) {
+			int r = rules[c];
+			if (hasValue[r]) {
+				countValues++;
+				common &= conversions[r];
+			}
+		}
+		if (aggregator == BuiltinAggregator.COUNT) {
+			return Variables.integerValue(countValues);
+		} else if (countValues == 0) {
+			return null;
+		} else if ((common & AS_INTEGER) != 0) {
+			return Variables.integerValue((int) aggregateLong(rules, count, intValues, null));
+		} else if ((common & AS_LONG) != 0) {
+			return Variables.longValue(aggregateLong(rules, count, null, longValues));
+		} else if ((common & AS_DOUBLE) != 0) {
+			return Variables.doubleValue(aggregateDouble(rules, count));
+		} else {
+			return NOT_AGGREGATED;
+		}
+	}
+
+	/**
+	 * the int sum overflows like the Integer sum of the Camunda handler because only the low 32 bits are kept
+	 */
+	private long aggregateLong(int[] rules, int count, int[] ints, long[] longs) {
+		long result = 0;
+		boolean first = true;
+		for (int c = 0; c < count; c++) {
+			int r = rules[c];
+			if (hasValue[r] == false) {
+				continue;
+			}
+			long value = ints != null ? ints[r] : longs[r];
+			if (first) {
+				result = value;
+				first = false;
+			} else if (aggregator == BuiltinAggregator.SUM) {
+				result = result + value;
+			} else if (aggregator == BuiltinAggregator.MIN) {
+				result = Math.min(result, value);
+			} else {
+				result = Math.max(result, value);
+			}
+		}
+		return result;
+	}
+
+	private double aggregateDouble(int[] rules, int count) {
+		double result = 0;
+		boolean first = true;
+		for (int c = 0; c < count; c++) {
+			int r = rules[c];
+			if (hasValue[r] == false) {
+				continue;
+			}
+			double value = doubleValues[r];
+			if (first) {
+				// the Camunda sum starts with 0.0, -0.0 + 0.0 is 0.0
+				result = aggregator == BuiltinAggregator.SUM ? 0.0 + value : value;
+				first = false;
+			} else if (aggregator == BuiltinAggregator.SUM) {
+				result = result + value;
+			} else if (aggregator == BuiltinAggregator.MIN) {
+				// Collections.min uses Double.compareTo
+				result = Double.compare(value, result) < 0 ? value : result;
+			} else {
+				result = Double.compare(value, result) > 0 ? value : result;
+			}
+		}
+		return result;
+	}
+
+	BuiltinAggregator getAggregator() {
+		return aggregator;
+	}
+
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright 2021 Jan Lolling jan.lolling@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jlo.talendcomp.camunda.dmn;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.camunda.bpm.dmn.engine.DmnDecision;
+import org.camunda.bpm.dmn.engine.DmnDecisionLogic;
+import org.camunda.bpm.dmn.engine.DmnDecisionResultEntries;
+import org.camunda.bpm.dmn.engine.delegate.DmnEvaluatedOutput;
+import org.camunda.bpm.dmn.engine.impl.DefaultDmnEngineConfiguration;
+import org.camunda.bpm.dmn.engine.impl.DmnDecisionResultEntriesImpl;
+import org.camunda.bpm.dmn.engine.impl.DmnDecisionTableImpl;
+import org.camunda.bpm.dmn.engine.impl.DmnDecisionTableOutputImpl;
+import org.camunda.bpm.dmn.engine.impl.hitpolicy.HitPolicyEntry;
+import org.camunda.bpm.engine.variable.context.VariableContext;
+import org.camunda.bpm.model.dmn.HitPolicy;
+
+/**
+ * Evaluates a decision table with the hit policy COLLECT without aggregation and delivers
+ * the result records one by one. The evaluation finds only the matching rules,
+ * the output entries of a rule are evaluated when its result record is requested.
+ * Therefore the result records of a row are not buffered and the memory does not grow with the number of matching rules.
+ * The output entries are evaluated with the variables of the last evaluation, they must not be changed
+ * until all result records are read.
+ * The input entries are tested by the compiled decision table like in the evaluation mode COMPILED.
+ * The decision table evaluation listeners are not notified, the executed decisions are counted
+ * by the {@link DmnMetricCollector} of the engine.
+ * This class is not thread safe, every runner needs its own stream.
+ *
+ * @author jan.lolling@gmail.com
+ */
+public final class CollectResultStream {
+
+	private final DmnDecision decision;
+	private final CompiledDecisionTable compiled;
+	private final CompiledDecisionTableEvaluationHandler handler;
+	private final List<DmnDecisionTableOutputImpl> outputs;
+	private final DmnMetricCollector metricCollector;
+	private final long executedDecisionElements;
+	private VariableContext variableContext = null;
+	private CompiledDecisionTableEvaluationHandler.RuleMatches matches = null;
+	private int position = 0;
+
+	/**
+	 * prepares the stream for a decision
+	 * @param decision the decision, must be streamable
+	 * @param configuration the configuration of the engine the decision was parsed with
+	 * @param compiled the compiled decision table or null to compile it now
+	 */
+	CollectResultStream(DmnDecision decision, DefaultDmnEngineConfiguration configuration, CompiledDecisionTable compiled) {
+		if (isStreamable(decision) == false) {
+			throw new IllegalArgumentException("The decision: " + (decision != null ? decision.getKey() : null) + " is not a decision table with hit policy COLLECT without aggregation and without required decisions");
+		}
+		DmnDecisionTableImpl decisionTable = (DmnDecisionTableImpl) decision.getDecisionLogic();
+		if (compiled == null) {
+			compiled = new CompiledDecisionTable(decisionTable, configuration);
+		}
+		this.decision = decision;
+		this.compiled = compiled;
+		this.handler = new CompiledDecisionTableEvaluationHandler(configuration, Collections.singletonMap(decisionTable, compiled));
+		this.outputs = decisionTable.getOutputs();
+		this.metricCollector = configuration.getEngineMetricCollector() instanceof DmnMetricCollector ? (DmnMetricCollector) configuration.getEngineMetricCollector() : null;
+		this.executedDecisionElements = handler.countExecutedDecisionElements(decisionTable);
+	}
+
+	/**
+	 * checks if the results of the decision can be streamed
+	 * @param decision the decision
+	 * @return true if the decision is a decision table with the hit policy COLLECT without aggregation and without required decisions
+	 */
+	public static boolean isStreamable(DmnDecision decision) {
+		if (decision == null || decision.getRequiredDecisions().isEmpty() == false) {
+			return false;
+		}
+		DmnDecisionLogic logic = decision.getDecisionLogic();
+		if (logic instanceof DmnDecisionTableImpl == false) {
+			return false;
+		}
+		HitPolicyEntry hitPolicy = ((DmnDecisionTableImpl) logic).getHitPolicyHandler().getHitPolicyEntry();
+		return hitPolicy.getHitPolicy() == HitPolicy.COLLECT && hitPolicy.getAggregator() == null;
+	}
+
+	/**
+	 * evaluates the inputs and finds the matching rules
+	 * @param variableContext the input variables, must not be changed until all result records are read
+	 */
+	public void evaluate(VariableContext variableContext) {
+		if (variableContext == null) {
+			throw new IllegalArgumentException("variableContext cannot be null");
+		}
+		this.variableContext = variableContext;
+		matches = null;
+		position = 0;
+		matches = handler.matchRules(compiled, variableContext);
+		if (metricCollector != null) {
+			metricCollector.addExecutedDecisions(1, executedDecisionElements);
+		}
+	}
+
+	/**
+	 * @return the number of result records of the last evaluation
+	 */
+	public int size() {
+		return matches != null ? matches.count : 0;
+	}
+
+	public boolean hasNext() {
+		return matches != null && position < matches.count;
+	}
+
+	/**
+	 * evaluates the output entries of the next matching rule
+	 * @return the result record, the same as the record of the Camunda engine for this rule
+	 */
+	public DmnDecisionResultEntries next() {
+		if (hasNext() == false) {
+			throw new IllegalStateException("No further result record");
+		}
+		int rule = matches.rules[position++];
+		DmnDecisionResultEntriesImpl entries = new DmnDecisionResultEntriesImpl();
+		Map<String, DmnEvaluatedOutput> outputEntries = handler.evaluateOutputEntries(compiled, outputs, rule, variableContext);
+		for (DmnEvaluatedOutput output : outputEntries.values()) {
+			entries.putValue(output.getOutputName(), output.getValue());
+		}
+		return entries;
+	}
+
+	public DmnDecision getDecision() {
+		return decision;
+	}
+
+}
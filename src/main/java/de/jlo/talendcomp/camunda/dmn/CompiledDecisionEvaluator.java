@@ -0,0 +1,471 @@
+/**
+ * Copyright 2021 Jan Lolling jan.lolling@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jlo.talendcomp.camunda.dmn;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.camunda.bpm.dmn.engine.DmnDecision;
+import org.camunda.bpm.dmn.engine.DmnDecisionLogic;
+import org.camunda.bpm.dmn.engine.DmnDecisionResult;
+import org.camunda.bpm.dmn.engine.DmnEngine;
+import org.camunda.bpm.dmn.engine.delegate.DmnDecisionLogicEvaluationEvent;
+import org.camunda.bpm.dmn.engine.impl.DefaultDmnDecisionContext;
+import org.camunda.bpm.dmn.engine.impl.DefaultDmnEngineConfiguration;
+import org.camunda.bpm.dmn.engine.impl.DmnDecisionTableImpl;
+import org.camunda.bpm.dmn.engine.impl.evaluation.DmnDecisionLogicEvaluationHandler;
+import org.camunda.bpm.engine.variable.VariableMap;
+import org.camunda.bpm.engine.variable.Variables;
+import org.camunda.bpm.engine.variable.context.VariableContext;
+import org.camunda.bpm.engine.variable.value.TypedValue;
+
+/**
+ * Evaluates a decision (including the required decisions) with compiled decision tables.
+ * The decision tables are compiled when the evaluator is created.
+ * Optionally the results of the required decisions are cached, keyed by the variables they use.
+ * Multiple decisions of the same DRG can be evaluated in one pass, a decision required by
+ * more than one of them is evaluated only once.
+ * This class is thread safe.
+ *
+ * @author jan.lolling@gmail.com
+ */
+public class CompiledDecisionEvaluator {
+
+	private final DmnDecision decision;
+	private final List<DmnDecision> decisions;
+	private final Map<DmnDecisionTableImpl, CompiledDecisionTable> compiledTables = new IdentityHashMap<>();
+	private final CompiledDecisionContext decisionContext;
+	private int countConditions = 0;
+	private int countCompiledConditions = 0;
+	private final boolean bitsetMatching;
+	private final Map<DmnDecision, RequiredDecisionMemo> requiredDecisionMemos = new IdentityHashMap<>();
+
+	/**
+	 * compiles the decision tables of the decision
+	 * @param dmnEngine the engine the decision was parsed with
+	 * @param decision the decision
+	 * @throws Exception if the engine is not based on the Camunda default configuration
+	 */
+	public CompiledDecisionEvaluator(DmnEngine dmnEngine, DmnDecision decision) throws Exception {
+		this(dmnEngine, decision, false);
+	}
+
+	/**
+	 * compiles the decision tables of the decision
+	 * @param dmnEngine the engine the decision was parsed with
+	 * @param decision the decision
+	 * @param bitsetMatching true: match the rules with memoized rule bitsets per input column instead of the indexes
+	 * @throws Exception if the engine is not based on the Camunda default configuration
+	 */
+	public CompiledDecisionEvaluator(DmnEngine dmnEngine, DmnDecision decision, boolean bitsetMatching) throws Exception {
+		this(dmnEngine, decision, bitsetMatching, 0);
+	}
+
+	/**
+	 * compiles the decision tables of the decision
+	 * @param dmnEngine the engine the decision was parsed with
+	 * @param decision the decision
+	 * @param bitsetMatching true: match the rules with memoized rule bitsets per input column instead of the indexes
+	 * @param requiredDecisionCacheSize max number of cached results per required decision, 0 or less means no cache
+	 * @throws Exception if the engine is not based on the Camunda default configuration
+	 */
+	public CompiledDecisionEvaluator(DmnEngine dmnEngine, DmnDecision decision, boolean bitsetMatching, int requiredDecisionCacheSize) throws Exception {
+		this(dmnEngine, decision != null ? Collections.singletonList(decision) : null, true, bitsetMatching, requiredDecisionCacheSize);
+	}
+
+	/**
+	 * prepares the evaluation of multiple decisions of the same DRG
+	 * @param dmnEngine the engine the decisions were parsed with
+	 * @param decisions the decisions, the first one is the decision of {@link #evaluate(VariableContext)}
+	 * @param compileTables false: evaluate the decision tables with the Camunda handler
+	 * @param bitsetMatching true: match the rules with memoized rule bitsets per input column instead of the indexes
+	 * @param requiredDecisionCacheSize max number of cached results per required decision, 0 or less means no cache
+	 * @throws Exception if the engine is not based on the Camunda default configuration
+	 */
+	public CompiledDecisionEvaluator(DmnEngine dmnEngine, List<DmnDecision> decisions, boolean compileTables, boolean bitsetMatching, int requiredDecisionCacheSize) throws Exception {
+		if (dmnEngine == null) {
+			throw new IllegalArgumentException("dmnEngine cannot be null");
+		}
+		if (decisions == null || decisions.isEmpty()) {
+			throw new IllegalArgumentException("decision cannot be null");
+		}
+		for (DmnDecision d : decisions) {
+			if (d == null) {
+				throw new IllegalArgumentException("decision cannot be null");
+			}
+		}
+		if (dmnEngine.getConfiguration() instanceof DefaultDmnEngineConfiguration == false) {
+			throw new Exception("The compiled evaluation needs an engine with the Camunda default configuration");
+		}
+		DefaultDmnEngineConfiguration configuration = (DefaultDmnEngineConfiguration) dmnEngine.getConfiguration();
+		this.decision = decisions.get(0);
+		this.decisions = Collections.unmodifiableList(new ArrayList<>(decisions));
+		this.bitsetMatching = bitsetMatching;
+		for (DmnDecision d : decisions) {
+			if (compileTables) {
+				compile(d, configuration);
+			}
+			if (requiredDecisionCacheSize > 0) {
+				for (DmnDecision required : d.getRequiredDecisions()) {
+					createMemos(required, configuration, requiredDecisionCacheSize);
+				}
+			}
+		}
+		decisionContext = new CompiledDecisionContext(configuration, compiledTables, requiredDecisionMemos);
+	}
+
+	private void createMemos(DmnDecision d, DefaultDmnEngineConfiguration configuration, int cacheSize) {
+		if (requiredDecisionMemos.containsKey(d)) {
+			return;
+		}
+		RequiredDecisionMemo memo = RequiredDecisionMemo.create(d, configuration, cacheSize);
+		// decisions without memo are evaluated every time
+		requiredDecisionMemos.put(d, memo);
+		for (DmnDecision required : d.getRequiredDecisions()) {
+			createMemos(required, configuration, cacheSize);
+		}
+	}
+
+	private void compile(DmnDecision d, DefaultDmnEngineConfiguration configuration) {
+		DmnDecisionLogic logic = d.getDecisionLogic();
+		if (logic instanceof DmnDecisionTableImpl && compiledTables.containsKey(logic) == false) {
+			CompiledDecisionTable table = new CompiledDecisionTable((DmnDecisionTableImpl) logic, configuration);
+			if (bitsetMatching) {
+				table.enableBitsetMatching(BitsetRuleMatcher.DEFAULT_MAX_VALUES_PER_COLUMN);
+			}
+			compiledTables.put((DmnDecisionTableImpl) logic, table);
+			countConditions = countConditions + table.countRules() * table.countInputs();
+			countCompiledConditions = countCompiledConditions + table.countCompiledConditions();
+		}
+		for (DmnDecision required : d.getRequiredDecisions()) {
+			compile(required, configuration);
+		}
+	}
+
+	/**
+	 * evaluates the decision
+	 * @param variableContext the input variables
+	 * @return the result, identical to the result of DmnEngine.evaluateDecision
+	 */
+	public DmnDecisionResult evaluate(VariableContext variableContext) {
+		if (variableContext == null) {
+			throw new IllegalArgumentException("variableContext cannot be null");
+		}
+		return decisionContext.evaluateDecision(decision, variableContext);
+	}
+
+	/**
+	 * evaluates all decisions with the same input variables in one pass.
+	 * A decision required by multiple of the decisions (or one of the decisions itself) is evaluated only once.
+	 * @param variableContext the input variables
+	 * @return the results in the order of the decisions, every result is identical to the result of DmnEngine.evaluateDecision
+	 */
+	public DmnDecisionResult[] evaluateAll(VariableContext variableContext) {
+		if (variableContext == null) {
+			throw new IllegalArgumentException("variableContext cannot be null");
+		}
+		return decisionContext.evaluateDecisions(decisions, variableContext);
+	}
+
+	public DmnDecision getDecision() {
+		return decision;
+	}
+
+	/**
+	 * @return the decisions of {@link #evaluateAll(VariableContext)}
+	 */
+	public List<DmnDecision> getDecisions() {
+		return decisions;
+	}
+
+	public boolean isBitsetMatching() {
+		return bitsetMatching;
+	}
+
+	/**
+	 * @return number of input entries of all decision tables
+	 */
+	public int countConditions() {
+		return countConditions;
+	}
+
+	/**
+	 * @return number of input entries evaluated without the FEEL engine
+	 */
+	public int countCompiledConditions() {
+		return countCompiledConditions;
+	}
+
+	/**
+	 * counts the hits per rule of all compiled decision tables and adapts the rule order
+	 * of the tables with the hit policy UNIQUE or ANY. Must be called before the first evaluation.
+	 * @param reorderInterval number of evaluations of a table between the adaptions of its rule order, 0 or less keeps the document order
+	 */
+	public void enableRuleHitStatistics(int reorderInterval) {
+		for (CompiledDecisionTable table : compiledTables.values()) {
+			table.enableRuleHitStatistics(reorderInterval);
+		}
+	}
+
+	/**
+	 * @return the report of the rule hits of all decision tables or null if the statistics are not enabled
+	 */
+	public String createRuleHitReport() {
+		StringBuilder sb = new StringBuilder();
+		Map<DmnDecision, Boolean> visited = new IdentityHashMap<>();
+		for (DmnDecision d : decisions) {
+			appendRuleHitReport(sb, d, visited);
+		}
+		return sb.length() > 0 ? sb.toString() : null;
+	}
+
+	private void appendRuleHitReport(StringBuilder sb, DmnDecision d, Map<DmnDecision, Boolean> visited) {
+		if (visited.put(d, Boolean.TRUE) != null) {
+			return;
+		}
+		for (DmnDecision required : d.getRequiredDecisions()) {
+			appendRuleHitReport(sb, required, visited);
+		}
+		DmnDecisionLogic logic = d.getDecisionLogic();
+		CompiledDecisionTable table = logic instanceof DmnDecisionTableImpl ? compiledTables.get(logic) : null;
+		if (table != null && table.getRuleHitStatistics() != null) {
+			sb.append(table.getRuleHitStatistics().createReport(d.getKey()));
+		}
+	}
+
+	CompiledDecisionTable getCompiledTable(DmnDecisionTableImpl decisionTable) {
+		return compiledTables.get(decisionTable);
+	}
+
+	/**
+	 * @return the caches of the required decisions
+	 */
+	public Collection<RequiredDecisionMemo> getRequiredDecisionMemos() {
+		List<RequiredDecisionMemo> memos = new ArrayList<>();
+		for (RequiredDecisionMemo memo : requiredDecisionMemos.values()) {
+			if (memo != null) {
+				memos.add(memo);
+			}
+		}
+		return memos;
+	}
+
+	/**
+	 * The Camunda decision context with the compiled handler for decision tables
+	 * and the caches for the required decisions
+	 */
+	private static class CompiledDecisionContext extends DefaultDmnDecisionContext {
+
+		private final Map<DmnDecision, RequiredDecisionMemo> requiredDecisionMemos;
+
+		CompiledDecisionContext(DefaultDmnEngineConfiguration configuration, Map<DmnDecisionTableImpl, CompiledDecisionTable> compiledTables, Map<DmnDecision, RequiredDecisionMemo> requiredDecisionMemos) {
+			super(configuration);
+			this.requiredDecisionMemos = requiredDecisionMemos;
+			evaluationHandlers.put(DmnDecisionTableImpl.class, new CompiledDecisionTableEvaluationHandler(configuration, compiledTables));
+		}
+
+		/**
+		 * Same as the Camunda implementation, but without copying the input variables into a VariableMap:
+		 * a decision without required decisions is evaluated with the given variables,
+		 * the results of required decisions are laid over the input variables.
+		 * The required decisions are taken from the cache if possible.
+		 */
+		@Override
+		public DmnDecisionResult evaluateDecision(DmnDecision decision, VariableContext variableContext) {
+			if (decision.getKey() == null) {
+				return super.evaluateDecision(decision, variableContext);
+			}
+			if (decision.getRequiredDecisions().isEmpty()) {
+				DmnDecisionLogicEvaluationHandler handler = getDecisionEvaluationHandler(decision);
+				DmnDecisionLogicEvaluationEvent evaluatedEvent = handler.evaluate(decision, variableContext);
+				// the list will be changed by the event generation
+				List<DmnDecisionLogicEvaluationEvent> evaluatedEvents = new ArrayList<>(1);
+				evaluatedEvents.add(evaluatedEvent);
+				generateDecisionEvaluationEvent(evaluatedEvents);
+				return handler.generateDecisionResult(evaluatedEvent);
+			}
+			OverlayVariableContext variables = new OverlayVariableContext(variableContext);
+			List<DmnDecision> decisions = new ArrayList<>();
+			buildDecisionTree(decision, decisions);
+			List<DmnDecisionLogicEvaluationEvent> evaluatedEvents = new ArrayList<>(decisions.size());
+			DmnDecisionResult evaluatedResult = null;
+			for (DmnDecision evaluateDecision : decisions) {
+				RequiredDecisionMemo.Entry entry = evaluate(evaluateDecision, variables, evaluateDecision != decision);
+				evaluatedEvents.add(entry.event);
+				evaluatedResult = entry.result;
+				if (evaluateDecision != decision) {
+					addResultToVariableContext(evaluatedResult, variables.results, evaluateDecision);
+				}
+			}
+			generateDecisionEvaluationEvent(evaluatedEvents);
+			return evaluatedResult;
+		}
+
+		/**
+		 * Evaluates the decisions like evaluateDecision for every decision, but shares the evaluations between the decisions.
+		 * The decisions are parsed from the same DRG, therefore a decision key identifies the decision also if
+		 * the decisions have been parsed separately.
+		 * Every decision gets its own overlay for the results of its required decisions
+		 * to keep the results of the other decision trees out of its evaluation.
+		 */
+		DmnDecisionResult[] evaluateDecisions(List<DmnDecision> rootDecisions, VariableContext variableContext) {
+			Map<Object, RequiredDecisionMemo.Entry> evaluated = new HashMap<>();
+			DmnDecisionResult[] results = new DmnDecisionResult[rootDecisions.size()];
+			for (int i = 0; i < results.length; i++) {
+				DmnDecision rootDecision = rootDecisions.get(i);
+				OverlayVariableContext variables = new OverlayVariableContext(variableContext);
+				List<DmnDecision> decisions = new ArrayList<>();
+				buildDecisionTree(rootDecision, decisions);
+				List<DmnDecisionLogicEvaluationEvent> evaluatedEvents = new ArrayList<>(decisions.size());
+				DmnDecisionResult evaluatedResult = null;
+				for (DmnDecision evaluateDecision : decisions) {
+					Object id = evaluateDecision.getKey() != null ? evaluateDecision.getKey() : evaluateDecision;
+					RequiredDecisionMemo.Entry entry = evaluated.get(id);
+					if (entry == null) {
+						entry = evaluate(evaluateDecision, variables, true);
+						evaluated.put(id, entry);
+					}
+					evaluatedEvents.add(entry.event);
+					evaluatedResult = entry.result;
+					if (evaluateDecision != rootDecision) {
+						addResultToVariableContext(evaluatedResult, variables.results, evaluateDecision);
+					}
+				}
+				generateDecisionEvaluationEvent(evaluatedEvents);
+				results[i] = evaluatedResult;
+			}
+			return results;
+		}
+
+		private RequiredDecisionMemo.Entry evaluate(DmnDecision evaluateDecision, VariableContext variables, boolean useMemo) {
+			RequiredDecisionMemo memo = useMemo ? requiredDecisionMemos.get(evaluateDecision) : null;
+			CacheKey key = memo != null ? memo.createKey(variables) : null;
+			RequiredDecisionMemo.Entry entry = key != null ? memo.get(key) : null;
+			if (entry == null) {
+				DmnDecisionLogicEvaluationHandler handler = getDecisionEvaluationHandler(evaluateDecision);
+				DmnDecisionLogicEvaluationEvent evaluatedEvent = handler.evaluate(evaluateDecision, variables);
+				entry = new RequiredDecisionMemo.Entry(evaluatedEvent, handler.generateDecisionResult(evaluatedEvent));
+				if (key != null) {
+					memo.put(key, entry);
+				}
+			}
+			return entry;
+		}
+
+	}
+
+	/**
+	 * The results of the required decisions laid over the input variables.
+	 * A result hides an input variable with the same name like in the VariableMap of the Camunda evaluation.
+	 */
+	private static final class OverlayVariableContext implements VariableContext {
+
+		private final VariableContext inputs;
+		private final VariableMap results = Variables.createVariables();
+		private final Set<String> keySet = new AbstractSet<String>() {
+
+			@Override
+			public Iterator<String> iterator() {
+				final Iterator<String> resultNames = results.keySet().iterator();
+				final Iterator<String> inputNames = inputs.keySet().iterator();
+				return new Iterator<String>() {
+
+					private String next = null;
+
+					@Override
+					public boolean hasNext() {
+						if (next != null) {
+							return true;
+						}
+						if (resultNames.hasNext()) {
+							next = resultNames.next();
+							return true;
+						}
+						while (inputNames.hasNext()) {
+							String name = inputNames.next();
+							if (results.containsKey(name) == false) {
+								next = name;
+								return true;
+							}
+						}
+						return false;
+					}
+
+					@Override
+					public String next() {
+						if (hasNext() == false) {
+							throw new NoSuchElementException();
+						}
+						String name = next;
+						next = null;
+						return name;
+					}
+
+				};
+			}
+
+			@Override
+			public int size() {
+				int size = results.size();
+				for (String name : inputs.keySet()) {
+					if (results.containsKey(name) == false) {
+						size++;
+					}
+				}
+				return size;
+			}
+
+			@Override
+			public boolean contains(Object o) {
+				return o instanceof String && containsVariable((String) o);
+			}
+
+		};
+
+		private OverlayVariableContext(VariableContext inputs) {
+			this.inputs = inputs;
+		}
+
+		@Override
+		public TypedValue resolve(String variableName) {
+			if (results.containsKey(variableName)) {
+				return results.getValueTyped(variableName);
+			}
+			return inputs.resolve(variableName);
+		}
+
+		@Override
+		public boolean containsVariable(String variableName) {
+			return results.containsKey(variableName) || inputs.containsVariable(variableName);
+		}
+
+		@Override
+		public Set<String> keySet() {
+			return keySet;
+		}
+
+	}
+
+}
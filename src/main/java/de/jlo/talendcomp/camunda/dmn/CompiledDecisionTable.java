@@ -0,0 +1,295 @@
+/**
+ * Copyright 2021 Jan Lolling jan.lolling@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jlo.talendcomp.camunda.dmn;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.camunda.bpm.dmn.engine.impl.DefaultDmnEngineConfiguration;
+import org.camunda.bpm.dmn.engine.impl.DmnDecisionTableImpl;
+import org.camunda.bpm.dmn.engine.impl.DmnDecisionTableInputImpl;
+import org.camunda.bpm.dmn.engine.impl.DmnDecisionTableRuleImpl;
+import org.camunda.bpm.dmn.engine.impl.DmnExpressionImpl;
+import org.camunda.bpm.dmn.engine.impl.evaluation.ExpressionEvaluationHandler;
+
+/**
+ * The input entries and output entries of a decision table compiled at load time.
+ * Cells which cannot be compiled are kept as null and will be evaluated by the FEEL engine.
+ *
+ * @author jan.lolling@gmail.com
+ */
+public final class CompiledDecisionTable {
+
+	/** marks an output entry which must be evaluated by the expression engine */
+	static final Object NOT_COMPILED = new Object();
+	private final DmnDecisionTableImpl decisionTable;
+	private final int countRules;
+	private final int countInputs;
+	/** [input][rule], null means not compiled */
+	private final CompiledUnaryTest[][] conditions;
+	/** [rule][output] the literal value or NOT_COMPILED */
+	private final Object[][] outputLiterals;
+	private int countCompiledConditions = 0;
+	private final int[] allRules;
+	/** the usable indexes, the most selective first */
+	private final List<EqualityIndex> indexes = new ArrayList<>();
+	/** the interval indexes of the range tested columns without equality index */
+	private final List<IntervalIndex> rangeIndexes = new ArrayList<>();
+	private BitsetRuleMatcher bitsetMatcher = null;
+	private RuleHitStatistics ruleHitStatistics = null;
+	private final CollectAggregation collectAggregation;
+
+	CompiledDecisionTable(DmnDecisionTableImpl decisionTable, DefaultDmnEngineConfiguration configuration) {
+		this.decisionTable = decisionTable;
+		ExpressionEvaluationHandler expressionHandler = new ExpressionEvaluationHandler(configuration);
+		List<DmnDecisionTableInputImpl> inputs = decisionTable.getInputs();
+		List<DmnDecisionTableRuleImpl> rules = decisionTable.getRules();
+		countRules = rules.size();
+		countInputs = inputs.size();
+		int countOutputs = decisionTable.getOutputs().size();
+		conditions = new CompiledUnaryTest[countInputs][countRules];
+		outputLiterals = new Object[countRules][countOutputs];
+		for (int i = 0; i < countInputs; i++) {
+			for (int r = 0; r < countRules; r++) {
+				DmnExpressionImpl condition = rules.get(r).getConditions().get(i);
+				if (isNonEmptyExpression(condition) == false) {
+					conditions[i][r] = UnaryTestCompiler.AnyTest.INSTANCE;
+				} else if (isFeel(expressionHandler, condition.getExpressionLanguage(), configuration.getDefaultInputEntryExpressionLanguage())) {
+					conditions[i][r] = UnaryTestCompiler.compile(condition.getExpression());
+				}
+				if (conditions[i][r] != null) {
+					countCompiledConditions++;
+				}
+			}
+		}
+		for (int r = 0; r < countRules; r++) {
+			List<DmnExpressionImpl> conclusions = rules.get(r).getConclusions();
+			for (int o = 0; o < countOutputs; o++) {
+				DmnExpressionImpl conclusion = conclusions.get(o);
+				Object literal = NOT_COMPILED;
+				if (isNonEmptyExpression(conclusion) && isFeel(expressionHandler, conclusion.getExpressionLanguage(), configuration.getDefaultOutputEntryExpressionLanguage())) {
+					literal = compileLiteral(conclusion.getExpression().trim());
+				}
+				outputLiterals[r][o] = literal;
+			}
+		}
+		collectAggregation = CollectAggregation.create(decisionTable, configuration, expressionHandler);
+		allRules = new int[countRules];
+		for (int r = 0; r < countRules; r++) {
+			allRules[r] = r;
+		}
+		buildIndexes();
+	}
+
+	private void buildIndexes() {
+		for (int i = 0; i < countInputs; i++) {
+			EqualityIndex index = EqualityIndex.build(this, i);
+			// an index which does not exclude at least half of the rules is not worth the lookup
+			if (index != null && index.getExpectedCandidates() <= countRules / 2.0) {
+				indexes.add(index);
+			} else {
+				IntervalIndex rangeIndex = IntervalIndex.build(this, i);
+				if (rangeIndex != null) {
+					rangeIndexes.add(rangeIndex);
+				}
+			}
+		}
+		Collections.sort(indexes, new Comparator<EqualityIndex>() {
+
+			@Override
+			public int compare(EqualityIndex o1, EqualityIndex o2) {
+				return Double.compare(o1.getExpectedCandidates(), o2.getExpectedCandidates());
+			}
+
+		});
+	}
+
+	static boolean isFeel(ExpressionEvaluationHandler expressionHandler, String expressionLanguage, String defaultLanguage) {
+		String language = expressionLanguage != null ? expressionLanguage : defaultLanguage;
+		return language != null && expressionHandler.isFeelExpressionLanguage(language);
+	}
+
+	static boolean isNonEmptyExpression(DmnExpressionImpl expression) {
+		return expression != null && expression.getExpression() != null && expression.getExpression().trim().isEmpty() == false;
+	}
+
+	/**
+	 * compiles string literals without escape sequences and boolean literals
+	 * @param text the expression text
+	 * @return the value or NOT_COMPILED
+	 */
+	static Object compileLiteral(String text) {
+		if (text.length() >= 2 && text.charAt(0) == '"' && text.indexOf('"', 1) == text.length() - 1 && text.indexOf('\\') < 0) {
+			return text.substring(1, text.length() - 1);
+		} else if (text.equals("true")) {
+			return Boolean.TRUE;
+		} else if (text.equals("false")) {
+			return Boolean.FALSE;
+		}
+		return NOT_COMPILED;
+	}
+
+	public DmnDecisionTableImpl getDecisionTable() {
+		return decisionTable;
+	}
+
+	/**
+	 * @return the primitive aggregation of a COLLECT table with SUM, MIN, MAX or COUNT or null if not possible
+	 */
+	CollectAggregation getCollectAggregation() {
+		return collectAggregation;
+	}
+
+	public int countRules() {
+		return countRules;
+	}
+
+	public int countInputs() {
+		return countInputs;
+	}
+
+	/**
+	 * @return the number of input entries which will be evaluated without the FEEL engine
+	 */
+	public int countCompiledConditions() {
+		return countCompiledConditions;
+	}
+
+	/**
+	 * tests one input entry
+	 * @param input the index of the input column
+	 * @param rule the index of the rule
+	 * @param value the evaluated input value
+	 * @return MATCH, NO_MATCH or UNKNOWN if the FEEL engine has to evaluate the cell
+	 */
+	int test(int input, int rule, Object value) {
+		CompiledUnaryTest test = conditions[input][rule];
+		if (test == null) {
+			return CompiledUnaryTest.UNKNOWN;
+		}
+		return test.test(value);
+	}
+
+	/**
+	 * returns the rules which can match the input values.
+	 * Uses the most selective equality index which can be used for the values
+	 * and intersects the result with the candidates of the interval indexes.
+	 * @param testedValues the values of all input columns
+	 * @return a new array with the rule indexes in document order
+	 */
+	int[] selectCandidates(Object[] testedValues) {
+		int[] candidates = null;
+		for (EqualityIndex index : indexes) {
+			int[] found = index.lookup(testedValues[index.getInput()]);
+			if (found != null) {
+				// the arrays of the equality index are shared
+				candidates = found.clone();
+				break;
+			}
+		}
+		for (IntervalIndex index : rangeIndexes) {
+			if (candidates != null && candidates.length == 0) {
+				break;
+			}
+			int[] found = index.lookup(testedValues[index.getInput()]);
+			if (found != null) {
+				candidates = candidates == null ? found : intersect(candidates, found);
+			}
+		}
+		return candidates != null ? candidates : allRules.clone();
+	}
+
+	/**
+	 * intersects two sorted rule index arrays
+	 */
+	static int[] intersect(int[] a, int[] b) {
+		int[] result = new int[Math.min(a.length, b.length)];
+		int i = 0, j = 0, k = 0;
+		while (i < a.length && j < b.length) {
+			if (a[i] < b[j]) {
+				i++;
+			} else if (a[i] > b[j]) {
+				j++;
+			} else {
+				result[k++] = a[i++];
+				j++;
+			}
+		}
+		return k == result.length ? result : Arrays.copyOf(result, k);
+	}
+
+	/**
+	 * @return the number of input columns with an equality index
+	 */
+	public int countIndexes() {
+		return indexes.size();
+	}
+
+	/**
+	 * @return the number of input columns with an interval index
+	 */
+	public int countRangeIndexes() {
+		return rangeIndexes.size();
+	}
+
+	/**
+	 * switches the table to the bitset matching instead of the indexes
+	 * @param maxValuesPerColumn the maximum number of memoized values per input column
+	 */
+	void enableBitsetMatching(int maxValuesPerColumn) {
+		bitsetMatcher = new BitsetRuleMatcher(this, maxValuesPerColumn);
+	}
+
+	/**
+	 * @return the bitset matcher or null if the indexes are used
+	 */
+	BitsetRuleMatcher getBitsetMatcher() {
+		return bitsetMatcher;
+	}
+
+	/**
+	 * counts the hits per rule and adapts the rule order for the hit policies UNIQUE and ANY.
+	 * Must be called before the table is used.
+	 * @param reorderInterval number of evaluations between the adaptions of the rule order, 0 or less keeps the document order
+	 */
+	void enableRuleHitStatistics(int reorderInterval) {
+		ruleHitStatistics = new RuleHitStatistics(decisionTable, reorderInterval);
+	}
+
+	/**
+	 * @return the rule hit statistics or null if not enabled
+	 */
+	public RuleHitStatistics getRuleHitStatistics() {
+		return ruleHitStatistics;
+	}
+
+	CompiledUnaryTest getCondition(int input, int rule) {
+		return conditions[input][rule];
+	}
+
+	/**
+	 * @param rule the index of the rule
+	 * @param output the index of the output column
+	 * @return the compiled literal value or NOT_COMPILED
+	 */
+	Object getOutputLiteral(int rule, int output) {
+		return outputLiterals[rule][output];
+	}
+
+}
@@ -0,0 +1,359 @@
+/**
+ * Copyright 2021 Jan Lolling jan.lolling@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jlo.talendcomp.camunda.dmn;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.camunda.bpm.dmn.engine.DmnDecision;
+import org.camunda.bpm.dmn.engine.delegate.DmnDecisionLogicEvaluationEvent;
+import org.camunda.bpm.dmn.engine.delegate.DmnEvaluatedDecisionRule;
+import org.camunda.bpm.dmn.engine.delegate.DmnEvaluatedInput;
+import org.camunda.bpm.dmn.engine.delegate.DmnEvaluatedOutput;
+import org.camunda.bpm.dmn.engine.impl.DefaultDmnEngineConfiguration;
+import org.camunda.bpm.dmn.engine.impl.DmnDecisionTableImpl;
+import org.camunda.bpm.dmn.engine.impl.DmnDecisionTableInputImpl;
+import org.camunda.bpm.dmn.engine.impl.DmnDecisionTableOutputImpl;
+import org.camunda.bpm.dmn.engine.impl.DmnDecisionTableRuleImpl;
+import org.camunda.bpm.dmn.engine.impl.DmnExpressionImpl;
+import org.camunda.bpm.dmn.engine.impl.delegate.DmnDecisionTableEvaluationEventImpl;
+import org.camunda.bpm.dmn.engine.impl.delegate.DmnEvaluatedDecisionRuleImpl;
+import org.camunda.bpm.dmn.engine.impl.delegate.DmnEvaluatedOutputImpl;
+import org.camunda.bpm.dmn.engine.impl.evaluation.DecisionTableEvaluationHandler;
+import org.camunda.bpm.engine.variable.context.VariableContext;
+import org.camunda.bpm.engine.variable.value.TypedValue;
+
+/**
+ * Decision table evaluation using the compiled input and output entries.
+ * All inputs are evaluated first, then the candidate rules are taken from the most selective
+ * equality index and the interval indexes (if any) and filtered column by column. Cells which are not compiled or cannot be decided by the compiled test
+ * are evaluated by the FEEL engine. Hit policy and result generation are the Camunda ones.
+ * If the rule hit statistics are enabled for a table with the hit policy UNIQUE or ANY, the rules are tested
+ * in the order of their hits and the evaluation stops at the first matching rule.
+ * Tables with the hit policy COLLECT and SUM, MIN, MAX or COUNT over number literals are aggregated with primitive values.
+ *
+ * @author jan.lolling@gmail.com
+ */
+public class CompiledDecisionTableEvaluationHandler extends DecisionTableEvaluationHandler {
+
+	private final Map<DmnDecisionTableImpl, CompiledDecisionTable> compiledTables;
+	private final boolean primitiveAggregation;
+
+	public CompiledDecisionTableEvaluationHandler(DefaultDmnEngineConfiguration configuration, Map<DmnDecisionTableImpl, CompiledDecisionTable> compiledTables) {
+		super(configuration);
+		this.compiledTables = compiledTables;
+		// listeners can read the matching rules of the event, the aggregation does not provide them
+		this.primitiveAggregation = isEmpty(configuration.getCustomPreDecisionEvaluationListeners())
+				&& isEmpty(configuration.getCustomPostDecisionEvaluationListeners());
+	}
+
+	private static boolean isEmpty(List<?> list) {
+		return list == null || list.isEmpty();
+	}
+
+	/**
+	 * Decision tables with the hit policy COLLECT and an aggregation of number literals are aggregated
+	 * with primitive values without evaluating the output entries of the matching rules.
+	 * The event contains the evaluated inputs and the aggregated value but no matching rules.
+	 * Tables are evaluated by the Camunda implementation if decision (table) evaluation listeners are configured.
+	 */
+	@Override
+	public DmnDecisionLogicEvaluationEvent evaluate(DmnDecision decision, VariableContext variableContext) {
+		DmnDecisionTableImpl decisionTable = (DmnDecisionTableImpl) decision.getDecisionLogic();
+		CompiledDecisionTable compiled = compiledTables.get(decisionTable);
+		if (compiled == null || compiled.getCollectAggregation() == null || primitiveAggregation == false || evaluationListeners.isEmpty() == false) {
+			return super.evaluate(decision, variableContext);
+		}
+		CollectAggregation aggregation = compiled.getCollectAggregation();
+		RuleMatches matches = matchRules(compiled, variableContext);
+		TypedValue value = aggregation.aggregate(matches.rules, matches.count);
+		if (value == CollectAggregation.NOT_AGGREGATED) {
+			// the values cannot be aggregated as number, the Camunda handler reports the error
+			return super.evaluate(decision, variableContext);
+		}
+		DmnDecisionTableEvaluationEventImpl evaluationResult = new DmnDecisionTableEvaluationEventImpl();
+		evaluationResult.setDecisionTable(decision);
+		evaluationResult.setExecutedDecisionElements(calculateExecutedDecisionElements(decisionTable));
+		for (DmnEvaluatedInput evaluatedInput : matches.evaluatedInputs) {
+			evaluationResult.getInputs().add(evaluatedInput);
+		}
+		evaluationResult.setMatchingRules(new ArrayList<DmnEvaluatedDecisionRule>(0));
+		evaluationResult.setCollectResultName(aggregation.getResultName(matches.rules, matches.count));
+		evaluationResult.setCollectResultValue(value);
+		return evaluationResult;
+	}
+
+	/**
+	 * The evaluated inputs and the matching rules of a decision table
+	 */
+	static final class RuleMatches {
+
+		final DmnEvaluatedInput[] evaluatedInputs;
+		/** the indexes of the matching rules, only the first count elements are valid */
+		final int[] rules;
+		final int count;
+
+		private RuleMatches(DmnEvaluatedInput[] evaluatedInputs, int[] rules, int count) {
+			this.evaluatedInputs = evaluatedInputs;
+			this.rules = rules;
+			this.count = count;
+		}
+
+	}
+
+	@Override
+	protected void evaluateDecisionTable(DmnDecisionTableImpl decisionTable, VariableContext variableContext, DmnDecisionTableEvaluationEventImpl evaluationResult) {
+		CompiledDecisionTable compiled = compiledTables.get(decisionTable);
+		if (compiled == null) {
+			super.evaluateDecisionTable(decisionTable, variableContext, evaluationResult);
+			return;
+		}
+		RuleMatches matches = matchRules(compiled, variableContext);
+		for (DmnEvaluatedInput evaluatedInput : matches.evaluatedInputs) {
+			evaluationResult.getInputs().add(evaluatedInput);
+		}
+		List<DmnDecisionTableRuleImpl> rules = decisionTable.getRules();
+		List<DmnDecisionTableOutputImpl> outputs = decisionTable.getOutputs();
+		List<DmnEvaluatedDecisionRule> matchingRules = new ArrayList<>(matches.count);
+		for (int c = 0; c < matches.count; c++) {
+			int r = matches.rules[c];
+			DmnEvaluatedDecisionRuleImpl evaluatedRule = new DmnEvaluatedDecisionRuleImpl(rules.get(r));
+			evaluatedRule.setOutputEntries(evaluateOutputEntries(compiled, outputs, r, variableContext));
+			matchingRules.add(evaluatedRule);
+		}
+		evaluationResult.setMatchingRules(matchingRules);
+	}
+
+	/**
+	 * evaluates the inputs and finds the matching rules without evaluating their output entries.
+	 * The hits are recorded in the rule hit statistics of the table.
+	 * @param compiled the compiled decision table
+	 * @param variableContext the input variables
+	 * @return the evaluated inputs and the matching rules in document order (or the single matching rule of the adaptive order)
+	 */
+	RuleMatches matchRules(CompiledDecisionTable compiled, VariableContext variableContext) {
+		DmnDecisionTableImpl decisionTable = compiled.getDecisionTable();
+		List<DmnDecisionTableInputImpl> inputs = decisionTable.getInputs();
+		int countInputs = inputs.size();
+		DmnEvaluatedInput[] evaluatedInputs = new DmnEvaluatedInput[countInputs];
+		Object[] testedValues = new Object[countInputs];
+		for (int i = 0; i < countInputs; i++) {
+			DmnDecisionTableInputImpl input = inputs.get(i);
+			evaluatedInputs[i] = evaluateInput(input, variableContext);
+			testedValues[i] = getTestedValue(input, evaluatedInputs[i], variableContext);
+		}
+		int[] candidates = null;
+		int countCandidates = 0;
+		RuleHitStatistics statistics = compiled.getRuleHitStatistics();
+		RuleHitStatistics adaptiveOrder = statistics != null && statistics.isAdaptiveOrder() ? statistics : null;
+		BitsetRuleMatcher bitsetMatcher = compiled.getBitsetMatcher();
+		if (bitsetMatcher != null) {
+			candidates = new int[compiled.countRules()];
+			countCandidates = matchBitsets(bitsetMatcher, decisionTable, evaluatedInputs, testedValues, variableContext, candidates, adaptiveOrder);
+		} else {
+			// the rules which cannot match because of an indexed column are excluded already
+			candidates = compiled.selectCandidates(testedValues);
+			if (adaptiveOrder != null) {
+				countCandidates = findFirstMatch(compiled, decisionTable, evaluatedInputs, testedValues, variableContext, candidates, adaptiveOrder);
+			} else {
+				countCandidates = filterCandidates(compiled, decisionTable, evaluatedInputs, testedValues, variableContext, candidates);
+			}
+		}
+		if (statistics != null) {
+			for (int c = 0; c < countCandidates; c++) {
+				statistics.recordHit(candidates[c]);
+			}
+			statistics.recordEvaluation();
+		}
+		return new RuleMatches(evaluatedInputs, candidates, countCandidates);
+	}
+
+	/**
+	 * @return the number of evaluated decision elements of the table, the same as counted by the Camunda handler
+	 */
+	long countExecutedDecisionElements(DmnDecisionTableImpl decisionTable) {
+		return calculateExecutedDecisionElements(decisionTable);
+	}
+
+	/**
+	 * tests the candidates rule by rule in the adapted order of the statistics and stops at the first matching rule.
+	 * Only for hit policies where the order of the rules does not matter.
+	 * @return 1 if a rule matches, which is moved to the beginning of the candidates array, otherwise 0
+	 */
+	private int findFirstMatch(CompiledDecisionTable compiled, DmnDecisionTableImpl decisionTable, DmnEvaluatedInput[] evaluatedInputs, Object[] testedValues, VariableContext variableContext, int[] candidates, RuleHitStatistics statistics) {
+		List<DmnDecisionTableInputImpl> inputs = decisionTable.getInputs();
+		List<DmnDecisionTableRuleImpl> rules = decisionTable.getRules();
+		int countInputs = inputs.size();
+		statistics.sortByOrder(candidates, candidates.length);
+		VariableContext[] localVariableContexts = new VariableContext[countInputs];
+		for (int c = 0; c < candidates.length; c++) {
+			int r = candidates[c];
+			boolean match = true;
+			for (int i = 0; i < countInputs && match; i++) {
+				int result = compiled.test(i, r, testedValues[i]);
+				if (result == CompiledUnaryTest.UNKNOWN) {
+					DmnDecisionTableInputImpl input = inputs.get(i);
+					if (localVariableContexts[i] == null) {
+						localVariableContexts[i] = getLocalVariableContext(input, evaluatedInputs[i], variableContext);
+					}
+					result = isConditionApplicable(input, rules.get(r).getConditions().get(i), localVariableContexts[i]) ? CompiledUnaryTest.MATCH : CompiledUnaryTest.NO_MATCH;
+				}
+				match = result == CompiledUnaryTest.MATCH;
+			}
+			if (match) {
+				candidates[0] = r;
+				return 1;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * filters the candidates column by column
+	 * @return the number of matching rules, which are moved to the beginning of the candidates array
+	 */
+	private int filterCandidates(CompiledDecisionTable compiled, DmnDecisionTableImpl decisionTable, DmnEvaluatedInput[] evaluatedInputs, Object[] testedValues, VariableContext variableContext, int[] candidates) {
+		List<DmnDecisionTableInputImpl> inputs = decisionTable.getInputs();
+		List<DmnDecisionTableRuleImpl> rules = decisionTable.getRules();
+		int countCandidates = candidates.length;
+		for (int i = 0; i < inputs.size() && countCandidates > 0; i++) {
+			DmnDecisionTableInputImpl input = inputs.get(i);
+			VariableContext localVariableContext = null;
+			int countMatches = 0;
+			for (int c = 0; c < countCandidates; c++) {
+				int r = candidates[c];
+				int result = compiled.test(i, r, testedValues[i]);
+				if (result == CompiledUnaryTest.UNKNOWN) {
+					if (localVariableContext == null) {
+						localVariableContext = getLocalVariableContext(input, evaluatedInputs[i], variableContext);
+					}
+					DmnExpressionImpl condition = rules.get(r).getConditions().get(i);
+					result = isConditionApplicable(input, condition, localVariableContext) ? CompiledUnaryTest.MATCH : CompiledUnaryTest.NO_MATCH;
+				}
+				if (result == CompiledUnaryTest.MATCH) {
+					candidates[countMatches++] = r;
+				}
+			}
+			countCandidates = countMatches;
+		}
+		return countCandidates;
+	}
+
+	/**
+	 * combines the memoized rule bitsets of all columns with AND
+	 * and checks the remaining cells which cannot be decided without the FEEL engine
+	 * @param adaptiveOrder if not null the rules are checked in the order of the statistics until the first match
+	 * @return the number of matching rules, which are written in document order into the matches array
+	 */
+	private int matchBitsets(BitsetRuleMatcher matcher, DmnDecisionTableImpl decisionTable, DmnEvaluatedInput[] evaluatedInputs, Object[] testedValues, VariableContext variableContext, int[] matches, RuleHitStatistics adaptiveOrder) {
+		List<DmnDecisionTableInputImpl> inputs = decisionTable.getInputs();
+		List<DmnDecisionTableRuleImpl> rules = decisionTable.getRules();
+		int countInputs = inputs.size();
+		BitsetRuleMatcher.ColumnBits[] columnBits = new BitsetRuleMatcher.ColumnBits[countInputs];
+		long[] possible = new long[matcher.countWords()];
+		for (int r = 0; r < matches.length; r++) {
+			possible[r >>> 6] |= 1L << r;
+		}
+		boolean hasUnknown = false;
+		for (int i = 0; i < countInputs; i++) {
+			columnBits[i] = matcher.getColumnBits(i, testedValues[i]);
+			long any = 0;
+			for (int w = 0; w < possible.length; w++) {
+				possible[w] &= columnBits[i].possible[w];
+				any |= possible[w];
+			}
+			if (any == 0) {
+				return 0;
+			}
+			hasUnknown = hasUnknown || columnBits[i].unknown != null;
+		}
+		VariableContext[] localVariableContexts = hasUnknown ? new VariableContext[countInputs] : null;
+		if (adaptiveOrder != null) {
+			for (int r : adaptiveOrder.getOrder()) {
+				if (BitsetRuleMatcher.isSet(possible, r)
+						&& (hasUnknown == false || matchUnknownCells(columnBits, inputs, rules, r, evaluatedInputs, variableContext, localVariableContexts))) {
+					matches[0] = r;
+					return 1;
+				}
+			}
+			return 0;
+		}
+		int countMatches = 0;
+		for (int w = 0; w < possible.length; w++) {
+			long word = possible[w];
+			while (word != 0) {
+				int r = (w << 6) + Long.numberOfTrailingZeros(word);
+				word &= word - 1;
+				if (hasUnknown == false || matchUnknownCells(columnBits, inputs, rules, r, evaluatedInputs, variableContext, localVariableContexts)) {
+					matches[countMatches++] = r;
+				}
+			}
+		}
+		return countMatches;
+	}
+
+	/**
+	 * evaluates the cells of the rule which cannot be decided without the FEEL engine
+	 */
+	private boolean matchUnknownCells(BitsetRuleMatcher.ColumnBits[] columnBits, List<DmnDecisionTableInputImpl> inputs, List<DmnDecisionTableRuleImpl> rules, int r, DmnEvaluatedInput[] evaluatedInputs, VariableContext variableContext, VariableContext[] localVariableContexts) {
+		boolean match = true;
+		for (int i = 0; i < columnBits.length && match; i++) {
+			if (columnBits[i].unknown != null && BitsetRuleMatcher.isSet(columnBits[i].unknown, r)) {
+				DmnDecisionTableInputImpl input = inputs.get(i);
+				if (localVariableContexts[i] == null) {
+					localVariableContexts[i] = getLocalVariableContext(input, evaluatedInputs[i], variableContext);
+				}
+				match = isConditionApplicable(input, rules.get(r).getConditions().get(i), localVariableContexts[i]);
+			}
+		}
+		return match;
+	}
+
+	/**
+	 * returns the value the FEEL engine tests the input entries against
+	 */
+	private Object getTestedValue(DmnDecisionTableInputImpl input, DmnEvaluatedInput evaluatedInput, VariableContext variableContext) {
+		TypedValue typedValue = null;
+		if (CompiledDecisionTable.isNonEmptyExpression(input.getExpression())) {
+			typedValue = evaluatedInput.getValue();
+		} else {
+			// without input expression the unary tests read the input variable directly from the context
+			typedValue = variableContext.resolve(input.getInputVariable());
+		}
+		return typedValue != null ? typedValue.getValue() : null;
+	}
+
+	Map<String, DmnEvaluatedOutput> evaluateOutputEntries(CompiledDecisionTable compiled, List<DmnDecisionTableOutputImpl> outputs, int ruleIndex, VariableContext variableContext) {
+		Map<String, DmnEvaluatedOutput> outputEntries = new LinkedHashMap<>();
+		List<DmnExpressionImpl> conclusions = compiled.getDecisionTable().getRules().get(ruleIndex).getConclusions();
+		for (int o = 0; o < outputs.size(); o++) {
+			DmnExpressionImpl conclusion = conclusions.get(o);
+			if (CompiledDecisionTable.isNonEmptyExpression(conclusion)) {
+				Object value = compiled.getOutputLiteral(ruleIndex, o);
+				if (value == CompiledDecisionTable.NOT_COMPILED) {
+					value = evaluateOutputEntry(conclusion, variableContext);
+				}
+				DmnDecisionTableOutputImpl output = outputs.get(o);
+				TypedValue typedValue = output.getTypeDefinition().transform(value);
+				outputEntries.put(output.getOutputName(), new DmnEvaluatedOutputImpl(output, typedValue));
+			}
+		}
+		return outputEntries;
+	}
+
+}
@@ -0,0 +1,38 @@
+/**
+ * Copyright 2021 Jan Lolling jan.lolling@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jlo.talendcomp.camunda.dmn;
+
+/**
+ * A FEEL simple unary test (the content of a decision table input cell) compiled to Java.
+ * The test returns UNKNOWN for values it cannot decide exactly like the FEEL engine
+ * (e.g. null or values of another type), in this case the FEEL engine has to evaluate the cell.
+ *
+ * @author jan.lolling@gmail.com
+ */
+public abstract class CompiledUnaryTest {
+
+	public static final int NO_MATCH = 0;
+	public static final int MATCH = 1;
+	public static final int UNKNOWN = 2;
+
+	/**
+	 * tests the input value
+	 * @param value the value of the input column
+	 * @return MATCH, NO_MATCH or UNKNOWN
+	 */
+	public abstract int test(Object value);
+
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright 2021 Jan Lolling jan.lolling@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jlo.talendcomp.camunda.dmn;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.camunda.bpm.dmn.engine.DmnDecision;
+
+/**
+ * Process wide registry of parsed decisions.
+ * The first caller for a key parses the decision, concurrent callers
+ * for the same key wait for this result instead of parsing it again.
+ * This class is thread safe.
+ *
+ * @author jan.lolling@gmail.com
+ */
+public final class DecisionRegistry {
+
+	private static final ConcurrentHashMap<String, FutureTask<DmnDecision>> decisionMap = new ConcurrentHashMap<>();
+
+	private DecisionRegistry() {}
+
+	/**
+	 * returns the decision for the key and loads it with the given loader if it is not already registered
+	 * @param key the key of the decision (source and decision key)
+	 * @param loader parses the decision
+	 * @return the decision
+	 * @throws Exception if the loader fails. Failed loads are not registered.
+	 */
+	public static DmnDecision getDecision(String key, Callable<DmnDecision> loader) throws Exception {
+		if (key == null) {
+			throw new IllegalArgumentException("key cannot be null");
+		}
+		FutureTask<DmnDecision> task = decisionMap.get(key);
+		if (task == null) {
+			FutureTask<DmnDecision> newTask = new FutureTask<>(loader);
+			task = decisionMap.putIfAbsent(key, newTask);
+			if (task == null) {
+				task = newTask;
+				// we are the first one and load the decision within the current thread
+				task.run();
+			}
+		}
+		try {
+			return task.get();
+		} catch (ExecutionException e) {
+			// do not keep a failed attempt, the next caller should try it again
+			decisionMap.remove(key, task);
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			} else {
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * registers the decision and replaces a former decision for the key,
+	 * e.g. after the DMN file has been changed
+	 * @param key the key of the decision
+	 * @param decision the decision
+	 */
+	public static void put(String key, final DmnDecision decision) {
+		if (key == null) {
+			throw new IllegalArgumentException("key cannot be null");
+		}
+		if (decision == null) {
+			throw new IllegalArgumentException("decision cannot be null");
+		}
+		FutureTask<DmnDecision> task = new FutureTask<>(new Callable<DmnDecision>() {
+
+			@Override
+			public DmnDecision call() throws Exception {
+				return decision;
+			}
+
+		});
+		task.run();
+		decisionMap.put(key, task);
+	}
+
+	/**
+	 * removes the decision from the registry
+	 * @param key the key of the decision
+	 */
+	public static void remove(String key) {
+		decisionMap.remove(key);
+	}
+
+	/**
+	 * removes all decisions with keys starting with the prefix, e.g. all decisions parsed by one engine
+	 * @param keyPrefix the prefix of the keys
+	 */
+	public static void removeAll(String keyPrefix) {
+		if (keyPrefix == null) {
+			throw new IllegalArgumentException("keyPrefix cannot be null");
+		}
+		for (String key : decisionMap.keySet()) {
+			if (key.startsWith(keyPrefix)) {
+				decisionMap.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * removes all decisions
+	 */
+	public static void clear() {
+		decisionMap.clear();
+	}
+
+	public static boolean contains(String key) {
+		return decisionMap.containsKey(key);
+	}
+
+}
@@ -0,0 +1,531 @@
+/**
+ * Copyright 2021 Jan Lolling jan.lolling@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jlo.talendcomp.camunda.dmn;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.camunda.bpm.dmn.engine.DmnDecision;
+import org.camunda.bpm.dmn.engine.impl.DefaultDmnEngineConfiguration;
+import org.camunda.bpm.dmn.engine.impl.DmnDecisionImpl;
+import org.camunda.bpm.dmn.engine.impl.DmnDecisionLiteralExpressionImpl;
+import org.camunda.bpm.dmn.engine.impl.DmnDecisionTableImpl;
+import org.camunda.bpm.dmn.engine.impl.DmnDecisionTableInputImpl;
+import org.camunda.bpm.dmn.engine.impl.DmnDecisionTableOutputImpl;
+import org.camunda.bpm.dmn.engine.impl.DmnDecisionTableRuleImpl;
+import org.camunda.bpm.dmn.engine.impl.DmnExpressionImpl;
+import org.camunda.bpm.dmn.engine.impl.DmnVariableImpl;
+import org.camunda.bpm.dmn.engine.impl.hitpolicy.HitPolicyEntry;
+import org.camunda.bpm.dmn.engine.impl.spi.transform.DmnTransformer;
+import org.camunda.bpm.dmn.engine.impl.spi.type.DmnTypeDefinition;
+import org.camunda.bpm.dmn.engine.impl.type.DefaultTypeDefinition;
+import org.camunda.bpm.dmn.engine.impl.type.DmnTypeDefinitionImpl;
+import org.camunda.bpm.model.dmn.BuiltinAggregator;
+import org.camunda.bpm.model.dmn.HitPolicy;
+
+/**
+ * Binary snapshot of a parsed decision (including the required decisions).
+ * Loading a snapshot creates the decision objects directly, without the XML parser and the DMN model transformation.
+ * The snapshot contains the SHA-256 hash of the DMN content and will only be used if the hash matches.
+ * The serialized decisions are protected with a SHA-256 checksum, a truncated or modified snapshot will not be used.
+ * On POSIX file systems the directory is created owner-only and snapshots are only read if the file and the directory
+ * are owned by the current user and not writable by others, a snapshot planted by another user will be ignored.
+ * The compiled input entries and the indexes are built from the rules after loading, they are cheap compared to the parsing.
+ * The type definitions and hit policies are resolved with the engine configuration used for loading.
+ *
+ * @author jan.lolling@gmail.com
+ */
+public final class DecisionSnapshot {
+
+	private static final int MAGIC = 0x444D4E43; // DMNC
+	public static final int FORMAT_VERSION = 2;
+	public static final String FILE_EXTENSION = ".dmnc";
+	private static final byte LOGIC_DECISION_TABLE = 1;
+	private static final byte LOGIC_LITERAL_EXPRESSION = 2;
+	private static final byte TYPE_NONE = 0;
+	private static final byte TYPE_DEFAULT = 1;
+	private static final byte TYPE_NAMED = 2;
+
+	private DecisionSnapshot() {}
+
+	/**
+	 * @param content the DMN content
+	 * @return the SHA-256 hash
+	 */
+	public static byte[] hash(byte[] content) {
+		try {
+			return MessageDigest.getInstance("SHA-256").digest(content);
+		} catch (Exception e) {
+			// every Java platform must support SHA-256
+			throw new IllegalStateException("SHA-256 not available", e);
+		}
+	}
+
+	private static byte[] hash(ByteBuffer content) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(content);
+			return digest.digest();
+		} catch (Exception e) {
+			throw new IllegalStateException("SHA-256 not available", e);
+		}
+	}
+
+	/**
+	 * returns the snapshot file for a decision source
+	 * @param snapshotDir the directory of the snapshots
+	 * @param sourceKey identifies the engine, DMN source and decision key
+	 * @return the file
+	 */
+	public static File getSnapshotFile(File snapshotDir, String sourceKey) {
+		byte[] h = hash(sourceKey.getBytes(StandardCharsets.UTF_8));
+		StringBuilder sb = new StringBuilder(48);
+		for (int i = 0; i < 16; i++) {
+			sb.append(String.format("%02x", h[i] & 0xFF));
+		}
+		sb.append(FILE_EXTENSION);
+		return new File(snapshotDir, sb.toString());
+	}
+
+	/**
+	 * writes the snapshot. The file is replaced atomically, concurrent readers see the former or the new snapshot.
+	 * @param decision the parsed decision
+	 * @param decisionKey the decision key used for parsing
+	 * @param contentHash the hash of the DMN content
+	 * @param snapshotFile the target file
+	 * @return true if the snapshot has been written, false if the decision contains elements which cannot be stored
+	 * @throws IOException if the file cannot be written
+	 */
+	public static boolean write(DmnDecision decision, String decisionKey, byte[] contentHash, File snapshotFile) throws IOException {
+		if (decision == null) {
+			throw new IllegalArgumentException("decision cannot be null");
+		}
+		if (contentHash == null) {
+			throw new IllegalArgumentException("contentHash cannot be null");
+		}
+		if (snapshotFile == null) {
+			throw new IllegalArgumentException("snapshotFile cannot be null");
+		}
+		List<DmnDecision> decisions = new ArrayList<>();
+		collectDecisions(decision, new IdentityHashMap<DmnDecision, Integer>(), decisions);
+		Map<DmnDecision, Integer> indexes = new IdentityHashMap<>();
+		for (int i = 0; i < decisions.size(); i++) {
+			indexes.put(decisions.get(i), i);
+		}
+		ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream(4096);
+		DataOutputStream body = new DataOutputStream(bodyBytes);
+		writeString(body, decisionKey);
+		body.writeInt(decisions.size());
+		for (DmnDecision d : decisions) {
+			if (writeDecision(body, d, indexes) == false) {
+				return false;
+			}
+		}
+		body.flush();
+		byte[] checksum = hash(bodyBytes.toByteArray());
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(bodyBytes.size() + 128);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+		out.writeInt(FORMAT_VERSION);
+		out.writeInt(contentHash.length);
+		out.write(contentHash);
+		out.writeInt(checksum.length);
+		out.write(checksum);
+		bodyBytes.writeTo(out);
+		out.flush();
+		File dir = snapshotFile.getAbsoluteFile().getParentFile();
+		createPrivateDirectory(dir);
+		// the temp file is created owner-only on POSIX file systems
+		File tempFile = Files.createTempFile(dir.toPath(), snapshotFile.getName(), ".tmp").toFile();
+		try {
+			Files.write(tempFile.toPath(), bytes.toByteArray());
+			try {
+				Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			tempFile.delete();
+		}
+		return true;
+	}
+
+	/**
+	 * collects the decisions, required decisions before the decisions requiring them
+	 */
+	private static void collectDecisions(DmnDecision decision, Map<DmnDecision, Integer> visited, List<DmnDecision> decisions) {
+		if (visited.containsKey(decision)) {
+			return;
+		}
+		visited.put(decision, 0);
+		for (DmnDecision required : decision.getRequiredDecisions()) {
+			collectDecisions(required, visited, decisions);
+		}
+		decisions.add(decision);
+	}
+
+	private static boolean writeDecision(DataOutputStream out, DmnDecision decision, Map<DmnDecision, Integer> indexes) throws IOException {
+		if (decision.getClass() != DmnDecisionImpl.class) {
+			return false;
+		}
+		writeString(out, decision.getKey());
+		writeString(out, decision.getName());
+		if (decision.getDecisionLogic() instanceof DmnDecisionTableImpl) {
+			out.writeByte(LOGIC_DECISION_TABLE);
+			if (writeDecisionTable(out, (DmnDecisionTableImpl) decision.getDecisionLogic()) == false) {
+				return false;
+			}
+		} else if (decision.getDecisionLogic() instanceof DmnDecisionLiteralExpressionImpl) {
+			out.writeByte(LOGIC_LITERAL_EXPRESSION);
+			DmnDecisionLiteralExpressionImpl literal = (DmnDecisionLiteralExpressionImpl) decision.getDecisionLogic();
+			DmnVariableImpl variable = literal.getVariable();
+			out.writeBoolean(variable != null);
+			if (variable != null) {
+				writeString(out, variable.getId());
+				writeString(out, variable.getName());
+				if (writeType(out, variable.getTypeDefinition()) == false) {
+					return false;
+				}
+			}
+			if (writeExpression(out, literal.getExpression()) == false) {
+				return false;
+			}
+		} else {
+			return false;
+		}
+		out.writeInt(decision.getRequiredDecisions().size());
+		for (DmnDecision required : decision.getRequiredDecisions()) {
+			out.writeInt(indexes.get(required));
+		}
+		return true;
+	}
+
+	private static boolean writeDecisionTable(DataOutputStream out, DmnDecisionTableImpl table) throws IOException {
+		HitPolicyEntry hitPolicy = table.getHitPolicyHandler().getHitPolicyEntry();
+		writeString(out, hitPolicy.getHitPolicy().name());
+		writeString(out, hitPolicy.getAggregator() != null ? hitPolicy.getAggregator().name() : null);
+		out.writeInt(table.getInputs().size());
+		for (DmnDecisionTableInputImpl input : table.getInputs()) {
+			writeString(out, input.getId());
+			writeString(out, input.getName());
+			writeString(out, input.getInputVariable());
+			if (writeExpression(out, input.getExpression()) == false) {
+				return false;
+			}
+		}
+		out.writeInt(table.getOutputs().size());
+		for (DmnDecisionTableOutputImpl output : table.getOutputs()) {
+			writeString(out, output.getId());
+			writeString(out, output.getName());
+			writeString(out, output.getOutputName());
+			if (writeType(out, output.getTypeDefinition()) == false) {
+				return false;
+			}
+		}
+		out.writeInt(table.getRules().size());
+		for (DmnDecisionTableRuleImpl rule : table.getRules()) {
+			writeString(out, rule.getId());
+			writeString(out, rule.getName());
+			out.writeInt(rule.getConditions().size());
+			for (DmnExpressionImpl condition : rule.getConditions()) {
+				if (writeExpression(out, condition) == false) {
+					return false;
+				}
+			}
+			out.writeInt(rule.getConclusions().size());
+			for (DmnExpressionImpl conclusion : rule.getConclusions()) {
+				if (writeExpression(out, conclusion) == false) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private static boolean writeExpression(DataOutputStream out, DmnExpressionImpl expression) throws IOException {
+		out.writeBoolean(expression != null);
+		if (expression == null) {
+			return true;
+		}
+		writeString(out, expression.getId());
+		writeString(out, expression.getName());
+		writeString(out, expression.getExpressionLanguage());
+		writeString(out, expression.getExpression());
+		return writeType(out, expression.getTypeDefinition());
+	}
+
+	private static boolean writeType(DataOutputStream out, DmnTypeDefinition type) throws IOException {
+		if (type == null) {
+			out.writeByte(TYPE_NONE);
+		} else if (type.getClass() == DefaultTypeDefinition.class) {
+			out.writeByte(TYPE_DEFAULT);
+		} else if (type.getClass() == DmnTypeDefinitionImpl.class) {
+			out.writeByte(TYPE_NAMED);
+			writeString(out, type.getTypeName());
+		} else {
+			return false;
+		}
+		return true;
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		if (s == null) {
+			out.writeInt(-1);
+		} else {
+			byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	/**
+	 * creates the directory, on POSIX file systems only accessible by the owner
+	 * @param dir the directory
+	 * @throws IOException if the directory cannot be created
+	 */
+	static void createPrivateDirectory(File dir) throws IOException {
+		if (dir.exists()) {
+			return;
+		}
+		Path path = dir.toPath();
+		try {
+			if (path.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+				Files.createDirectories(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+			} else {
+				Files.createDirectories(path);
+			}
+		} catch (FileAlreadyExistsException e) {
+			// created concurrently
+		}
+		if (dir.isDirectory() == false) {
+			throw new IOException("Directory: " + dir + " cannot be created");
+		}
+	}
+
+	/**
+	 * checks if a file can be trusted: on POSIX file systems the file and its directory must be owned by the current user
+	 * and must not be writable by group or others. Other file systems are not checked.
+	 * @param file the file
+	 * @return true if the file can be trusted
+	 */
+	static boolean isTrusted(File file) {
+		try {
+			Path path = file.getAbsoluteFile().toPath();
+			return isOwnerOnly(path) && isOwnerOnly(path.getParent());
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	private static boolean isOwnerOnly(Path path) throws IOException {
+		PosixFileAttributeView view = Files.getFileAttributeView(path, PosixFileAttributeView.class);
+		if (view == null) {
+			return true;
+		}
+		PosixFileAttributes attributes = view.readAttributes();
+		if (attributes.owner().getName().equals(System.getProperty("user.name")) == false) {
+			return false;
+		}
+		Set<PosixFilePermission> permissions = attributes.permissions();
+		return permissions.contains(PosixFilePermission.GROUP_WRITE) == false && permissions.contains(PosixFilePermission.OTHERS_WRITE) == false;
+	}
+
+	/**
+	 * reads the snapshot with a memory mapped buffer
+	 * @param snapshotFile the snapshot file
+	 * @param decisionKey the expected decision key
+	 * @param contentHash the hash of the current DMN content
+	 * @param configuration the configuration of the engine which will evaluate the decision
+	 * @return the decision or null if there is no snapshot, it cannot be trusted or it does not match the content, checksum, decision key or format version
+	 * @throws IOException if the file cannot be read
+	 */
+	public static DmnDecision read(File snapshotFile, String decisionKey, byte[] contentHash, DefaultDmnEngineConfiguration configuration) throws IOException {
+		if (snapshotFile == null || snapshotFile.isFile() == false || isTrusted(snapshotFile) == false) {
+			return null;
+		}
+		MappedByteBuffer buffer = null;
+		try (RandomAccessFile raf = new RandomAccessFile(snapshotFile, "r"); FileChannel channel = raf.getChannel()) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		try {
+			if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+				return null;
+			}
+			byte[] storedHash = new byte[buffer.getInt()];
+			buffer.get(storedHash);
+			if (Arrays.equals(storedHash, contentHash) == false) {
+				return null;
+			}
+			byte[] checksum = new byte[buffer.getInt()];
+			buffer.get(checksum);
+			if (Arrays.equals(checksum, hash(buffer.slice())) == false || decisionKey.equals(readString(buffer)) == false) {
+				return null;
+			}
+			DmnTransformer transformer = configuration.getTransformer();
+			DmnDecisionImpl[] decisions = new DmnDecisionImpl[buffer.getInt()];
+			for (int i = 0; i < decisions.length; i++) {
+				decisions[i] = readDecision(buffer, transformer, decisions);
+			}
+			return decisions[decisions.length - 1];
+		} catch (BufferUnderflowException | IllegalArgumentException | ArrayIndexOutOfBoundsException | NegativeArraySizeException e) {
+			// a truncated or foreign file is not a usable snapshot
+			return null;
+		}
+	}
+
+	private static DmnDecisionImpl readDecision(ByteBuffer buffer, DmnTransformer transformer, DmnDecisionImpl[] decisions) {
+		DmnDecisionImpl decision = new DmnDecisionImpl();
+		decision.setKey(readString(buffer));
+		decision.setName(readString(buffer));
+		byte logicType = buffer.get();
+		if (logicType == LOGIC_DECISION_TABLE) {
+			decision.setDecisionLogic(readDecisionTable(buffer, transformer));
+		} else if (logicType == LOGIC_LITERAL_EXPRESSION) {
+			DmnDecisionLiteralExpressionImpl literal = new DmnDecisionLiteralExpressionImpl();
+			if (buffer.get() != 0) {
+				DmnVariableImpl variable = new DmnVariableImpl();
+				variable.setId(readString(buffer));
+				variable.setName(readString(buffer));
+				variable.setTypeDefinition(readType(buffer, transformer));
+				literal.setVariable(variable);
+			}
+			literal.setExpression(readExpression(buffer, transformer));
+			decision.setDecisionLogic(literal);
+		} else {
+			throw new IllegalArgumentException("Unknown decision logic type: " + logicType);
+		}
+		int countRequired = buffer.getInt();
+		List<DmnDecision> requiredDecisions = new ArrayList<>(countRequired);
+		for (int i = 0; i < countRequired; i++) {
+			requiredDecisions.add(decisions[buffer.getInt()]);
+		}
+		decision.setRequiredDecision(requiredDecisions);
+		return decision;
+	}
+
+	private static DmnDecisionTableImpl readDecisionTable(ByteBuffer buffer, DmnTransformer transformer) {
+		DmnDecisionTableImpl table = new DmnDecisionTableImpl();
+		HitPolicy hitPolicy = HitPolicy.valueOf(readString(buffer));
+		String aggregatorName = readString(buffer);
+		BuiltinAggregator aggregator = aggregatorName != null ? BuiltinAggregator.valueOf(aggregatorName) : null;
+		table.setHitPolicyHandler(transformer.getHitPolicyHandlerRegistry().getHandler(hitPolicy, aggregator));
+		int countInputs = buffer.getInt();
+		List<DmnDecisionTableInputImpl> inputs = new ArrayList<>(countInputs);
+		for (int i = 0; i < countInputs; i++) {
+			DmnDecisionTableInputImpl input = new DmnDecisionTableInputImpl();
+			input.setId(readString(buffer));
+			input.setName(readString(buffer));
+			input.setInputVariable(readString(buffer));
+			input.setExpression(readExpression(buffer, transformer));
+			inputs.add(input);
+		}
+		table.setInputs(inputs);
+		int countOutputs = buffer.getInt();
+		List<DmnDecisionTableOutputImpl> outputs = new ArrayList<>(countOutputs);
+		for (int i = 0; i < countOutputs; i++) {
+			DmnDecisionTableOutputImpl output = new DmnDecisionTableOutputImpl();
+			output.setId(readString(buffer));
+			output.setName(readString(buffer));
+			output.setOutputName(readString(buffer));
+			output.setTypeDefinition(readType(buffer, transformer));
+			outputs.add(output);
+		}
+		table.setOutputs(outputs);
+		int countRules = buffer.getInt();
+		List<DmnDecisionTableRuleImpl> rules = new ArrayList<>(countRules);
+		for (int r = 0; r < countRules; r++) {
+			DmnDecisionTableRuleImpl rule = new DmnDecisionTableRuleImpl();
+			rule.setId(readString(buffer));
+			rule.setName(readString(buffer));
+			rule.setConditions(readExpressions(buffer, transformer));
+			rule.setConclusions(readExpressions(buffer, transformer));
+			rules.add(rule);
+		}
+		table.setRules(rules);
+		return table;
+	}
+
+	private static List<DmnExpressionImpl> readExpressions(ByteBuffer buffer, DmnTransformer transformer) {
+		int count = buffer.getInt();
+		List<DmnExpressionImpl> expressions = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			expressions.add(readExpression(buffer, transformer));
+		}
+		return expressions;
+	}
+
+	private static DmnExpressionImpl readExpression(ByteBuffer buffer, DmnTransformer transformer) {
+		if (buffer.get() == 0) {
+			return null;
+		}
+		DmnExpressionImpl expression = new DmnExpressionImpl();
+		expression.setId(readString(buffer));
+		expression.setName(readString(buffer));
+		expression.setExpressionLanguage(readString(buffer));
+		expression.setExpression(readString(buffer));
+		expression.setTypeDefinition(readType(buffer, transformer));
+		return expression;
+	}
+
+	private static DmnTypeDefinition readType(ByteBuffer buffer, DmnTransformer transformer) {
+		byte type = buffer.get();
+		if (type == TYPE_NONE) {
+			return null;
+		} else if (type == TYPE_DEFAULT) {
+			return new DefaultTypeDefinition();
+		} else if (type == TYPE_NAMED) {
+			String typeName = readString(buffer);
+			return new DmnTypeDefinitionImpl(typeName, transformer.getDataTypeTransformerRegistry().getTransformer(typeName));
+		} else {
+			throw new IllegalArgumentException("Unknown type definition: " + type);
+		}
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+}
@@ -0,0 +1,161 @@
+/**
+ * Copyright 2021 Jan Lolling jan.lolling@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jlo.talendcomp.camunda.dmn;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.camunda.bpm.dmn.engine.DmnEngine;
+import org.camunda.bpm.dmn.engine.DmnEngineConfiguration;
+import org.camunda.bpm.dmn.engine.impl.DefaultDmnEngineConfiguration;
+import org.camunda.bpm.dmn.engine.spi.DmnEngineMetricCollector;
+import org.camunda.bpm.engine.variable.Variables;
+
+/**
+ * Process wide registry of DMN engines.
+ * Building an engine starts the FEEL machinery, which is expensive.
+ * Therefore every engine configuration is built only once and the engine is shared by all runners.
+ * This class is thread safe.
+ *
+ * @author jan.lolling@gmail.com
+ */
+public final class DmnEngineRegistry {
+
+	public static final String DEFAULT_ENGINE_NAME = "default";
+	private static final ConcurrentHashMap<String, DmnEngineConfiguration> configurationMap = new ConcurrentHashMap<>();
+	private static final ConcurrentHashMap<String, FutureTask<DmnEngine>> engineMap = new ConcurrentHashMap<>();
+
+	private DmnEngineRegistry() {}
+
+	/**
+	 * registers a custom engine configuration. An already built engine with this name will be replaced
+	 * with the next call of getEngine. Runners which already use the previous engine keep it.
+	 * The shared decisions parsed by the previous engine are removed from the {@link DecisionRegistry},
+	 * new runners parse them again with the new configuration.
+	 * @param engineName the name of the engine
+	 * @param configuration the configuration
+	 */
+	public static void registerConfiguration(String engineName, DmnEngineConfiguration configuration) {
+		if (DmnRunner.isEmpty(engineName)) {
+			throw new IllegalArgumentException("engineName cannot be null or empty");
+		}
+		if (configuration == null) {
+			throw new IllegalArgumentException("configuration cannot be null");
+		}
+		configurationMap.put(engineName, configuration);
+		engineMap.remove(engineName);
+		DecisionRegistry.removeAll(engineName + "|");
+	}
+
+	/**
+	 * creates a configuration with the given expression language and metric collector
+	 * @param expressionLanguage the default expression language for input expressions, input and output entries (e.g. feel or juel). null means the Camunda default
+	 * @param metricCollector the metric collector, null means the Camunda default
+	 * @return the configuration
+	 */
+	public static DmnEngineConfiguration createConfiguration(String expressionLanguage, DmnEngineMetricCollector metricCollector) {
+		DefaultDmnEngineConfiguration configuration = (DefaultDmnEngineConfiguration) DmnEngineConfiguration.createDefaultDmnEngineConfiguration();
+		if (DmnRunner.isEmpty(expressionLanguage) == false) {
+			configuration.setDefaultInputExpressionExpressionLanguage(expressionLanguage);
+			configuration.setDefaultInputEntryExpressionLanguage(expressionLanguage);
+			configuration.setDefaultOutputEntryExpressionLanguage(expressionLanguage);
+			configuration.setDefaultLiteralExpressionLanguage(expressionLanguage);
+		}
+		if (metricCollector != null) {
+			configuration.setEngineMetricCollector(metricCollector);
+		}
+		return configuration;
+	}
+
+	/**
+	 * returns the engine for the name. The engine will be built with the first call.
+	 * @param engineName the name of the engine, null means the default engine
+	 * @return the engine
+	 * @throws Exception if there is no configuration for this name or building the engine fails
+	 */
+	public static DmnEngine getEngine(final String engineName) throws Exception {
+		final String name = DmnRunner.isEmpty(engineName) ? DEFAULT_ENGINE_NAME : engineName;
+		FutureTask<DmnEngine> task = engineMap.get(name);
+		if (task == null) {
+			FutureTask<DmnEngine> newTask = new FutureTask<>(new Callable<DmnEngine>() {
+
+				@Override
+				public DmnEngine call() throws Exception {
+					return buildEngine(name);
+				}
+
+			});
+			task = engineMap.putIfAbsent(name, newTask);
+			if (task == null) {
+				task = newTask;
+				task.run();
+			}
+		}
+		try {
+			return task.get();
+		} catch (ExecutionException e) {
+			engineMap.remove(name, task);
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			} else {
+				throw e;
+			}
+		}
+	}
+
+	private static DmnEngine buildEngine(String engineName) throws Exception {
+		DmnEngineConfiguration configuration = configurationMap.get(engineName);
+		if (configuration == null) {
+			if (DEFAULT_ENGINE_NAME.equals(engineName)) {
+				configuration = DmnEngineConfiguration.createDefaultDmnEngineConfiguration();
+			} else {
+				throw new Exception("No engine configuration registered for the name: " + engineName);
+			}
+		}
+		if (configuration instanceof DefaultDmnEngineConfiguration) {
+			// the runners count their evaluations with this collector
+			DmnMetricCollector.install((DefaultDmnEngineConfiguration) configuration);
+		}
+		DmnEngine engine = configuration.buildEngine();
+		warmUp(engine);
+		return engine;
+	}
+
+	private static void warmUp(DmnEngine engine) {
+		if (engine.getConfiguration() instanceof DefaultDmnEngineConfiguration) {
+			try {
+				// the first evaluation loads and initializes the FEEL engine classes
+				((DefaultDmnEngineConfiguration) engine.getConfiguration())
+					.getFeelEngine()
+					.evaluateSimpleUnaryTests("1", "cellInput", Variables.putValue("cellInput", 1).asVariableContext());
+			} catch (Throwable t) {
+				// the warm up is only an optimization
+			}
+		}
+	}
+
+	/**
+	 * removes all engines and configurations
+	 */
+	public static void clear() {
+		engineMap.clear();
+		configurationMap.clear();
+	}
+
+}
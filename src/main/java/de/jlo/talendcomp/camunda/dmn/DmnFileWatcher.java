@@ -0,0 +1,141 @@
+/**
+ * Copyright 2021 Jan Lolling jan.lolling@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jlo.talendcomp.camunda.dmn;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+/**
+ * Watches a DMN file and notifies a listener within a background thread if the file has been changed.
+ * Editors and copy tools often write a file in several steps, therefore the watcher waits
+ * until no further events arrive before the listener will be called.
+ *
+ * @author jan.lolling@gmail.com
+ */
+public final class DmnFileWatcher implements Closeable {
+
+	public static final long DEFAULT_SETTLE_MILLIS = 200;
+	private final Path file;
+	private final WatchService watchService;
+	private final Runnable listener;
+	private final Thread thread;
+	private long settleMillis = DEFAULT_SETTLE_MILLIS;
+	private volatile boolean closed = false;
+
+	/**
+	 * starts watching the file
+	 * @param path the path to the DMN file
+	 * @param listener will be called within the watcher thread after the file has been changed
+	 * @throws IOException if the directory of the file cannot be watched
+	 */
+	public DmnFileWatcher(String path, Runnable listener) throws IOException {
+		if (DmnRunner.isEmpty(path)) {
+			throw new IllegalArgumentException("path cannot be null or empty");
+		}
+		if (listener == null) {
+			throw new IllegalArgumentException("listener cannot be null");
+		}
+		this.file = Paths.get(path).toAbsolutePath();
+		this.listener = listener;
+		Path dir = file.getParent();
+		watchService = dir.getFileSystem().newWatchService();
+		// editors often replace the file instead of writing into it
+		dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		thread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				watch();
+			}
+
+		}, "dmn-file-watcher-" + file.getFileName());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void watch() {
+		while (closed == false) {
+			try {
+				WatchKey key = watchService.take();
+				boolean changed = isFileChanged(key);
+				if (key.reset() == false) {
+					// the directory is not longer accessible
+					return;
+				}
+				if (changed) {
+					// wait until the writer has finished
+					Thread.sleep(settleMillis);
+					while ((key = watchService.poll()) != null) {
+						key.pollEvents();
+						key.reset();
+					}
+					if (closed == false && Files.isReadable(file)) {
+						listener.run();
+					}
+				}
+			} catch (InterruptedException e) {
+				return;
+			} catch (ClosedWatchServiceException e) {
+				return;
+			}
+		}
+	}
+
+	private boolean isFileChanged(WatchKey key) {
+		boolean changed = false;
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context())) {
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Set the time to wait after a change for further changes before the listener will be called
+	 * @param settleMillis the time in ms
+	 */
+	public void setSettleMillis(long settleMillis) {
+		this.settleMillis = settleMillis;
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * stops watching the file
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		try {
+			watchService.close();
+		} catch (IOException e) {
+			// nothing to do, the watcher thread ends anyway
+		}
+		thread.interrupt();
+	}
+
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright 2021 Jan Lolling jan.lolling@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jlo.talendcomp.camunda.dmn;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.camunda.bpm.dmn.engine.delegate.DmnDecisionEvaluationEvent;
+import org.camunda.bpm.dmn.engine.delegate.DmnDecisionEvaluationListener;
+import org.camunda.bpm.dmn.engine.delegate.DmnDecisionLogicEvaluationEvent;
+import org.camunda.bpm.dmn.engine.delegate.DmnDecisionTableEvaluationEvent;
+import org.camunda.bpm.dmn.engine.impl.DefaultDmnEngineConfiguration;
+import org.camunda.bpm.dmn.engine.spi.DmnEngineMetricCollector;
+
+/**
+ * Metric collector for the engines of the {@link DmnEngineRegistry}.
+ * The engine is shared by all runners, therefore the collector counts for the whole engine
+ * and additionally for the runner metrics registered for the evaluating thread.
+ * The counters are LongAdders, concurrent evaluations do not contend for one counter.
+ * A metric collector configured before is kept as delegate and gets all events as before.
+ * This class is thread safe.
+ *
+ * @author jan.lolling@gmail.com
+ */
+public final class DmnMetricCollector implements DmnEngineMetricCollector, DmnDecisionEvaluationListener {
+
+	private static final ThreadLocal<DmnRunnerMetrics> currentRunnerMetrics = new ThreadLocal<>();
+	private final DmnEngineMetricCollector delegate;
+	private final LongAdder executedDecisionInstances = new LongAdder();
+	private final LongAdder executedDecisionElements = new LongAdder();
+
+	/**
+	 * creates the collector
+	 * @param delegate the former collector of the configuration, can be null
+	 */
+	public DmnMetricCollector(DmnEngineMetricCollector delegate) {
+		this.delegate = delegate;
+	}
+
+	/**
+	 * replaces the metric collector of the configuration with this collector. Must be called before the engine will be built.
+	 * @param configuration the configuration
+	 * @return the installed collector
+	 */
+	public static DmnMetricCollector install(DefaultDmnEngineConfiguration configuration) {
+		DmnEngineMetricCollector current = configuration.getEngineMetricCollector();
+		if (current instanceof DmnMetricCollector) {
+			return (DmnMetricCollector) current;
+		}
+		DmnMetricCollector collector = new DmnMetricCollector(current);
+		configuration.setEngineMetricCollector(collector);
+		return collector;
+	}
+
+	/**
+	 * set the runner metrics of the current thread, the evaluations within this thread will be counted for the runner too
+	 * @param metrics the metrics, null removes the metrics
+	 */
+	static void setCurrentRunnerMetrics(DmnRunnerMetrics metrics) {
+		if (metrics != null) {
+			currentRunnerMetrics.set(metrics);
+		} else {
+			currentRunnerMetrics.remove();
+		}
+	}
+
+	/**
+	 * The decision tables are counted with the decision evaluation event
+	 */
+	@Override
+	public void notify(DmnDecisionTableEvaluationEvent event) {
+		if (delegate != null) {
+			delegate.notify(event);
+		}
+	}
+
+	@Override
+	public void notify(DmnDecisionEvaluationEvent event) {
+		addExecutedDecisions(event.getExecutedDecisionInstances(), event.getExecutedDecisionElements());
+		if (delegate instanceof DmnDecisionEvaluationListener) {
+			((DmnDecisionEvaluationListener) delegate).notify(event);
+		} else if (delegate != null) {
+			// the same as the Camunda wrapper for collectors which are no decision evaluation listener
+			for (DmnDecisionLogicEvaluationEvent required : event.getRequiredDecisionResults()) {
+				if (required instanceof DmnDecisionTableEvaluationEvent) {
+					delegate.notify((DmnDecisionTableEvaluationEvent) required);
+				}
+			}
+			if (event.getDecisionResult() instanceof DmnDecisionTableEvaluationEvent) {
+				delegate.notify((DmnDecisionTableEvaluationEvent) event.getDecisionResult());
+			}
+		}
+	}
+
+	/**
+	 * counts decisions evaluated without an evaluation event, e.g. by the {@link CollectResultStream}.
+	 * The delegate is not notified because it needs the event.
+	 * @param instances number of evaluated decisions
+	 * @param elements number of evaluated decision elements
+	 */
+	void addExecutedDecisions(long instances, long elements) {
+		executedDecisionInstances.add(instances);
+		executedDecisionElements.add(elements);
+		DmnRunnerMetrics metrics = currentRunnerMetrics.get();
+		if (metrics != null) {
+			metrics.addExecutedDecisions(instances, elements);
+		}
+	}
+
+	@Override
+	public long getExecutedDecisionInstances() {
+		return executedDecisionInstances.sum();
+	}
+
+	@Override
+	public long getExecutedDecisionElements() {
+		return executedDecisionElements.sum();
+	}
+
+	@Override
+	public long clearExecutedDecisionInstances() {
+		return executedDecisionInstances.sumThenReset();
+	}
+
+	@Override
+	public long clearExecutedDecisionElements() {
+		return executedDecisionElements.sumThenReset();
+	}
+
+	public DmnEngineMetricCollector getDelegate() {
+		return delegate;
+	}
+
+}
@@ -15,6 +15,8 @@
  */
 package de.jlo.talendcomp.camunda.dmn;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -23,23 +25,32 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.management.JMException;
 
 import org.camunda.bpm.dmn.engine.DmnDecision;
 import org.camunda.bpm.dmn.engine.DmnDecisionLogic;
 import org.camunda.bpm.dmn.engine.DmnDecisionResult;
 import org.camunda.bpm.dmn.engine.DmnDecisionResultEntries;
 import org.camunda.bpm.dmn.engine.DmnEngine;
-import org.camunda.bpm.dmn.engine.DmnEngineConfiguration;
+import org.camunda.bpm.dmn.engine.impl.DefaultDmnEngineConfiguration;
 import org.camunda.bpm.dmn.engine.impl.DmnDecisionTableImpl;
 import org.camunda.bpm.dmn.engine.impl.DmnDecisionTableInputImpl;
 import org.camunda.bpm.dmn.engine.impl.DmnDecisionTableOutputImpl;
 import org.camunda.bpm.dmn.engine.impl.DmnExpressionImpl;
-import org.camunda.bpm.engine.variable.VariableMap;
-import org.camunda.bpm.engine.variable.Variables;
+import org.camunda.bpm.engine.variable.context.VariableContext;
 
 /**
  * Utility to run DMN decisions inside Talend
@@ -47,133 +58,550 @@ import org.camunda.bpm.engine.variable.Variables;
  */
 public class DmnRunner {
 	
+	public static final String EVALUATION_MODE_CAMUNDA = "CAMUNDA";
+	public static final String EVALUATION_MODE_COMPILED = "COMPILED";
+	public static final String EVALUATION_MODE_BITSET = "BITSET";
+	public static final int DEFAULT_REQUIRED_DECISION_CACHE_SIZE = 10000;
+	/** the hash of the DMN content every loaded decision has been parsed from, also for decisions shared by the DecisionRegistry */
+	private static final Map<DmnDecision, byte[]> decisionContentHashes = Collections.synchronizedMap(new WeakHashMap<DmnDecision, byte[]>());
 	private DmnEngine dmnEngine = null;
+	private String engineName = null;
 	private DmnDecision decision = null;
-	private VariableMap variables = null;
+	private List<DmnDecision> decisions = Collections.emptyList();
+	private final InputBinding inputBinding = new InputBinding();
 	private DmnDecisionResult resultset = null;
+	private DmnDecisionResult[] decisionResults = null;
 	private DmnDecisionResultEntries oneResult = null;
+	private final List<OutputPlan.Column> outputPlanColumns = new ArrayList<>();
+	private OutputPlan outputPlan = null;
+	private Object[][] outputRows = null;
 	private boolean useCachedDecision = false;
-	private static Map<String, DmnDecision> decisionMap = new HashMap<>();
 	private List<DmnDecisionTableInputImpl> listDecisionTableInputs = null;
 	private List<DmnDecisionTableOutputImpl> listDecisionTableOutputs = null;
 	private List<String> listTalendIncomingColumns = new ArrayList<>();
 	private List<String> listTalendOutgoingColumns = new ArrayList<>();
+	private Map<String, String> outputColumnDecisionKeys = new HashMap<>();
+	private Map<String, Integer> outputColumnDecisionIndexes = new HashMap<>();
 	private boolean provideOneRecordIfNoDecsionResult = false;
 	private boolean provideOneRecordIfNoDecsionResultDelivered = false;
 	private int currentResultIndex = 0;
-	private TypeUtil typeUtil = new TypeUtil();
+	private final TypeUtil typeUtil = new TypeUtil();
 	private boolean cacheResults = false;
-	private Map<String,DmnDecisionResult> resultCache = new HashMap<>();
+	private ResultCache resultCache = new ResultCache();
+	private CacheKey currentCacheKey = new CacheKey();
+	private volatile String evaluationMode = EVALUATION_MODE_CAMUNDA;
+	private CompiledDecisionEvaluator compiledEvaluator = null;
+	private boolean watchDmnFile = false;
+	private DmnFileWatcher fileWatcher = null;
+	private final AtomicReference<ReloadedDecision> reloadedDecision = new AtomicReference<>();
+	private final AtomicInteger countReloads = new AtomicInteger();
+	private final AtomicInteger countReloadErrors = new AtomicInteger();
+	private volatile Exception lastReloadError = null;
+	private File snapshotDir = null;
+	private File persistentCacheDir = null;
+	private long persistentCacheMaxBytes = PersistentResultCache.DEFAULT_MAX_BYTES;
+	private int requiredDecisionCacheSize = DEFAULT_REQUIRED_DECISION_CACHE_SIZE;
+	private volatile boolean loadedFromSnapshot = false;
+	private DmnRunnerMetrics metrics = null;
+	private boolean ruleHitStatistics = false;
+	private boolean adaptiveRuleOrder = false;
+	private boolean streamCollectResults = false;
+	private CollectResultStream collectStream = null;
+	private boolean streaming = false;
+	private Object[] streamedRow = null;
+	
+	/**
+	 * A decision parsed and compiled by the file watcher, waiting to be taken over
+	 */
+	private static class ReloadedDecision {
+		
+		private final List<DmnDecision> decisions;
+		private final String evaluationMode;
+		private final CompiledDecisionEvaluator compiledEvaluator;
+		/** the hash of the new DMN content if the results are cached on disk, otherwise null */
+		private final byte[] contentHash;
+		
+		private ReloadedDecision(List<DmnDecision> decisions, String evaluationMode, CompiledDecisionEvaluator compiledEvaluator, byte[] contentHash) {
+			this.decisions = decisions;
+			this.evaluationMode = evaluationMode;
+			this.compiledEvaluator = compiledEvaluator;
+			this.contentHash = contentHash;
+		}
+		
+	}
+	
+	/**
+	 * creates a runner using the shared default engine
+	 * @throws Exception if the engine cannot be built
+	 */
+	public DmnRunner() throws Exception {
+		this(DmnEngineRegistry.DEFAULT_ENGINE_NAME);
+	}
 	
-	public DmnRunner() {
-		dmnEngine = DmnEngineConfiguration.createDefaultDmnEngineConfiguration().buildEngine();
+	/**
+	 * creates a runner using a shared engine from the DmnEngineRegistry
+	 * @param engineName the name of a registered engine configuration, null or empty means the default engine
+	 * @throws Exception if there is no configuration for this name or the engine cannot be built
+	 */
+	public DmnRunner(String engineName) throws Exception {
+		if (isEmpty(engineName)) {
+			engineName = DmnEngineRegistry.DEFAULT_ENGINE_NAME;
+		}
+		this.engineName = engineName;
+		dmnEngine = DmnEngineRegistry.getEngine(engineName);
 	}
 	
 	/**
 	 * load the DMN rules from a resource
-	 * @param decisionKey the decision key of the final decision table of the DMN
+	 * @param decisionKey the decision key of the final decision table of the DMN.
+	 * Multiple decisions of the DMN can be loaded with a comma separated list of decision keys.
 	 * @param resourceName
 	 * @throws Exception
 	 */
-	public void loadDmnFromResource(String decisionKey, String resourceName) throws Exception {
+	public void loadDmnFromResource(final String decisionKey, final String resourceName) throws Exception {
 		if (isEmpty(decisionKey)) {
 			throw new IllegalArgumentException("decisionKey cannot be null or empty");
 		}
 		if (isEmpty(resourceName)) {
 			throw new IllegalArgumentException("resourceName cannot be null or empty");
 		}
-		String decisionCacheKey = "resource:" + resourceName+"#"+decisionKey;
-		if (useCachedDecision) {
-			decision = decisionMap.get(decisionCacheKey);
-		}
-		if (decision == null) {
-			InputStream in = null;
-			try {
-				in = DmnRunner.class.getResourceAsStream(resourceName);
-				if (in == null) {
-					throw new Exception("Resource: " + resourceName + " not available");
+		Callable<InputStream> source = new Callable<InputStream>() {
+
+			@Override
+			public InputStream call() throws Exception {
+				InputStream in = null;
+				try {
+					in = DmnRunner.class.getResourceAsStream(resourceName);
+					if (in == null) {
+						throw new Exception("Resource: " + resourceName + " not available");
+					}
+				} catch (Exception e) {
+					throw new Exception("Load decision from resource: " + resourceName + " failed: " + e.getMessage(), e);
 				}
-			} catch (Exception e) {
-				throw new Exception("Load decision from resource: " + resourceName + " failed: " + e.getMessage(), e);
+				return in;
 			}
-			loadDecision(in, decisionKey, decisionCacheKey);
-		}
+
+		};
+		List<String> keys = splitDecisionKeys(decisionKey);
+		String sourceKey = engineName + "|resource:" + resourceName;
+		setDecisions(loadDecisions(keys, source, sourceKey, false));
+		inspectDecisionIO();
+		openPersistentCache(keys, sourceKey);
 	}
 
 	/**
-	 * load the DMN rules from a file
-	 * @param decisionKey the decision key of the final decision table of the DMN
+	 * load the DMN rules from a file.
+	 * If the option watchDmnFile is set, the file will be parsed again after every change
+	 * and the new decision will be used from the next evaluation on.
+	 * @param decisionKey the decision key of the final decision table of the DMN.
+	 * Multiple decisions of the DMN can be loaded with a comma separated list of decision keys.
 	 * @param path the path to the file
 	 * @throws Exception
 	 */
-	public void loadDmnFromFile(String decisionKey, String path) throws Exception {
+	public void loadDmnFromFile(final String decisionKey, final String path) throws Exception {
 		if (isEmpty(decisionKey)) {
 			throw new IllegalArgumentException("decisionKey cannot be null or empty");
 		}
 		if (isEmpty(path)) {
 			throw new IllegalArgumentException("path cannot be null or empty");
 		}
-		String decisionCacheKey = "file:" + path+"#"+decisionKey;
-		if (useCachedDecision) {
-			decision = decisionMap.get(decisionCacheKey);
+		Callable<InputStream> source = new Callable<InputStream>() {
+
+			@Override
+			public InputStream call() throws Exception {
+				InputStream in = null;
+				try {
+					File test = new File(path);
+					if (test.canRead() == false) {
+						throw new Exception("File: " + test.getAbsolutePath() + " does not exist or cannot be read");
+					}
+					in = Files.newInputStream(Paths.get(path), StandardOpenOption.READ);
+					if (in == null) {
+						throw new Exception("File with path: " + path + " cannot be read");
+					}
+				} catch (Exception e) {
+					throw new Exception("Load decision file: " + path + " failed: " + e.getMessage(), e);
+				}
+				return in;
+			}
+
+		};
+		List<String> keys = splitDecisionKeys(decisionKey);
+		String sourceKey = engineName + "|file:" + new File(path).getAbsolutePath();
+		setDecisions(loadDecisions(keys, source, sourceKey, false));
+		inspectDecisionIO();
+		openPersistentCache(keys, sourceKey);
+		if (watchDmnFile) {
+			startFileWatcher(path, keys, source, sourceKey);
 		}
-		if (decision == null) {
-			InputStream in = null;
-			try {
-				File test = new File(path);
-				if (test.canRead() == false) {
-					throw new Exception("File: " + test.getAbsolutePath() + " does not exist or cannot be read");
+	}
+	
+	/**
+	 * splits a comma separated list of decision keys
+	 * @param decisionKeys the keys
+	 * @return the keys without duplicates in the given order
+	 */
+	static List<String> splitDecisionKeys(String decisionKeys) {
+		List<String> keys = new ArrayList<>();
+		for (String key : decisionKeys.split(",")) {
+			key = key.trim();
+			if (key.isEmpty() == false && keys.contains(key) == false) {
+				keys.add(key);
+			}
+		}
+		if (keys.isEmpty()) {
+			throw new IllegalArgumentException("decisionKey: " + decisionKeys + " does not contain a decision key");
+		}
+		return keys;
+	}
+	
+	/**
+	 * loads the decisions, every decision will be cached separately.
+	 * The DMN is read and parsed at most once for all keys.
+	 * @param keys the decision keys
+	 * @param source opens the DMN
+	 * @param sourceKey identifies the DMN
+	 * @param reload true: do not take the decisions from the registry but replace them in the registry
+	 * @return the decisions in the order of the keys
+	 */
+	private List<DmnDecision> loadDecisions(List<String> keys, Callable<InputStream> source, String sourceKey, boolean reload) throws Exception {
+		List<DmnDecision> list = new ArrayList<>(keys.size());
+		final DmnContent content = new DmnContent(source);
+		for (final String key : keys) {
+			final String decisionCacheKey = sourceKey + "#" + key;
+			Callable<DmnDecision> loader = new Callable<DmnDecision>() {
+
+				@Override
+				public DmnDecision call() throws Exception {
+					DmnDecision d = loadDecision(content, key, decisionCacheKey);
+					decisionContentHashes.put(d, content.getContentHash());
+					return d;
 				}
-				in = Files.newInputStream(Paths.get(path), StandardOpenOption.READ);
-				if (in == null) {
-					throw new Exception("File with path: " + path + " cannot be read");
+
+			};
+			if (useCachedDecision && reload == false) {
+				list.add(DecisionRegistry.getDecision(decisionCacheKey, loader));
+			} else {
+				list.add(loader.call());
+			}
+		}
+		if (useCachedDecision && reload) {
+			for (int i = 0; i < keys.size(); i++) {
+				DecisionRegistry.put(sourceKey + "#" + keys.get(i), list.get(i));
+			}
+		}
+		return list;
+	}
+	
+	private void setDecisions(List<DmnDecision> decisions) {
+		this.decisions = decisions;
+		this.decision = decisions.get(0);
+		outputColumnDecisionIndexes.clear();
+		outputPlan = null;
+		collectStream = null;
+	}
+	
+	private void startFileWatcher(String path, final List<String> keys, final Callable<InputStream> source, final String sourceKey) throws Exception {
+		stopFileWatcher();
+		try {
+			fileWatcher = new DmnFileWatcher(path, new Runnable() {
+
+				@Override
+				public void run() {
+					reloadDecision(keys, source, sourceKey);
 				}
-			} catch (Exception e) {
-				throw new Exception("Load decision file: " + path + " failed: " + e.getMessage(), e);
+
+			});
+		} catch (IOException e) {
+			throw new Exception("Watching the file: " + path + " failed: " + e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * parses and compiles the changed decision within the watcher thread.
+	 * The running evaluation is not touched, the decision will be taken over before the next evaluation.
+	 * If the new file cannot be parsed, the former decision will be kept.
+	 */
+	private void reloadDecision(List<String> keys, Callable<InputStream> source, String sourceKey) {
+		try {
+			List<DmnDecision> newDecisions = loadDecisions(keys, source, sourceKey, true);
+			String mode = evaluationMode;
+			CompiledDecisionEvaluator newEvaluator = createEvaluator(newDecisions, mode);
+			byte[] contentHash = decisionContentHashes.get(newDecisions.get(0));
+			reloadedDecision.set(new ReloadedDecision(newDecisions, mode, newEvaluator, contentHash));
+		} catch (Exception e) {
+			lastReloadError = e;
+			countReloadErrors.incrementAndGet();
+		}
+	}
+	
+	/**
+	 * takes over a reloaded decision and invalidates the cached results of the former decision
+	 */
+	private void applyReloadedDecision() throws Exception {
+		ReloadedDecision reloaded = reloadedDecision.getAndSet(null);
+		if (reloaded != null) {
+			setDecisions(reloaded.decisions);
+			if (evaluationMode.equals(reloaded.evaluationMode)) {
+				compiledEvaluator = reloaded.compiledEvaluator;
+			} else {
+				compiledEvaluator = createEvaluator(decisions, evaluationMode);
 			}
-			loadDecision(in, decisionKey, decisionCacheKey);
+			collectStream = null;
+			readDecisionIO();
+			resultCache.clear();
+			if (reloaded.contentHash != null && resultCache.getPersistentCache() != null) {
+				resultCache.getPersistentCache().invalidate(reloaded.contentHash);
+			}
+			countReloads.incrementAndGet();
+		}
+	}
+	
+	private void stopFileWatcher() {
+		if (fileWatcher != null) {
+			fileWatcher.close();
+			fileWatcher = null;
+		}
+	}
+	
+	/**
+	 * stops watching the DMN file, writes the cached results to the disk tier and removes the JMX metrics. Must be called at the end.
+	 */
+	public void close() {
+		stopFileWatcher();
+		resultCache.closePersistentCache();
+		disableMetrics();
+	}
+	
+	/**
+	 * sets up the disk tier of the result cache for the loaded decision. The file will be opened with the first cache access.
+	 * Only the results of a single decision are stored on disk.
+	 * The content hash is the hash of the bytes the decision has been parsed from.
+	 */
+	private void openPersistentCache(List<String> keys, String sourceKey) {
+		resultCache.setPersistentCache(null);
+		byte[] contentHash = decisionContentHashes.get(decision);
+		if (persistentCacheDir == null || keys.size() > 1 || contentHash == null) {
+			return;
 		}
+		File cacheFile = PersistentResultCache.getCacheFile(persistentCacheDir, sourceKey + "#" + keys.get(0));
+		PersistentResultCache persistentCache = new PersistentResultCache(cacheFile, contentHash);
+		persistentCache.setMaxBytes(persistentCacheMaxBytes);
+		resultCache.setPersistentCache(persistentCache);
 	}
 	
-	private void loadDecision(InputStream in, String decisionKey, String decisionCacheKey) throws Exception {
+	private DmnDecision loadDecision(DmnContent content, String decisionKey, String decisionCacheKey) throws Exception {
 		try {
-			decision = dmnEngine.parseDecision(decisionKey, in);
-			if (useCachedDecision) {
-				decisionMap.put(decisionCacheKey, decision);
+			if (isSnapshotUsable() == false) {
+				loadedFromSnapshot = false;
+				return content.getDecision(decisionKey);
+			}
+			File snapshotFile = DecisionSnapshot.getSnapshotFile(snapshotDir, decisionCacheKey);
+			DmnDecision d = null;
+			try {
+				d = DecisionSnapshot.read(snapshotFile, decisionKey, content.getContentHash(), (DefaultDmnEngineConfiguration) dmnEngine.getConfiguration());
+			} catch (IOException ioe) {
+				// an unreadable snapshot will be replaced
+			}
+			if (d != null) {
+				loadedFromSnapshot = true;
+				return d;
+			}
+			d = content.getDecision(decisionKey);
+			loadedFromSnapshot = false;
+			try {
+				DecisionSnapshot.write(d, decisionKey, content.getContentHash(), snapshotFile);
+			} catch (IOException ioe) {
+				// the snapshot is only an optimization, the decision is parsed anyway
 			}
-			inspectDecisionIO();
+			return d;
 		} catch (Exception e) {
 			throw new Exception("Load decision with key: " + decisionKey + " from: " + decisionCacheKey + " failed: " + e.getMessage(), e);
-		} finally {
-			if (in != null) {
+		}
+	}
+	
+	/**
+	 * The content of a DMN source, read and parsed only once for all decision keys
+	 */
+	private final class DmnContent {
+		
+		private final Callable<InputStream> source;
+		private byte[] content = null;
+		private byte[] contentHash = null;
+		private Map<String, DmnDecision> parsedDecisions = null;
+		
+		private DmnContent(Callable<InputStream> source) {
+			this.source = source;
+		}
+		
+		private byte[] getContent() throws Exception {
+			if (content == null) {
+				InputStream in = source.call();
 				try {
-					in.close();
-				} catch (IOException ioe) {}
+					content = readContent(in);
+				} finally {
+					try {
+						in.close();
+					} catch (IOException ioe) {}
+				}
 			}
+			return content;
 		}
+		
+		private byte[] getContentHash() throws Exception {
+			if (contentHash == null) {
+				contentHash = DecisionSnapshot.hash(getContent());
+			}
+			return contentHash;
+		}
+		
+		/**
+		 * parses all decisions of the DMN with the first call
+		 */
+		private DmnDecision getDecision(String decisionKey) throws Exception {
+			if (parsedDecisions == null) {
+				Map<String, DmnDecision> map = new HashMap<>();
+				for (DmnDecision d : dmnEngine.parseDecisions(new ByteArrayInputStream(getContent()))) {
+					map.put(d.getKey(), d);
+				}
+				parsedDecisions = map;
+			}
+			DmnDecision d = parsedDecisions.get(decisionKey);
+			if (d == null) {
+				throw new Exception("The DMN does not contain a decision with key: " + decisionKey);
+			}
+			return d;
+		}
+		
+	}
+	
+	/**
+	 * snapshots contain only the Camunda default decision objects and do not call transform listeners
+	 */
+	private boolean isSnapshotUsable() {
+		if (snapshotDir == null || dmnEngine.getConfiguration() instanceof DefaultDmnEngineConfiguration == false) {
+			return false;
+		}
+		DefaultDmnEngineConfiguration configuration = (DefaultDmnEngineConfiguration) dmnEngine.getConfiguration();
+		return configuration.getTransformer().getTransformListeners().isEmpty();
 	}
 	
-	private void inspectDecisionIO() {
+	private static byte[] readContent(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+		byte[] buffer = new byte[8192];
+		int length = 0;
+		while ((length = in.read(buffer)) != -1) {
+			out.write(buffer, 0, length);
+		}
+		return out.toByteArray();
+	}
+	
+	private void inspectDecisionIO() throws Exception {
 		if (decision == null) {
 			throw new IllegalStateException("Decision not loaded");
 		}
+		prepareEvaluator();
+		readDecisionIO();
+	}
+	
+	private void readDecisionIO() {
 		DmnDecisionLogic l = decision.getDecisionLogic();
 		if (l instanceof DmnDecisionTableImpl) {
 			DmnDecisionTableImpl dti = (DmnDecisionTableImpl) l;
 			listDecisionTableInputs = dti.getInputs();
 			listDecisionTableOutputs = dti.getOutputs();
 		}
+		inputBinding.setExpressions(collectExpressions());
+	}
+
+	/**
+	 * collects the expressions of the loaded decisions and their required decisions to find the used input variables
+	 * @return the expressions or null if the used variables cannot be detected
+	 */
+	private List<String> collectExpressions() {
+		if (dmnEngine.getConfiguration() instanceof DefaultDmnEngineConfiguration == false) {
+			return null;
+		}
+		DefaultDmnEngineConfiguration configuration = (DefaultDmnEngineConfiguration) dmnEngine.getConfiguration();
+		List<String> expressions = new ArrayList<>();
+		Set<String> collectedKeys = new HashSet<>();
+		for (DmnDecision d : decisions) {
+			if (collectExpressions(d, configuration, expressions, collectedKeys) == false) {
+				return null;
+			}
+		}
+		return expressions;
+	}
+
+	private static boolean collectExpressions(DmnDecision d, DefaultDmnEngineConfiguration configuration, List<String> expressions, Set<String> collectedKeys) {
+		if (collectedKeys.add(d.getKey()) == false) {
+			return true;
+		}
+		List<String> texts = RequiredDecisionMemo.collectExpressions(d, configuration);
+		if (texts == null) {
+			return false;
+		}
+		expressions.addAll(texts);
+		for (DmnDecision required : d.getRequiredDecisions()) {
+			if (collectExpressions(required, configuration, expressions, collectedKeys) == false) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private static List<DmnDecisionTableOutputImpl> getDecisionTableOutputs(DmnDecision d) {
+		DmnDecisionLogic l = d.getDecisionLogic();
+		if (l instanceof DmnDecisionTableImpl) {
+			return ((DmnDecisionTableImpl) l).getOutputs();
+		} else {
+			return null;
+		}
+	}
+	
+	private void prepareEvaluator() throws Exception {
+		compiledEvaluator = createEvaluator(decisions, evaluationMode);
+		collectStream = null;
+	}
+	
+	private CompiledDecisionEvaluator createEvaluator(List<DmnDecision> ds, String mode) throws Exception {
+		if (EVALUATION_MODE_COMPILED.equals(mode) || EVALUATION_MODE_BITSET.equals(mode)) {
+			CompiledDecisionEvaluator evaluator = new CompiledDecisionEvaluator(dmnEngine, ds, true, EVALUATION_MODE_BITSET.equals(mode), requiredDecisionCacheSize);
+			if (ruleHitStatistics || adaptiveRuleOrder) {
+				// the adaptive order needs the hits, the statistics alone keep the document order
+				evaluator.enableRuleHitStatistics(adaptiveRuleOrder ? RuleHitStatistics.DEFAULT_REORDER_INTERVAL : 0);
+			}
+			return evaluator;
+		} else if (ds.size() > 1) {
+			// the Camunda handlers, only to share the required decisions between the decisions
+			return new CompiledDecisionEvaluator(dmnEngine, ds, false, false, 0);
+		} else {
+			return null;
+		}
+	}
+	
+	private DmnDecisionResult[] evaluateDecisions(VariableContext variables) {
+		return compiledEvaluator.evaluateAll(variables);
+	}
+	
+	private DmnDecisionResult evaluateDecision(VariableContext variables) {
+		if (compiledEvaluator != null) {
+			return compiledEvaluator.evaluate(variables);
+		} else {
+			return dmnEngine.evaluateDecision(decision, variables);
+		}
 	}
 	
 	/**
 	 * clears the former values. Must be performed before loading a new schema record
 	 */
 	public void clearVariables() {
-		if (variables != null) {
-			variables.clear();
-			variables = null;		
-		}
+		inputBinding.clear();
 		resultset = null;
+		outputRows = null;
+		streaming = false;
+		streamedRow = null;
+		decisionResults = null;
 		currentResultIndex = 0;
 		provideOneRecordIfNoDecsionResultDelivered = false;
 		oneResult = null;
@@ -188,11 +616,29 @@ public class DmnRunner {
 		if (isEmpty(variableName)) {
 			throw new IllegalArgumentException("variableName cannot be null or empty");
 		}
-		if (variables == null) {
-			variables = Variables.putValue(variableName, value);
-		} else {
-			variables.putValue(variableName, value);
+		inputBinding.set(inputBinding.bind(variableName), value);
+	}
+
+	/**
+	 * Resolves the slot of an input variable. Should be called once after loading the decision,
+	 * the values of every row are then set with {@link #setInputValue(int, Object)} without any map access.
+	 * @param variableName the name of the input variable (the incoming schema column)
+	 * @return the slot
+	 */
+	public int bindInputVariable(String variableName) {
+		if (isEmpty(variableName)) {
+			throw new IllegalArgumentException("variableName cannot be null or empty");
 		}
+		return inputBinding.bind(variableName);
+	}
+
+	/**
+	 * sets the input value of the current row
+	 * @param slot the slot returned by {@link #bindInputVariable(String)}
+	 * @param value the value
+	 */
+	public void setInputValue(int slot, Object value) {
+		inputBinding.set(slot, value);
 	}
 	
 	/**
@@ -243,10 +689,48 @@ public class DmnRunner {
 	 * @param schemaOutputColumn
 	 */
 	public void addExpectedOutputVariable(String schemaOutputColumn) {
+		addExpectedOutputVariable(schemaOutputColumn, null);
+	}
+
+	/**
+	 * add a Talend schema output variable filled from one of the loaded decisions
+	 * @param schemaOutputColumn
+	 * @param decisionKey the key of the decision delivering the value, null or empty means the first decision
+	 */
+	public void addExpectedOutputVariable(String schemaOutputColumn, String decisionKey) {
 		if (isEmpty(schemaOutputColumn)) {
 			throw new IllegalArgumentException("schemaOutputColumn cannot be null or empty");
 		}
 		listTalendOutgoingColumns.add(schemaOutputColumn);
+		if (isEmpty(decisionKey)) {
+			outputColumnDecisionKeys.remove(schemaOutputColumn);
+		} else {
+			outputColumnDecisionKeys.put(schemaOutputColumn, decisionKey.trim());
+		}
+		outputColumnDecisionIndexes.remove(schemaOutputColumn);
+	}
+	
+	/**
+	 * @param outgoingSchemaColumn
+	 * @return the index of the decision delivering the column value or -1 if the decision is not loaded
+	 */
+	private int getOutputDecisionIndex(String outgoingSchemaColumn) {
+		Integer index = outputColumnDecisionIndexes.get(outgoingSchemaColumn);
+		if (index == null) {
+			index = 0;
+			String decisionKey = outputColumnDecisionKeys.get(outgoingSchemaColumn);
+			if (decisionKey != null) {
+				index = -1;
+				for (int i = 0; i < decisions.size(); i++) {
+					if (decisionKey.equals(decisions.get(i).getKey())) {
+						index = i;
+						break;
+					}
+				}
+			}
+			outputColumnDecisionIndexes.put(outgoingSchemaColumn, index);
+		}
+		return index;
 	}
 
 	/**
@@ -257,34 +741,52 @@ public class DmnRunner {
 		if (listTalendOutgoingColumns == null) {
 			throw new Exception("No Talend schema variables as output are set!");
 		}
-		if (listDecisionTableOutputs != null) {
-			StringBuilder sb = new StringBuilder();
-			for (String name : listTalendOutgoingColumns) {
-				boolean exists = false;
-				for (DmnDecisionTableOutputImpl output : listDecisionTableOutputs) {
-					String key = output.getOutputName();
-					if (name.equals(key)) {
-						exists = true;
-					}
+		StringBuilder sb = new StringBuilder();
+		for (String name : listTalendOutgoingColumns) {
+			int index = getOutputDecisionIndex(name);
+			if (index == -1) {
+				if (sb.length() > 0) {
+					sb.append("\n");
 				}
-				if (exists == false) {
-					if (sb.length() > 0) {
-						sb.append("\n");
-					}
-					sb.append("Talend outgoing schema column: " + name + " has no output variable within the decision: " + decision.getKey());
+				sb.append("Talend outgoing schema column: " + name + " refers to the decision: " + outputColumnDecisionKeys.get(name) + " which is not within the loaded decisions");
+				continue;
+			}
+			DmnDecision outputDecision = decisions.get(index);
+			List<DmnDecisionTableOutputImpl> outputs = index == 0 ? listDecisionTableOutputs : getDecisionTableOutputs(outputDecision);
+			if (outputs == null) {
+				continue;
+			}
+			boolean exists = false;
+			for (DmnDecisionTableOutputImpl output : outputs) {
+				String key = output.getOutputName();
+				if (name.equals(key)) {
+					exists = true;
 				}
 			}
-			if (sb.length() > 0) {
-				throw new Exception(sb.toString());
+			if (exists == false) {
+				if (sb.length() > 0) {
+					sb.append("\n");
+				}
+				sb.append("Talend outgoing schema column: " + name + " has no output variable within the decision: " + outputDecision.getKey());
 			}
 		}
+		if (sb.length() > 0) {
+			throw new Exception(sb.toString());
+		}
 	}
 	
+	/**
+	 * Builds a String key from the current variables.
+	 * The result cache uses the allocation free {@link CacheKey} instead.
+	 * @return the key
+	 */
 	public String getValueKeyForCurrentVariables() {
 		StringBuilder sb = new StringBuilder(100);
-		for (Map.Entry<String, Object> entry : variables.entrySet()) {
-			sb.append(entry.getKey());
-			Object value = entry.getValue();
+		CacheKey key = new CacheKey();
+		inputBinding.fillKey(key);
+		for (int i = 0; i < key.size(); i++) {
+			sb.append(key.getName(i));
+			Object value = key.getValue(i);
 			if (value instanceof Date) {
 				sb.append(((Date) value).getTime());
 			} else {
@@ -300,21 +802,272 @@ public class DmnRunner {
 	 * @throws Exception
 	 */
 	public void evaluate() throws Exception {
-		String inputKey = null;
+		if (metrics == null) {
+			evaluateRow();
+			return;
+		}
+		long start = System.nanoTime();
+		DmnMetricCollector.setCurrentRunnerMetrics(metrics);
+		try {
+			evaluateRow();
+		} catch (Exception e) {
+			metrics.recordError();
+			throw e;
+		} finally {
+			DmnMetricCollector.setCurrentRunnerMetrics(null);
+		}
+		metrics.recordRow(System.nanoTime() - start);
+	}
+	
+	private void evaluateRow() throws Exception {
+		applyReloadedDecision();
+		outputRows = null;
+		streaming = false;
+		streamedRow = null;
+		if (decisions.size() > 1) {
+			evaluateAll();
+			return;
+		}
+		if (cacheResults == false && streamCollectResults && getCollectStream() != null) {
+			evaluateStream();
+			return;
+		}
 		if (cacheResults) {
-			inputKey = getValueKeyForCurrentVariables();
-			resultset = resultCache.get(inputKey);
+			inputBinding.fillKey(currentCacheKey);
+			resultset = resultCache.get(currentCacheKey);
 		}
 		if (resultset == null) {
+			if (inputBinding.hasValues() == false) {
+				throw new Exception("Evaluating decision: " + decision.getName() + " failed: no input values set");
+			}
 			try {
-				resultset = dmnEngine.evaluateDecision(decision, variables);
+				resultset = evaluateDecision(inputBinding);
+				if (cacheResults) {
+					resultset = attachOutputRows(resultset);
+					resultCache.put(currentCacheKey.copy(), resultset);
+				}
+			} catch (Exception e) {
+				throw new Exception("Evaluating decision: " + decision.getName() + " and variables: " + inputBinding + " failed: " + e.getMessage(), e);
+			}
+		}
+	}
+	
+	/**
+	 * finds the matching rules only, the result records are evaluated one by one by next
+	 */
+	private void evaluateStream() throws Exception {
+		if (inputBinding.hasValues() == false) {
+			throw new Exception("Evaluating decision: " + decision.getName() + " failed: no input values set");
+		}
+		resultset = null;
+		currentResultIndex = 0;
+		try {
+			collectStream.evaluate(inputBinding);
+		} catch (Exception e) {
+			throw new Exception("Evaluating decision: " + decision.getName() + " and variables: " + inputBinding + " failed: " + e.getMessage(), e);
+		}
+		streaming = true;
+	}
+
+	private CollectResultStream getCollectStream() throws Exception {
+		if (collectStream == null && CollectResultStream.isStreamable(decision)) {
+			if (dmnEngine.getConfiguration() instanceof DefaultDmnEngineConfiguration == false) {
+				return null;
+			}
+			CompiledDecisionTable compiled = null;
+			if (compiledEvaluator != null) {
+				compiled = compiledEvaluator.getCompiledTable((DmnDecisionTableImpl) decision.getDecisionLogic());
+			}
+			collectStream = new CollectResultStream(decision, (DefaultDmnEngineConfiguration) dmnEngine.getConfiguration(), compiled);
+		}
+		return collectStream;
+	}
+
+	/**
+	 * evaluates all loaded decisions in one pass, required decisions shared by the decisions are evaluated only once
+	 */
+	private void evaluateAll() throws Exception {
+		if (cacheResults) {
+			inputBinding.fillKey(currentCacheKey);
+			decisionResults = resultCache.getAll(currentCacheKey);
+		}
+		if (decisionResults == null) {
+			try {
+				decisionResults = evaluateDecisions(inputBinding);
+				if (cacheResults) {
+					decisionResults[0] = attachOutputRows(decisionResults[0]);
+					resultCache.putAll(currentCacheKey.copy(), decisionResults);
+				}
+			} catch (Exception e) {
+				throw new Exception("Evaluating decisions: " + getDecisionKeys() + " and variables: " + inputBinding + " failed: " + e.getMessage(), e);
+			}
+		}
+		resultset = decisionResults[0];
+	}
+	
+	/**
+	 * Evaluates the decision for a block of input rows.
+	 * Only the first decision is evaluated if multiple decisions are loaded.
+	 * The rows are evaluated with the input binding like single rows: variables not used by the decisions
+	 * are not visible to the engine and the results share the result cache entries of {@link #evaluate()}.
+	 * Identical rows within the batch are evaluated only once and the result cache
+	 * (if option cacheResults is set) is checked once per distinct row.
+	 * The input values set for the current row are discarded, the current result is not touched,
+	 * use {@link #useBatchResult(BatchResult, int)} to iterate through the results of one row with next and getOutputValue.
+	 * @param variableNames the names of the input variables, in the order of the values in the rows
+	 * @param rows the input rows
+	 * @return the results indexed by the row
+	 * @throws Exception if the evaluation of a row fails
+	 */
+	public BatchResult evaluateBatch(String[] variableNames, List<Object[]> rows) throws Exception {
+		if (variableNames == null || variableNames.length == 0) {
+			throw new IllegalArgumentException("variableNames cannot be null or empty");
+		}
+		if (rows == null) {
+			throw new IllegalArgumentException("rows cannot be null");
+		}
+		if (metrics == null) {
+			return evaluateBatchRows(variableNames, rows);
+		}
+		long start = System.nanoTime();
+		DmnMetricCollector.setCurrentRunnerMetrics(metrics);
+		BatchResult result = null;
+		try {
+			result = evaluateBatchRows(variableNames, rows);
+		} catch (Exception e) {
+			metrics.recordError();
+			throw e;
+		} finally {
+			DmnMetricCollector.setCurrentRunnerMetrics(null);
+		}
+		metrics.recordRows(rows.size(), System.nanoTime() - start);
+		return result;
+	}
+	
+	private BatchResult evaluateBatchRows(String[] variableNames, List<Object[]> rows) throws Exception {
+		applyReloadedDecision();
+		int[] slots = new int[variableNames.length];
+		for (int c = 0; c < variableNames.length; c++) {
+			slots[c] = inputBinding.bind(variableNames[c]);
+		}
+		int[] rowToResult = new int[rows.size()];
+		Map<CacheKey, Integer> distinctKeys = new HashMap<>();
+		List<DmnDecisionResult> distinctResults = new ArrayList<>();
+		CacheKey key = new CacheKey(variableNames.length);
+		try {
+			for (int r = 0; r < rowToResult.length; r++) {
+				Object[] row = rows.get(r);
+				if (row == null || row.length != variableNames.length) {
+					throw new IllegalArgumentException("Row " + r + " does not have " + variableNames.length + " values");
+				}
+				inputBinding.clear();
+				for (int c = 0; c < slots.length; c++) {
+					inputBinding.set(slots[c], row[c]);
+				}
+				// the same key as for the row-at-a-time evaluation: only the variables used by the decisions
+				inputBinding.fillKey(key);
+				Integer index = distinctKeys.get(key);
+				if (index == null) {
+					index = distinctResults.size();
+					distinctResults.add(evaluateBatchRow(key));
+					distinctKeys.put(key.copy(), index);
+				}
+				rowToResult[r] = index;
+			}
+		} finally {
+			inputBinding.clear();
+		}
+		return new BatchResult(rowToResult, distinctResults.toArray(new DmnDecisionResult[distinctResults.size()]));
+	}
+
+	/**
+	 * evaluates the values of the input binding and caches the results like {@link #evaluate()}
+	 * @param key the key of the values
+	 * @return the result of the first decision
+	 */
+	private DmnDecisionResult evaluateBatchRow(CacheKey key) throws Exception {
+		if (decisions.size() > 1) {
+			DmnDecisionResult[] results = cacheResults ? resultCache.getAll(key) : null;
+			if (results == null) {
+				try {
+					results = evaluateDecisions(inputBinding);
+				} catch (Exception e) {
+					throw new Exception("Evaluating decisions: " + getDecisionKeys() + " and variables: " + inputBinding + " failed: " + e.getMessage(), e);
+				}
 				if (cacheResults) {
-					resultCache.put(inputKey, resultset);
+					results[0] = attachOutputRows(results[0]);
+					resultCache.putAll(key.copy(), results);
 				}
+			}
+			return results[0];
+		}
+		DmnDecisionResult result = cacheResults ? resultCache.get(key) : null;
+		if (result == null) {
+			try {
+				result = evaluateDecision(inputBinding);
 			} catch (Exception e) {
-				throw new Exception("Evaluating decision: " + decision.getName() + " and variables: " + variables + " failed: " + e.getMessage(), e);
+				throw new Exception("Evaluating decision: " + decision.getName() + " and variables: " + inputBinding + " failed: " + e.getMessage(), e);
 			}
+			if (cacheResults) {
+				result = attachOutputRows(result);
+				resultCache.put(key.copy(), result);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Evaluates the decision for a block of input rows.
+	 * @see #evaluateBatch(String[], List)
+	 * @param variableNames the names of the input variables, in the order of the values in the rows
+	 * @param rows the input rows
+	 * @return the results indexed by the row
+	 * @throws Exception if the evaluation of a row fails
+	 */
+	public BatchResult evaluateBatch(String[] variableNames, Object[][] rows) throws Exception {
+		if (rows == null) {
+			throw new IllegalArgumentException("rows cannot be null");
+		}
+		return evaluateBatch(variableNames, Arrays.asList(rows));
+	}
+
+	/**
+	 * Set the result of one row of a batch as current result-set.
+	 * Afterwards the results can be read with next and getOutputValue like after evaluate.
+	 * @param batchResult the result of evaluateBatch
+	 * @param row the index of the input row
+	 */
+	public void useBatchResult(BatchResult batchResult, int row) {
+		if (batchResult == null) {
+			throw new IllegalArgumentException("batchResult cannot be null");
+		}
+		resultset = batchResult.getResult(row);
+		outputRows = null;
+		streaming = false;
+		streamedRow = null;
+		decisionResults = null;
+		currentResultIndex = 0;
+		provideOneRecordIfNoDecsionResultDelivered = false;
+		oneResult = null;
+	}
+	
+	/**
+	 * Creates an evaluator which evaluates rows of the loaded decision with multiple threads.
+	 * Only the first decision is evaluated if multiple decisions are loaded.
+	 * The result cache of this runner is not used by the evaluator.
+	 * The evaluator keeps the decision loaded at creation time, also if the DMN file will be reloaded.
+	 * @param variableNames the names of the input variables, in the order of the values in the rows
+	 * @param numberWorkers number of worker threads, 0 or less means number of available processors
+	 * @param maxPendingRows max number of rows in progress, 0 or less means 4 times the number of workers
+	 * @return the evaluator, must be closed after use
+	 */
+	public ParallelEvaluator createParallelEvaluator(String[] variableNames, int numberWorkers, int maxPendingRows) {
+		if (decision == null) {
+			throw new IllegalStateException("Decision not loaded");
 		}
+		ParallelEvaluator evaluator = new ParallelEvaluator(dmnEngine, decision, variableNames, numberWorkers, maxPendingRows);
+		evaluator.setCompiledEvaluator(compiledEvaluator);
+		return evaluator;
 	}
 	
 	/**
@@ -322,7 +1075,9 @@ public class DmnRunner {
 	 * return count result rows
 	 */
 	public int countResultRows() {
-		if (resultset != null) {
+		if (streaming) {
+			return collectStream.size();
+		} else if (resultset != null) {
 			return resultset.size();
 		} else {
 			return 0;
@@ -335,6 +1090,9 @@ public class DmnRunner {
 	 * @throws Exception
 	 */
 	public boolean next() throws Exception {
+		if (streaming) {
+			return nextStreamed();
+		}
 		if (resultset == null) {
 			return false;
 		} else if (resultset.size() == 0) {
@@ -351,12 +1109,40 @@ public class DmnRunner {
 		}
 	}
 	
+	private boolean nextStreamed() throws Exception {
+		streamedRow = null;
+		if (collectStream.size() == 0) {
+			if (provideOneRecordIfNoDecsionResult && provideOneRecordIfNoDecsionResultDelivered == false) {
+				provideOneRecordIfNoDecsionResultDelivered = true;
+				return true;
+			}
+		}
+		if (collectStream.hasNext()) {
+			try {
+				oneResult = collectStream.next();
+			} catch (Exception e) {
+				throw new Exception("Evaluating decision: " + decision.getName() + " and variables: " + inputBinding + " failed: " + e.getMessage(), e);
+			}
+			currentResultIndex++;
+			return true;
+		} else {
+			oneResult = null;
+			return false;
+		}
+	}
+	
 	/**
 	 * Returns a output value for the current result record
 	 * @param outgoingSchemaColumn
 	 * @return the value
 	 */
 	public Object getOutputValue(String outgoingSchemaColumn, boolean nullable) throws Exception {
+		if (outputColumnDecisionKeys.isEmpty() == false) {
+			int index = getOutputDecisionIndex(outgoingSchemaColumn);
+			if (index != 0) {
+				return getOutputValueFromDecision(index, outgoingSchemaColumn, nullable);
+			}
+		}
 		if (oneResult == null) {
 			if (provideOneRecordIfNoDecsionResult) {
 				return null;
@@ -372,6 +1158,27 @@ public class DmnRunner {
 		}
 	}
 	
+	/**
+	 * The result records are delivered by the first decision, the other decisions must have at most one result record.
+	 */
+	private Object getOutputValueFromDecision(int index, String outgoingSchemaColumn, boolean nullable) throws Exception {
+		if (index == -1) {
+			throw new IllegalStateException("For column: " + outgoingSchemaColumn + " the decision: " + outputColumnDecisionKeys.get(outgoingSchemaColumn) + " is not loaded");
+		}
+		if (decisionResults == null) {
+			throw new IllegalStateException("For column: " + outgoingSchemaColumn + " there is no result of the decision: " + decisions.get(index).getKey() + ". Did you have called evaluate?");
+		}
+		DmnDecisionResult result = decisionResults[index];
+		if (result.size() > 1) {
+			throw new Exception("For column: " + outgoingSchemaColumn + " the decision: " + decisions.get(index).getKey() + " delivers " + result.size() + " result records. Only the first decision key can deliver multiple result records.");
+		}
+		Object value = result.isEmpty() ? null : result.get(0).get(outgoingSchemaColumn);
+		if (value == null && nullable == false) {
+			throw new Exception("For column: " + outgoingSchemaColumn + " null value detected but column is configured as not nullable");
+		}
+		return value;
+	}
+	
 	public String getOutputValueAsString(String outgoingSchemaColumn, boolean nullable) throws Exception {
 		Object value = getOutputValue(outgoingSchemaColumn, nullable);
 		return typeUtil.convertToString(value, null);
@@ -417,6 +1224,142 @@ public class DmnRunner {
 		return typeUtil.convertToShort(value, null);
 	}
 
+	/**
+	 * Resolves an outgoing schema column to an index. Should be called once after loading the decision,
+	 * the values are then read with the index based getOutputValueAs methods. The values of a result
+	 * are converted only once and kept with the result in the result cache.
+	 * @param outgoingSchemaColumn the column name, must be the name of an output of the decision
+	 * @param javaClassName the simple class name of the column type (String, Integer, Long, Double, Float, BigDecimal, Boolean, Date, Short or Object)
+	 * @param nullable if false a missing value is an error
+	 * @param pattern the date pattern for Date columns, can be null
+	 * @return the column index
+	 */
+	public int bindOutputColumn(String outgoingSchemaColumn, String javaClassName, boolean nullable, String pattern) {
+		outputPlanColumns.add(new OutputPlan.Column(outgoingSchemaColumn, javaClassName, nullable, pattern));
+		outputPlan = null;
+		return outputPlanColumns.size() - 1;
+	}
+
+	private OutputPlan getOutputPlan() {
+		if (outputPlan == null && outputPlanColumns.isEmpty() == false) {
+			int[] decisionIndexes = new int[outputPlanColumns.size()];
+			for (int i = 0; i < decisionIndexes.length; i++) {
+				decisionIndexes[i] = getOutputDecisionIndex(outputPlanColumns.get(i).getName());
+			}
+			outputPlan = new OutputPlan(outputPlanColumns, decisionIndexes);
+		}
+		return outputPlan;
+	}
+
+	private DmnDecisionResult attachOutputRows(DmnDecisionResult result) {
+		OutputPlan plan = getOutputPlan();
+		if (plan != null) {
+			return plan.attach(result, typeUtil);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the converted output value of a bound column for the current result record
+	 * @param column the index returned by {@link #bindOutputColumn(String, String, boolean, String)}
+	 * @return the value in the type of the column
+	 */
+	public Object getOutputValue(int column) throws Exception {
+		OutputPlan plan = getOutputPlan();
+		if (plan == null) {
+			throw new IllegalStateException("No output column bound. Call bindOutputColumn before.");
+		}
+		if (plan.getDecisionIndex(column) != 0) {
+			// the other decisions deliver at most one result record
+			return plan.convert(column, getOutputValue(plan.getName(column), plan.isNullable(column)), typeUtil);
+		}
+		if (oneResult == null) {
+			if (provideOneRecordIfNoDecsionResult) {
+				return null;
+			} else {
+				throw new IllegalStateException("We expect to have one result record but there is no one. Did you have called next and set option provideOneRecordIfNoDecsionResult correctly?");
+			}
+		}
+		if (streaming) {
+			if (streamedRow == null) {
+				streamedRow = plan.extractRow(oneResult, typeUtil);
+			}
+			return plan.getValue(streamedRow, column);
+		}
+		if (outputRows == null) {
+			outputRows = plan.getRows(resultset, typeUtil);
+		}
+		return plan.getValue(outputRows[currentResultIndex - 1], column);
+	}
+
+	public String getOutputValueAsString(int column) throws Exception {
+		return (String) getOutputValue(column);
+	}
+
+	public Integer getOutputValueAsInteger(int column) throws Exception {
+		return (Integer) getOutputValue(column);
+	}
+
+	public Long getOutputValueAsLong(int column) throws Exception {
+		return (Long) getOutputValue(column);
+	}
+
+	public Double getOutputValueAsDouble(int column) throws Exception {
+		return (Double) getOutputValue(column);
+	}
+
+	public Float getOutputValueAsFloat(int column) throws Exception {
+		return (Float) getOutputValue(column);
+	}
+
+	public BigDecimal getOutputValueAsBigDecimal(int column) throws Exception {
+		return (BigDecimal) getOutputValue(column);
+	}
+
+	public Boolean getOutputValueAsBoolean(int column) throws Exception {
+		return (Boolean) getOutputValue(column);
+	}
+
+	public Date getOutputValueAsDate(int column) throws Exception {
+		return (Date) getOutputValue(column);
+	}
+
+	public Short getOutputValueAsShort(int column) throws Exception {
+		return (Short) getOutputValue(column);
+	}
+
+	private Object getNotNullOutputValue(int column) throws Exception {
+		Object value = getOutputValue(column);
+		if (value == null) {
+			throw new Exception("For column: " + getOutputPlan().getName(column) + " null value detected but column is configured as not nullable");
+		}
+		return value;
+	}
+
+	public int getOutputInt(int column) throws Exception {
+		return (Integer) getNotNullOutputValue(column);
+	}
+
+	public long getOutputLong(int column) throws Exception {
+		return (Long) getNotNullOutputValue(column);
+	}
+
+	public double getOutputDouble(int column) throws Exception {
+		return (Double) getNotNullOutputValue(column);
+	}
+
+	public float getOutputFloat(int column) throws Exception {
+		return (Float) getNotNullOutputValue(column);
+	}
+
+	public short getOutputShort(int column) throws Exception {
+		return (Short) getNotNullOutputValue(column);
+	}
+
+	public boolean getOutputBoolean(int column) throws Exception {
+		return (Boolean) getNotNullOutputValue(column);
+	}
+
 	/**
 	 * returns true if the string is null or empty or equals "null"
 	 * @param s the string
@@ -455,5 +1398,322 @@ public class DmnRunner {
 		this.cacheResults = cacheResults;
 	}
 
+	public boolean isUseCachedDecision() {
+		return useCachedDecision;
+	}
+
+	/**
+	 * @return the keys of the loaded decisions
+	 */
+	public List<String> getDecisionKeys() {
+		List<String> keys = new ArrayList<>(decisions.size());
+		for (DmnDecision d : decisions) {
+			keys.add(d.getKey());
+		}
+		return keys;
+	}
+
+	public String getEngineName() {
+		return engineName;
+	}
+
+	public String getEvaluationMode() {
+		return evaluationMode;
+	}
+
+	/**
+	 * Set how the decision will be evaluated.
+	 * CAMUNDA uses the Camunda engine, COMPILED compiles the decision tables at load time
+	 * and evaluates the input entries which can be compiled without the FEEL engine.
+	 * BITSET uses the compiled input entries and memoizes the matching rules per input column and value.
+	 * The results are identical.
+	 * @param evaluationMode CAMUNDA, COMPILED or BITSET, null means CAMUNDA
+	 * @throws Exception if the decision is already loaded and cannot be compiled
+	 */
+	public void setEvaluationMode(String evaluationMode) throws Exception {
+		if (isEmpty(evaluationMode)) {
+			evaluationMode = EVALUATION_MODE_CAMUNDA;
+		}
+		evaluationMode = evaluationMode.trim().toUpperCase();
+		if (EVALUATION_MODE_CAMUNDA.equals(evaluationMode) == false
+				&& EVALUATION_MODE_COMPILED.equals(evaluationMode) == false
+				&& EVALUATION_MODE_BITSET.equals(evaluationMode) == false) {
+			throw new IllegalArgumentException("Unknown evaluation mode: " + evaluationMode);
+		}
+		this.evaluationMode = evaluationMode;
+		if (decision != null) {
+			prepareEvaluator();
+		}
+	}
+
+	/**
+	 * set true to share the parsed decision with all other runners in this JVM.
+	 * The decision will be parsed only once, also if multiple runners load it at the same time.
+	 * Must be set before the decision will be loaded.
+	 * @param useCachedDecision
+	 */
+	public void setUseCachedDecision(boolean useCachedDecision) {
+		this.useCachedDecision = useCachedDecision;
+	}
+
+	public int getRequiredDecisionCacheSize() {
+		return requiredDecisionCacheSize;
+	}
+
+	/**
+	 * Set the maximum number of cached results per required decision of a DRG.
+	 * A required decision is evaluated only once per distinct combination of the variables it uses.
+	 * Works with the evaluation modes COMPILED and BITSET, must be set before the decision will be loaded.
+	 * @param requiredDecisionCacheSize null or 0 disables the cache
+	 */
+	public void setRequiredDecisionCacheSize(Integer requiredDecisionCacheSize) {
+		this.requiredDecisionCacheSize = requiredDecisionCacheSize != null ? requiredDecisionCacheSize : 0;
+	}
+
+	/**
+	 * @return the directory for the decision snapshots of the current user in the temp directory
+	 */
+	public static String getDefaultSnapshotDir() {
+		return new File(System.getProperty("java.io.tmpdir"), "tCamundaDMN-snapshots-" + System.getProperty("user.name")).getAbsolutePath();
+	}
+
+	/**
+	 * Set the directory for the precompiled decision snapshots.
+	 * The first load of a decision writes a snapshot, later loads use the snapshot
+	 * instead of parsing the DMN if the content of the DMN has not been changed.
+	 * The directory will be created owner-only, on POSIX file systems snapshots in a directory
+	 * writable by others or owned by another user are ignored.
+	 * Must be set before the decision will be loaded.
+	 * @param snapshotDir the directory, null or empty disables the snapshots
+	 */
+	public void setSnapshotDir(String snapshotDir) {
+		if (isEmpty(snapshotDir)) {
+			this.snapshotDir = null;
+		} else {
+			this.snapshotDir = new File(snapshotDir.trim());
+		}
+	}
+
+	public String getSnapshotDir() {
+		return snapshotDir != null ? snapshotDir.getAbsolutePath() : null;
+	}
+
+	/**
+	 * @return the directory for the persistent result cache of the current user in the temp directory
+	 */
+	public static String getDefaultPersistentCacheDir() {
+		return new File(System.getProperty("java.io.tmpdir"), "tCamundaDMN-results-" + System.getProperty("user.name")).getAbsolutePath();
+	}
+
+	/**
+	 * Set the directory for the disk tier of the result cache. The cached results survive the job run
+	 * and are used by the next runs as long as the DMN content has not been changed.
+	 * Results evicted from memory are written to disk, the remaining results at close.
+	 * Takes effect only with option cacheResults and a single decision. Must be set before the decision will be loaded.
+	 * The directory will be created owner-only, on POSIX file systems a cache file in a directory
+	 * writable by others or owned by another user is not used.
+	 * @param persistentCacheDir the directory, null or empty disables the disk tier
+	 */
+	public void setCachePersistentDir(String persistentCacheDir) {
+		if (isEmpty(persistentCacheDir)) {
+			this.persistentCacheDir = null;
+		} else {
+			this.persistentCacheDir = new File(persistentCacheDir.trim());
+		}
+	}
+
+	public String getCachePersistentDir() {
+		return persistentCacheDir != null ? persistentCacheDir.getAbsolutePath() : null;
+	}
+
+	/**
+	 * Set the size limit of the cache file. If the limit is reached no more results are written,
+	 * the next job run removes the superseded and expired results and if necessary the oldest results.
+	 * Must be set before the decision will be loaded.
+	 * @param maxMB null means the default of 256 MB, 0 means no limit
+	 */
+	public void setCachePersistentMaxMB(Integer maxMB) {
+		this.persistentCacheMaxBytes = maxMB != null ? maxMB * 1024L * 1024L : PersistentResultCache.DEFAULT_MAX_BYTES;
+	}
+
+	/**
+	 * @return true if the last loaded decision has been taken from a snapshot
+	 */
+	public boolean isLoadedFromSnapshot() {
+		return loadedFromSnapshot;
+	}
+
+	public boolean isRuleHitStatistics() {
+		return ruleHitStatistics;
+	}
+
+	/**
+	 * set true to count the hits per rule of the decision tables. The rules are evaluated as without the statistics.
+	 * Works with the evaluation modes COMPILED and BITSET, must be set before the decision will be loaded.
+	 * @param ruleHitStatistics
+	 */
+	public void setRuleHitStatistics(boolean ruleHitStatistics) {
+		this.ruleHitStatistics = ruleHitStatistics;
+	}
+
+	public boolean isAdaptiveRuleOrder() {
+		return adaptiveRuleOrder;
+	}
+
+	/**
+	 * set true to test the rules of decision tables with the hit policy UNIQUE or ANY in the order of their hits
+	 * and to stop the evaluation at the first matching rule.
+	 * Attention: a violation of these hit policies (a second matching rule) is not detected any more
+	 * and the rule hit statistics count only the first matching rule.
+	 * Works with the evaluation modes COMPILED and BITSET, must be set before the decision will be loaded.
+	 * @param adaptiveRuleOrder
+	 */
+	public void setAdaptiveRuleOrder(boolean adaptiveRuleOrder) {
+		this.adaptiveRuleOrder = adaptiveRuleOrder;
+	}
+
+	/**
+	 * @return the hits per rule of the decision tables or null if the statistics are not enabled
+	 */
+	public String getRuleHitReport() {
+		return compiledEvaluator != null ? compiledEvaluator.createRuleHitReport() : null;
+	}
+
+	public boolean isStreamCollectResults() {
+		return streamCollectResults;
+	}
+
+	/**
+	 * set true to deliver the result records of a decision table with the hit policy COLLECT (without aggregation) one by one.
+	 * The evaluation finds only the matching rules, the output entries of a rule are evaluated by next.
+	 * The memory per row does not grow with the number of matching rules.
+	 * The input values must not be changed until all result records are read.
+	 * Not used if the results are cached, multiple decisions are loaded or the decision has required decisions.
+	 * @param streamCollectResults
+	 */
+	public void setStreamCollectResults(boolean streamCollectResults) {
+		this.streamCollectResults = streamCollectResults;
+	}
+
+	public boolean isWatchDmnFile() {
+		return watchDmnFile;
+	}
+
+	/**
+	 * set true to reload the decision if the DMN file changes.
+	 * Must be set before the decision will be loaded with loadDmnFromFile.
+	 * @param watchDmnFile
+	 */
+	public void setWatchDmnFile(boolean watchDmnFile) {
+		this.watchDmnFile = watchDmnFile;
+	}
+
+	/**
+	 * @return number of reloaded decisions which has been taken over
+	 */
+	public int getReloadCount() {
+		return countReloads.get();
+	}
+
+	/**
+	 * @return number of failed attempts to reload the changed DMN file
+	 */
+	public int getReloadErrorCount() {
+		return countReloadErrors.get();
+	}
+
+	/**
+	 * @return the error of the last failed reload or null
+	 */
+	public Exception getLastReloadError() {
+		return lastReloadError;
+	}
+
+	/**
+	 * Set the maximum number of cached results
+	 * @param maxEntries null or 0 means no limit
+	 */
+	public void setCacheMaxEntries(Integer maxEntries) {
+		resultCache.setMaxEntries(maxEntries != null ? maxEntries : 0);
+	}
+
+	/**
+	 * Set the approximate memory budget of the result cache
+	 * @param maxMemoryMB null or 0 means no limit
+	 */
+	public void setCacheMaxMemoryMB(Integer maxMemoryMB) {
+		resultCache.setMaxBytes(maxMemoryMB != null ? maxMemoryMB * 1024L * 1024L : 0);
+	}
+
+	/**
+	 * Set the time-to-live for the cached results
+	 * @param timeToLiveSeconds null or 0 means cached results never expire
+	 */
+	public void setCacheTimeToLiveSeconds(Integer timeToLiveSeconds) {
+		resultCache.setTimeToLiveMillis(timeToLiveSeconds != null ? timeToLiveSeconds * 1000L : 0);
+	}
+
+	/**
+	 * registers live metrics of this runner as MBean in the platform MBean server.
+	 * The executed decision elements are counted if the engine has been built by the {@link DmnEngineRegistry}.
+	 * The parallel evaluator is not covered.
+	 * @param name the name of the MBean, e.g. job name and component id
+	 * @throws Exception if the MBean cannot be registered
+	 */
+	public void enableMetrics(String name) throws Exception {
+		if (isEmpty(name)) {
+			throw new IllegalArgumentException("name cannot be null or empty");
+		}
+		disableMetrics();
+		DmnRunnerMetrics newMetrics = new DmnRunnerMetrics(this);
+		try {
+			newMetrics.register(name.trim());
+		} catch (JMException e) {
+			throw new Exception("Register the JMX metrics with name: " + name + " failed: " + e.getMessage(), e);
+		}
+		metrics = newMetrics;
+	}
+	
+	/**
+	 * removes the MBean of the metrics
+	 */
+	public void disableMetrics() {
+		if (metrics != null) {
+			metrics.unregister();
+			metrics = null;
+		}
+	}
+	
+	/**
+	 * @return the metrics or null if not enabled
+	 */
+	public DmnRunnerMetrics getMetrics() {
+		return metrics;
+	}
+	
+	public long getCacheHits() {
+		return resultCache.getHits();
+	}
+
+	public long getCacheMisses() {
+		return resultCache.getMisses();
+	}
+
+	public long getCacheEvictions() {
+		return resultCache.getEvictions();
+	}
+
+	public int getCacheSize() {
+		return resultCache.size();
+	}
+
+	/**
+	 * @return number of results taken from the disk tier, they are included in the cache hits
+	 */
+	public long getCachePersistentHits() {
+		PersistentResultCache persistentCache = resultCache.getPersistentCache();
+		return persistentCache != null ? persistentCache.getHits() : 0;
+	}
+
 
 }
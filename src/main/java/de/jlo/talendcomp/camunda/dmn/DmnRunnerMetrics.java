@@ -0,0 +1,195 @@
+/**
+ * Copyright 2021 Jan Lolling jan.lolling@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jlo.talendcomp.camunda.dmn;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Live metrics of a {@link DmnRunner}, registered as MBean in the platform MBean server.
+ * The counters are LongAdders and can stay enabled under full load.
+ * The cache counters are read from the result cache of the runner without synchronization.
+ * This class is thread safe.
+ *
+ * @author jan.lolling@gmail.com
+ */
+public final class DmnRunnerMetrics implements DmnRunnerMetricsMBean {
+
+	public static final String JMX_DOMAIN = "de.jlo.talendcomp.camunda.dmn";
+	private final DmnRunner runner;
+	private final LongAdder rowsEvaluated = new LongAdder();
+	private final LongAdder errors = new LongAdder();
+	private final LongAdder executedDecisionInstances = new LongAdder();
+	private final LongAdder executedDecisionElements = new LongAdder();
+	private final LongAdder evaluationNanos = new LongAdder();
+	private final LongAccumulator maxEvaluationNanos = new LongAccumulator(new LongBinaryOperator() {
+
+		@Override
+		public long applyAsLong(long left, long right) {
+			return Math.max(left, right);
+		}
+
+	}, 0);
+	private volatile long cacheHitsOffset = 0;
+	private volatile long cacheMissesOffset = 0;
+	private volatile long cacheEvictionsOffset = 0;
+	private ObjectName objectName = null;
+
+	DmnRunnerMetrics(DmnRunner runner) {
+		this.runner = runner;
+	}
+
+	/**
+	 * registers the metrics in the platform MBean server.
+	 * If the name is already used (e.g. by a parallel run of the same job) a number will be appended.
+	 * @param name the name of the runner, e.g. job name and component id
+	 * @return the object name
+	 * @throws JMException if the registration fails
+	 */
+	synchronized ObjectName register(String name) throws JMException {
+		if (objectName != null) {
+			throw new IllegalStateException("The metrics are already registered as: " + objectName);
+		}
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		String uniqueName = name;
+		for (int i = 2; ; i++) {
+			ObjectName newName = new ObjectName(JMX_DOMAIN + ":type=DmnRunner,name=" + ObjectName.quote(uniqueName));
+			try {
+				server.registerMBean(this, newName);
+				objectName = newName;
+				return objectName;
+			} catch (InstanceAlreadyExistsException e) {
+				uniqueName = name + "#" + i;
+			}
+		}
+	}
+
+	/**
+	 * removes the metrics from the platform MBean server
+	 */
+	synchronized void unregister() {
+		if (objectName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			} catch (JMException e) {
+				// already removed
+			}
+			objectName = null;
+		}
+	}
+
+	public synchronized ObjectName getObjectName() {
+		return objectName;
+	}
+
+	void recordRow(long nanos) {
+		rowsEvaluated.increment();
+		evaluationNanos.add(nanos);
+		maxEvaluationNanos.accumulate(nanos);
+	}
+
+	/**
+	 * a batch counts with its average time per row for the max time
+	 */
+	void recordRows(int rows, long nanos) {
+		if (rows > 0) {
+			rowsEvaluated.add(rows);
+			evaluationNanos.add(nanos);
+			maxEvaluationNanos.accumulate(nanos / rows);
+		}
+	}
+
+	void recordError() {
+		errors.increment();
+	}
+
+	void addExecutedDecisions(long instances, long elements) {
+		executedDecisionInstances.add(instances);
+		executedDecisionElements.add(elements);
+	}
+
+	@Override
+	public String getDecisionKeys() {
+		return String.join(",", runner.getDecisionKeys());
+	}
+
+	@Override
+	public long getRowsEvaluated() {
+		return rowsEvaluated.sum();
+	}
+
+	@Override
+	public long getErrors() {
+		return errors.sum();
+	}
+
+	@Override
+	public long getExecutedDecisionInstances() {
+		return executedDecisionInstances.sum();
+	}
+
+	@Override
+	public long getExecutedDecisionElements() {
+		return executedDecisionElements.sum();
+	}
+
+	@Override
+	public long getCacheHits() {
+		return runner.getCacheHits() - cacheHitsOffset;
+	}
+
+	@Override
+	public long getCacheMisses() {
+		return runner.getCacheMisses() - cacheMissesOffset;
+	}
+
+	@Override
+	public long getCacheEvictions() {
+		return runner.getCacheEvictions() - cacheEvictionsOffset;
+	}
+
+	@Override
+	public long getAverageEvaluationNanos() {
+		long rows = rowsEvaluated.sum();
+		return rows > 0 ? evaluationNanos.sum() / rows : 0;
+	}
+
+	@Override
+	public long getMaxEvaluationNanos() {
+		return maxEvaluationNanos.get();
+	}
+
+	@Override
+	public void reset() {
+		rowsEvaluated.reset();
+		errors.reset();
+		executedDecisionInstances.reset();
+		executedDecisionElements.reset();
+		evaluationNanos.reset();
+		maxEvaluationNanos.reset();
+		cacheHitsOffset = runner.getCacheHits();
+		cacheMissesOffset = runner.getCacheMisses();
+		cacheEvictionsOffset = runner.getCacheEvictions();
+	}
+
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright 2021 Jan Lolling jan.lolling@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jlo.talendcomp.camunda.dmn;
+
+/**
+ * JMX view of the metrics of a {@link DmnRunner}
+ *
+ * @author jan.lolling@gmail.com
+ */
+public interface DmnRunnerMetricsMBean {
+
+	/**
+	 * @return the keys of the evaluated decisions
+	 */
+	String getDecisionKeys();
+
+	/**
+	 * @return number of evaluated input rows, including rows taken from the result cache
+	 */
+	long getRowsEvaluated();
+
+	/**
+	 * @return number of failed evaluations
+	 */
+	long getErrors();
+
+	/**
+	 * @return number of decisions evaluated by the engine (counted by the metric collector)
+	 */
+	long getExecutedDecisionInstances();
+
+	/**
+	 * @return number of decision elements evaluated by the engine (counted by the metric collector)
+	 */
+	long getExecutedDecisionElements();
+
+	long getCacheHits();
+
+	long getCacheMisses();
+
+	long getCacheEvictions();
+
+	/**
+	 * @return average time of the evaluation of a row in ns
+	 */
+	long getAverageEvaluationNanos();
+
+	/**
+	 * @return max time of the evaluation of a row in ns
+	 */
+	long getMaxEvaluationNanos();
+
+	/**
+	 * sets all counters to 0
+	 */
+	void reset();
+
+}
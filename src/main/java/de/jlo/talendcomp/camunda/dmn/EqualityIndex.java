@@ -0,0 +1,184 @@
+/**
+ * Copyright 2021 Jan Lolling jan.lolling@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jlo.talendcomp.camunda.dmn;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hash index for an input column which is tested only with equality
+ * (string literals, numbers or lists of them) or "-".
+ * For an input value the index returns the rules which can match in document order:
+ * the rules testing this value and the rules with "-".
+ *
+ * @author jan.lolling@gmail.com
+ */
+public final class EqualityIndex {
+
+	private final int input;
+	private final boolean numeric;
+	private final Map<Object, int[]> candidatesByValue;
+	private final int[] wildcardRules;
+	private final double expectedCandidates;
+
+	private EqualityIndex(int input, boolean numeric, Map<Object, int[]> candidatesByValue, int[] wildcardRules, double expectedCandidates) {
+		this.input = input;
+		this.numeric = numeric;
+		this.candidatesByValue = candidatesByValue;
+		this.wildcardRules = wildcardRules;
+		this.expectedCandidates = expectedCandidates;
+	}
+
+	/**
+	 * builds the index for an input column
+	 * @param table the compiled table
+	 * @param input the index of the input column
+	 * @return the index or null if the column is not only tested with equality
+	 */
+	static EqualityIndex build(CompiledDecisionTable table, int input) {
+		Map<Object, List<Integer>> rulesByValue = new LinkedHashMap<>();
+		List<Integer> wildcards = new ArrayList<>();
+		Boolean numeric = null;
+		for (int r = 0; r < table.countRules(); r++) {
+			CompiledUnaryTest test = table.getCondition(input, r);
+			if (test instanceof UnaryTestCompiler.AnyTest) {
+				wildcards.add(r);
+				continue;
+			}
+			CompiledUnaryTest[] tests = null;
+			if (test instanceof UnaryTestCompiler.AnyOfTest) {
+				tests = ((UnaryTestCompiler.AnyOfTest) test).tests;
+			} else if (test != null) {
+				tests = new CompiledUnaryTest[] {test};
+			} else {
+				return null;
+			}
+			for (CompiledUnaryTest t : tests) {
+				Object key = null;
+				if (t instanceof UnaryTestCompiler.StringEqualsTest && numeric != Boolean.TRUE) {
+					numeric = Boolean.FALSE;
+					key = ((UnaryTestCompiler.StringEqualsTest) t).literal;
+				} else if (t instanceof UnaryTestCompiler.RangeTest && ((UnaryTestCompiler.RangeTest) t).isEquality() && numeric != Boolean.FALSE) {
+					numeric = Boolean.TRUE;
+					key = normalize(((UnaryTestCompiler.RangeTest) t).low);
+				} else {
+					return null;
+				}
+				List<Integer> rules = rulesByValue.get(key);
+				if (rules == null) {
+					rules = new ArrayList<>();
+					rulesByValue.put(key, rules);
+				}
+				if (rules.isEmpty() || rules.get(rules.size() - 1) != r) {
+					rules.add(r);
+				}
+			}
+		}
+		if (rulesByValue.isEmpty()) {
+			return null;
+		}
+		int[] wildcardRules = toArray(wildcards);
+		Map<Object, int[]> candidatesByValue = new HashMap<>(rulesByValue.size() * 2);
+		long sumCandidates = 0;
+		for (Map.Entry<Object, List<Integer>> entry : rulesByValue.entrySet()) {
+			int[] candidates = merge(toArray(entry.getValue()), wildcardRules);
+			candidatesByValue.put(entry.getKey(), candidates);
+			sumCandidates = sumCandidates + candidates.length;
+		}
+		double expected = (double) sumCandidates / (double) rulesByValue.size();
+		return new EqualityIndex(input, numeric, candidatesByValue, wildcardRules, expected);
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		int[] array = new int[list.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = list.get(i);
+		}
+		return array;
+	}
+
+	/**
+	 * merges two sorted rule index arrays into one sorted array
+	 */
+	static int[] merge(int[] a, int[] b) {
+		int[] result = new int[a.length + b.length];
+		int i = 0, j = 0, k = 0;
+		while (i < a.length && j < b.length) {
+			if (a[i] < b[j]) {
+				result[k++] = a[i++];
+			} else if (a[i] > b[j]) {
+				result[k++] = b[j++];
+			} else {
+				result[k++] = a[i++];
+				j++;
+			}
+		}
+		while (i < a.length) {
+			result[k++] = a[i++];
+		}
+		while (j < b.length) {
+			result[k++] = b[j++];
+		}
+		return k == result.length ? result : Arrays.copyOf(result, k);
+	}
+
+	private static BigDecimal normalize(BigDecimal n) {
+		if (n.signum() == 0) {
+			return BigDecimal.ZERO;
+		}
+		return n.stripTrailingZeros();
+	}
+
+	/**
+	 * returns the candidate rules for the value
+	 * @param value the tested input value
+	 * @return the rule indexes in document order (must not be modified) or null if the index cannot be used for this value
+	 */
+	int[] lookup(Object value) {
+		Object key = null;
+		if (numeric) {
+			BigDecimal n = UnaryTestCompiler.toBigDecimal(value);
+			if (n == null) {
+				return null;
+			}
+			key = normalize(n);
+		} else {
+			if (value instanceof String == false) {
+				return null;
+			}
+			key = value;
+		}
+		int[] candidates = candidatesByValue.get(key);
+		return candidates != null ? candidates : wildcardRules;
+	}
+
+	public int getInput() {
+		return input;
+	}
+
+	/**
+	 * @return average number of candidate rules for the values tested in the rules
+	 */
+	public double getExpectedCandidates() {
+		return expectedCandidates;
+	}
+
+}
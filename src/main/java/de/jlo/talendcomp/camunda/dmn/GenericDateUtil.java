@@ -16,12 +16,16 @@
 package de.jlo.talendcomp.camunda.dmn;
 
 import java.text.ParseException;
+import java.text.ParsePosition;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
 
 /**
  * Utility class to parse a String into a Date 
@@ -130,7 +134,15 @@ public class GenericDateUtil {
 		private static final int HOURS_PER_DAY = 24;
 		private static final int SECONDS_PER_DAY = (HOURS_PER_DAY * MINUTES_PER_HOUR * SECONDS_PER_MINUTE);
 		private static final long DAY_MILLISECONDS = SECONDS_PER_DAY * 1000L;
+		private static final int MAX_LEARNED_SHAPES = 1000;
 		private boolean lenient = true;
+		private final Map<Locale, Map<String, SimpleDateFormat>> formatsMap = new HashMap<Locale, Map<String, SimpleDateFormat>>();
+		private final Map<String, SimpleDateFormat> learnedFormats = new HashMap<String, SimpleDateFormat>();
+		private final ParsePosition parsePosition = new ParsePosition(0);
+		private final StringBuilder keyBuilder = new StringBuilder();
+		private TimeZone currentTimeZone = null;
+		private SimpleDateFormat matchedFormat = null;
+		private int matchedIndex = 0;
 		
 		DateParser() {
 			datePatternList = new ArrayList<String>();
@@ -185,57 +197,165 @@ public class GenericDateUtil {
 			timePatternList.add(" mmss");
 		}
 		
+		/**
+		 * Parses the text with the user patterns first and then with the build in patterns.
+		 * The first date pattern which can parse the beginning of the text wins, if the text is longer
+		 * the time patterns are tried additionally. The parsing uses ParsePosition and does not throw exceptions.
+		 * The winning pattern will be remembered for the shape of the text (digits replaced by 9)
+		 * and the next text with the same shape is parsed with this pattern at first.
+		 */
 		private Date parseDate(String text, Locale locale, String ... userPattern) throws ParseException {
 			if (text != null && text.trim().isEmpty() == false) {
+				if (locale == null) {
+					locale = Locale.ENGLISH;
+				}
+				currentTimeZone = TimeZone.getDefault();
+				String shapeKey = buildShapeKey(text, locale, userPattern);
+				if (shapeKey != null) {
+					SimpleDateFormat learned = learnedFormats.get(shapeKey);
+					if (learned != null) {
+						Date dateValue = parse(learned, text);
+						if (dateValue != null) {
+							return dateValue;
+						}
+					}
+				}
 				Date dateValue = null;
 				if (userPattern != null) {
-					for (int i = userPattern.length - 1; i >= 0; i--) {
-						if (datePatternList.contains(userPattern[i])) {
-							datePatternList.remove(userPattern[i]);
+					for (int i = 0; i < userPattern.length && dateValue == null; i++) {
+						String pattern = userPattern[i];
+						// a pattern given twice is only tried once
+						if (pattern != null && indexOf(userPattern, pattern) == i) {
+							dateValue = parseDateTime(text, locale, pattern);
 						}
-						datePatternList.add(0, userPattern[i]);
 					}
 				}
-				if (locale == null) {
-					locale = Locale.ENGLISH;
+				for (int i = 0; i < datePatternList.size() && dateValue == null; i++) {
+					String pattern = datePatternList.get(i);
+					if (indexOf(userPattern, pattern) == -1) {
+						dateValue = parseDateTime(text, locale, pattern);
+					}
 				}
-				SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd", locale);
-				sdf.setLenient(lenient);
-				for (String pattern : datePatternList) {
-					if (pattern != null) {
-						sdf.applyPattern(pattern.trim());
-						try {
-							dateValue = sdf.parse(text);
-							// if we continue here the pattern fits
-							// now we know the date is correct, lets try the time part:
-							if (text.length() - pattern.length() >= 6) {
-								// there is more in the text than only the date
-								for (String timepattern : timePatternList) {
-									String dateTimePattern = pattern + timepattern;
-									sdf.applyPattern(dateTimePattern);
-									try {
-										dateValue = sdf.parse(text);
-										// we got it
-										pattern = dateTimePattern;
-										break;
-									} catch (ParseException e1) {
-										// ignore parsing errors, we are trying
-									}
-								}
-							}
-							return dateValue;
-						} catch (ParseException e) {
-							// the pattern obviously does not work
-							continue;
-						}
+				if (dateValue == null) {
+					throw new ParseException("The value: " + text + " could not be parsed to a Date.", 0);
+				}
+				// only a pattern which has consumed the whole text will be used for the same shape
+				// otherwise the unparsed rest of the text could fit to a pattern tried before
+				if (shapeKey != null && matchedIndex == text.length()) {
+					if (learnedFormats.size() >= MAX_LEARNED_SHAPES) {
+						learnedFormats.clear();
 					}
+					learnedFormats.put(shapeKey, matchedFormat);
 				}
-				throw new ParseException("The value: " + text + " could not be parsed to a Date.", 0);
+				return dateValue;
 			} else {
 				return null;
 			}
 		}
 
+		/**
+		 * parses the text with the date pattern and if the text is longer with the date pattern plus a time pattern
+		 * @return the date or null if the date pattern does not fit
+		 */
+		private Date parseDateTime(String text, Locale locale, String pattern) {
+			SimpleDateFormat format = getFormat(locale, pattern.trim());
+			Date dateValue = parse(format, text);
+			if (dateValue == null) {
+				return null;
+			}
+			matchedFormat = format;
+			matchedIndex = parsePosition.getIndex();
+			if (text.length() - pattern.length() >= 6) {
+				// there is more in the text than only the date
+				for (String timePattern : timePatternList) {
+					SimpleDateFormat dateTimeFormat = getFormat(locale, pattern + timePattern);
+					Date dateTimeValue = parse(dateTimeFormat, text);
+					if (dateTimeValue != null) {
+						matchedFormat = dateTimeFormat;
+						matchedIndex = parsePosition.getIndex();
+						return dateTimeValue;
+					}
+				}
+			}
+			return dateValue;
+		}
+
+		/**
+		 * parses the beginning of the text like SimpleDateFormat.parse(String) but without exception
+		 * @return the date or null if the format does not fit
+		 */
+		private Date parse(SimpleDateFormat format, String text) {
+			// parsing a time zone name changes the time zone of the format
+			if (format.getTimeZone().equals(currentTimeZone) == false) {
+				format.setTimeZone(currentTimeZone);
+			}
+			format.setLenient(lenient);
+			parsePosition.setIndex(0);
+			parsePosition.setErrorIndex(-1);
+			Date date = format.parse(text, parsePosition);
+			if (parsePosition.getIndex() == 0) {
+				return null;
+			}
+			return date;
+		}
+
+		private SimpleDateFormat getFormat(Locale locale, String pattern) {
+			Map<String, SimpleDateFormat> formats = formatsMap.get(locale);
+			if (formats == null) {
+				formats = new HashMap<String, SimpleDateFormat>();
+				formatsMap.put(locale, formats);
+			}
+			SimpleDateFormat format = formats.get(pattern);
+			if (format == null) {
+				format = new SimpleDateFormat(pattern, locale);
+				formats.put(pattern, format);
+			}
+			return format;
+		}
+
+		private static int indexOf(String[] patterns, String pattern) {
+			if (patterns != null) {
+				for (int i = 0; i < patterns.length; i++) {
+					if (pattern.equals(patterns[i])) {
+						return i;
+					}
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * builds the key of the text shape: locale, user patterns and the text with all digits replaced by 9.
+		 * In lenient mode the values of the digits do not decide if a pattern fits, except for numeric time zones.
+		 * @return the key or null if the shape cannot be used
+		 */
+		private String buildShapeKey(String text, Locale locale, String[] userPattern) {
+			if (lenient == false) {
+				// the values decide if a date is valid
+				return null;
+			}
+			keyBuilder.setLength(0);
+			keyBuilder.append(locale).append('\u0000');
+			if (userPattern != null) {
+				for (String pattern : userPattern) {
+					if (pattern != null) {
+						if (pattern.indexOf('Z') != -1 || pattern.indexOf('X') != -1 || pattern.indexOf('z') != -1) {
+							// the time zone offset is checked by value
+							return null;
+						}
+						keyBuilder.append(pattern);
+					}
+					keyBuilder.append('\u0000');
+				}
+			}
+			keyBuilder.append('\u0000');
+			for (int i = 0, n = text.length(); i < n; i++) {
+				char c = text.charAt(i);
+				keyBuilder.append(c >= '0' && c <= '9' ? '9' : c);
+			}
+			return keyBuilder.toString();
+		}
+
 		private Date parseDuration(String text, String ... userPattern) throws ParseException {
 			if (text != null && text.trim().isEmpty() == false) {
 				Date timeValue = null;
@@ -246,6 +366,8 @@ public class GenericDateUtil {
 						}
 						timePatternList.add(0, userPattern[i]);
 					}
+					// the time patterns are also used to parse dates
+					learnedFormats.clear();
 				}
 				SimpleDateFormat sdf = new SimpleDateFormat();
 				sdf.setTimeZone(getUTCTimeZone());
@@ -0,0 +1,258 @@
+/**
+ * Copyright 2021 Jan Lolling jan.lolling@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jlo.talendcomp.camunda.dmn;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.camunda.bpm.engine.variable.Variables;
+import org.camunda.bpm.engine.variable.context.VariableContext;
+import org.camunda.bpm.engine.variable.value.TypedValue;
+
+/**
+ * The input values of the current row, bound to fixed slots.
+ * The slot of a variable is resolved once, the values of every row are stored in a reused array.
+ * clear() does not touch the array, it only starts a new row: a value counts only if it was set within the current row.
+ * Variables which do not occur in any expression of the decisions are kept but not visible to the engine
+ * and are not part of the cache key.
+ * The binding is the VariableContext for the engine. The compiled evaluation modes use it without a VariableMap per row,
+ * the Camunda engine (evaluation mode CAMUNDA) still copies the variables into a VariableMap for every evaluation.
+ * This class is not thread safe.
+ *
+ * @author jan.lolling@gmail.com
+ */
+public final class InputBinding implements VariableContext {
+
+	private final Map<String, Integer> slots = new HashMap<>();
+	private String[] names = new String[16];
+	private Object[] values = new Object[16];
+	private int[] rowOfValue = new int[16];
+	private boolean[] used = new boolean[16];
+	private int size = 0;
+	private int row = 1;
+	private boolean rowHasValues = false;
+	private String[] expressions = null;
+	private final Set<String> keySet = new AbstractSet<String>() {
+
+		@Override
+		public Iterator<String> iterator() {
+			return new Iterator<String>() {
+
+				private int next = nextVisible(0);
+
+				@Override
+				public boolean hasNext() {
+					return next < size;
+				}
+
+				@Override
+				public String next() {
+					if (next >= size) {
+						throw new NoSuchElementException();
+					}
+					String name = names[next];
+					next = nextVisible(next + 1);
+					return name;
+				}
+
+			};
+		}
+
+		@Override
+		public int size() {
+			int count = 0;
+			for (int i = 0; i < size; i++) {
+				if (isVisible(i)) {
+					count++;
+				}
+			}
+			return count;
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return o instanceof String && containsVariable((String) o);
+		}
+
+	};
+
+	/**
+	 * returns the slot of the variable, a new slot will be created for an unknown variable
+	 * @param name the variable name
+	 * @return the slot
+	 */
+	public int bind(String name) {
+		if (DmnRunner.isEmpty(name)) {
+			throw new IllegalArgumentException("name cannot be null or empty");
+		}
+		Integer slot = slots.get(name);
+		if (slot != null) {
+			return slot;
+		}
+		if (size == names.length) {
+			int capacity = size * 2;
+			names = Arrays.copyOf(names, capacity);
+			values = Arrays.copyOf(values, capacity);
+			rowOfValue = Arrays.copyOf(rowOfValue, capacity);
+			used = Arrays.copyOf(used, capacity);
+		}
+		names[size] = name;
+		used[size] = isUsed(name);
+		slots.put(name, size);
+		return size++;
+	}
+
+	/**
+	 * returns the slot of a bound variable
+	 * @param name the variable name
+	 * @return the slot or -1 if the variable is not bound
+	 */
+	public int getSlot(String name) {
+		Integer slot = slots.get(name);
+		return slot != null ? slot : -1;
+	}
+
+	/**
+	 * sets the value of the current row
+	 * @param slot the slot returned by {@link #bind(String)}
+	 * @param value the value
+	 */
+	public void set(int slot, Object value) {
+		values[slot] = value;
+		rowOfValue[slot] = row;
+		rowHasValues = true;
+	}
+
+	/**
+	 * starts a new row, the values of the former row are not visible any more
+	 */
+	public void clear() {
+		rowHasValues = false;
+		row++;
+		if (row == 0) {
+			// after the overflow an old row number could match again
+			Arrays.fill(rowOfValue, 0);
+			row = 1;
+		}
+	}
+
+	/**
+	 * Set the expressions of the decisions. A variable is used if its name occurs in one of the expressions.
+	 * @param expressions the expressions, null means all variables are used
+	 */
+	public void setExpressions(List<String> expressions) {
+		this.expressions = expressions != null ? expressions.toArray(new String[expressions.size()]) : null;
+		for (int i = 0; i < size; i++) {
+			used[i] = isUsed(names[i]);
+		}
+	}
+
+	private boolean isUsed(String name) {
+		if (expressions == null) {
+			return true;
+		}
+		for (String text : expressions) {
+			if (text.contains(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if at least one value has been set within the current row
+	 */
+	public boolean hasValues() {
+		return rowHasValues;
+	}
+
+	private boolean isVisible(int slot) {
+		return rowOfValue[slot] == row && used[slot];
+	}
+
+	private int nextVisible(int slot) {
+		while (slot < size && isVisible(slot) == false) {
+			slot++;
+		}
+		return slot;
+	}
+
+	/**
+	 * fills the key with the visible variables in the order of the slots
+	 * @param key the key, will be cleared before
+	 */
+	public void fillKey(CacheKey key) {
+		key.clear();
+		for (int i = 0; i < size; i++) {
+			if (isVisible(i)) {
+				key.set(names[i], values[i]);
+			}
+		}
+	}
+
+	/**
+	 * @param slot the slot
+	 * @return true if the variable of the slot occurs in the decisions
+	 */
+	public boolean isUsed(int slot) {
+		return used[slot];
+	}
+
+	@Override
+	public TypedValue resolve(String variableName) {
+		int slot = getSlot(variableName);
+		if (slot == -1 || isVisible(slot) == false) {
+			return null;
+		}
+		return Variables.untypedValue(values[slot]);
+	}
+
+	@Override
+	public boolean containsVariable(String variableName) {
+		int slot = getSlot(variableName);
+		return slot != -1 && isVisible(slot);
+	}
+
+	@Override
+	public Set<String> keySet() {
+		return keySet;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{");
+		for (int i = 0; i < size; i++) {
+			if (rowOfValue[i] == row) {
+				if (sb.length() > 1) {
+					sb.append(", ");
+				}
+				sb.append(names[i]);
+				sb.append("=");
+				sb.append(values[i]);
+			}
+		}
+		sb.append("}");
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,246 @@
+/**
+ * Copyright 2021 Jan Lolling jan.lolling@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jlo.talendcomp.camunda.dmn;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Interval tree for an input column tested with numeric ranges, comparisons, numbers or "-".
+ * A lookup returns the rules whose intervals contain the value in O(log n + k).
+ * The bounds are kept as closed double intervals, which is a superset of the exact tests
+ * (the conversion to double is monotonic). The exact test is done afterwards by the compiled cell tests.
+ *
+ * @author jan.lolling@gmail.com
+ */
+public final class IntervalIndex {
+
+	private final int input;
+	private final Node root;
+	private final int[] wildcardRules;
+
+	private static final class Interval {
+
+		final double low;
+		final double high;
+		final int rule;
+
+		Interval(double low, double high, int rule) {
+			this.low = low;
+			this.high = high;
+			this.rule = rule;
+		}
+
+	}
+
+	private static final class Node {
+
+		double center;
+		/** intervals containing the center, sorted ascending by low */
+		Interval[] byLow;
+		/** intervals containing the center, sorted descending by high */
+		Interval[] byHigh;
+		Node left;
+		Node right;
+
+	}
+
+	/**
+	 * creates the index
+	 * @param input the index of the input column
+	 * @param lows the lower bounds (Double.NEGATIVE_INFINITY for open ends)
+	 * @param highs the upper bounds (Double.POSITIVE_INFINITY for open ends)
+	 * @param rules the rule for each interval, a rule can have multiple intervals
+	 * @param wildcardRules the rules matching every value, sorted
+	 */
+	IntervalIndex(int input, double[] lows, double[] highs, int[] rules, int[] wildcardRules) {
+		this.input = input;
+		this.wildcardRules = wildcardRules;
+		List<Interval> intervals = new ArrayList<>(rules.length);
+		for (int i = 0; i < rules.length; i++) {
+			intervals.add(new Interval(lows[i], highs[i], rules[i]));
+		}
+		root = build(intervals);
+	}
+
+	/**
+	 * builds the index for an input column
+	 * @param table the compiled table
+	 * @param input the index of the input column
+	 * @return the index or null if the column is not only tested with numeric ranges or if most of the rules use "-"
+	 */
+	static IntervalIndex build(CompiledDecisionTable table, int input) {
+		List<double[]> bounds = new ArrayList<>();
+		List<Integer> rules = new ArrayList<>();
+		List<Integer> wildcards = new ArrayList<>();
+		for (int r = 0; r < table.countRules(); r++) {
+			CompiledUnaryTest test = table.getCondition(input, r);
+			if (test instanceof UnaryTestCompiler.AnyTest) {
+				wildcards.add(r);
+				continue;
+			}
+			CompiledUnaryTest[] tests = null;
+			if (test instanceof UnaryTestCompiler.AnyOfTest) {
+				tests = ((UnaryTestCompiler.AnyOfTest) test).tests;
+			} else if (test != null) {
+				tests = new CompiledUnaryTest[] {test};
+			} else {
+				return null;
+			}
+			for (CompiledUnaryTest t : tests) {
+				if (t instanceof UnaryTestCompiler.RangeTest == false) {
+					return null;
+				}
+				UnaryTestCompiler.RangeTest range = (UnaryTestCompiler.RangeTest) t;
+				bounds.add(new double[] {
+						range.low != null ? range.low.doubleValue() : Double.NEGATIVE_INFINITY,
+						range.high != null ? range.high.doubleValue() : Double.POSITIVE_INFINITY});
+				rules.add(r);
+			}
+		}
+		if (rules.isEmpty() || wildcards.size() > table.countRules() / 2) {
+			return null;
+		}
+		double[] lows = new double[rules.size()];
+		double[] highs = new double[rules.size()];
+		int[] ruleArray = new int[rules.size()];
+		for (int i = 0; i < ruleArray.length; i++) {
+			lows[i] = bounds.get(i)[0];
+			highs[i] = bounds.get(i)[1];
+			ruleArray[i] = rules.get(i);
+		}
+		int[] wildcardRules = new int[wildcards.size()];
+		for (int i = 0; i < wildcardRules.length; i++) {
+			wildcardRules[i] = wildcards.get(i);
+		}
+		return new IntervalIndex(input, lows, highs, ruleArray, wildcardRules);
+	}
+
+	private static Node build(List<Interval> intervals) {
+		if (intervals.isEmpty()) {
+			return null;
+		}
+		// the median endpoint is contained in at least one interval, every level takes intervals out
+		double[] endpoints = new double[intervals.size() * 2];
+		int e = 0;
+		for (Interval interval : intervals) {
+			endpoints[e++] = interval.low;
+			endpoints[e++] = interval.high;
+		}
+		Arrays.sort(endpoints);
+		Node node = new Node();
+		node.center = endpoints[endpoints.length / 2];
+		List<Interval> leftIntervals = new ArrayList<>();
+		List<Interval> rightIntervals = new ArrayList<>();
+		List<Interval> centerIntervals = new ArrayList<>();
+		for (Interval interval : intervals) {
+			if (interval.high < node.center) {
+				leftIntervals.add(interval);
+			} else if (interval.low > node.center) {
+				rightIntervals.add(interval);
+			} else {
+				centerIntervals.add(interval);
+			}
+		}
+		node.byLow = centerIntervals.toArray(new Interval[centerIntervals.size()]);
+		Arrays.sort(node.byLow, new Comparator<Interval>() {
+
+			@Override
+			public int compare(Interval o1, Interval o2) {
+				return Double.compare(o1.low, o2.low);
+			}
+
+		});
+		node.byHigh = centerIntervals.toArray(new Interval[centerIntervals.size()]);
+		Arrays.sort(node.byHigh, new Comparator<Interval>() {
+
+			@Override
+			public int compare(Interval o1, Interval o2) {
+				return Double.compare(o2.high, o1.high);
+			}
+
+		});
+		node.left = build(leftIntervals);
+		node.right = build(rightIntervals);
+		return node;
+	}
+
+	/**
+	 * returns the candidate rules for the value
+	 * @param value the tested input value
+	 * @return the rule indexes in document order or null if the index cannot be used for this value
+	 */
+	int[] lookup(Object value) {
+		BigDecimal n = UnaryTestCompiler.toBigDecimal(value);
+		if (n == null) {
+			return null;
+		}
+		double x = n.doubleValue();
+		int[] found = new int[16];
+		int count = 0;
+		Node node = root;
+		while (node != null) {
+			if (x < node.center) {
+				for (Interval interval : node.byLow) {
+					if (interval.low > x) {
+						break;
+					}
+					if (count == found.length) {
+						found = Arrays.copyOf(found, count * 2);
+					}
+					found[count++] = interval.rule;
+				}
+				node = node.left;
+			} else if (x > node.center) {
+				for (Interval interval : node.byHigh) {
+					if (interval.high < x) {
+						break;
+					}
+					if (count == found.length) {
+						found = Arrays.copyOf(found, count * 2);
+					}
+					found[count++] = interval.rule;
+				}
+				node = node.right;
+			} else {
+				for (Interval interval : node.byLow) {
+					if (count == found.length) {
+						found = Arrays.copyOf(found, count * 2);
+					}
+					found[count++] = interval.rule;
+				}
+				node = null;
+			}
+		}
+		Arrays.sort(found, 0, count);
+		// a rule with multiple intervals can be found more than once
+		int unique = 0;
+		for (int i = 0; i < count; i++) {
+			if (unique == 0 || found[unique - 1] != found[i]) {
+				found[unique++] = found[i];
+			}
+		}
+		return EqualityIndex.merge(Arrays.copyOf(found, unique), wildcardRules);
+	}
+
+	public int getInput() {
+		return input;
+	}
+
+}
@@ -0,0 +1,259 @@
+/**
+ * Copyright 2021 Jan Lolling jan.lolling@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jlo.talendcomp.camunda.dmn;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.ParseException;
+
+/**
+ * Parser for numbers with the separators of a locale.
+ * Plain numbers (ASCII digits, optional minus sign, grouping and decimal separator of the locale)
+ * will be parsed directly from the string without any allocation.
+ * All other texts (exponents, currency, percent, non ASCII digits, trailing text or more than 18 digits)
+ * are parsed by the DecimalFormat of the locale. The results are the same as the DecimalFormat delivers.
+ * This class is thread safe, every thread uses its own copy of the DecimalFormat.
+ *
+ * @author jan.lolling@gmail.com
+ */
+public final class NumberParser {
+
+	/** more digits could overflow a long */
+	private static final int MAX_DIGITS = 18;
+	/** the largest mantissa a double represents exactly */
+	private static final long MAX_EXACT_MANTISSA = 1L << 53;
+	/** the powers of ten a double represents exactly */
+	private static final double[] POWERS_OF_TEN = new double[] {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+	private static final int OTHER = 0;
+	private static final int INTEGER = 1;
+	private static final int DECIMAL = 2;
+	private final ThreadLocal<DecimalFormat> fallbackFormat;
+	private final boolean fastPath;
+	private final boolean groupingUsed;
+	private final char groupingSeparator;
+	private final char decimalSeparator;
+	private final char minusSign;
+
+	/**
+	 * creates the parser with the separators of the format
+	 * @param format the format of the locale, will be cloned for the fallback
+	 */
+	public NumberParser(DecimalFormat format) {
+		if (format == null) {
+			throw new IllegalArgumentException("format cannot be null");
+		}
+		final DecimalFormat prototype = (DecimalFormat) format.clone();
+		prototype.setParseBigDecimal(false);
+		fallbackFormat = new ThreadLocal<DecimalFormat>() {
+
+			@Override
+			protected DecimalFormat initialValue() {
+				return (DecimalFormat) prototype.clone();
+			}
+
+		};
+		DecimalFormatSymbols symbols = prototype.getDecimalFormatSymbols();
+		groupingUsed = prototype.isGroupingUsed();
+		groupingSeparator = symbols.getGroupingSeparator();
+		decimalSeparator = symbols.getDecimalSeparator();
+		minusSign = symbols.getMinusSign();
+		// only plain number formats can be parsed without the DecimalFormat
+		fastPath = prototype.getPositivePrefix().isEmpty()
+				&& prototype.getPositiveSuffix().isEmpty()
+				&& String.valueOf(minusSign).equals(prototype.getNegativePrefix())
+				&& prototype.getNegativeSuffix().isEmpty()
+				&& prototype.getMultiplier() == 1
+				&& prototype.isParseIntegerOnly() == false
+				&& isDigit(groupingSeparator) == false
+				&& isDigit(decimalSeparator) == false
+				&& isDigit(minusSign) == false
+				&& groupingSeparator != decimalSeparator
+				&& minusSign != groupingSeparator
+				&& minusSign != decimalSeparator;
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	/**
+	 * checks if the text is a plain number
+	 * @param text the text
+	 * @return INTEGER if the number has no fraction (or only zeros), DECIMAL with fraction, OTHER if the DecimalFormat is needed
+	 */
+	private int classify(String text) {
+		if (fastPath == false) {
+			return OTHER;
+		}
+		int length = text.length();
+		int i = 0;
+		if (length > 0 && text.charAt(0) == minusSign) {
+			i = 1;
+		}
+		int digits = 0;
+		for (; i < length; i++) {
+			char c = text.charAt(i);
+			if (isDigit(c)) {
+				digits++;
+			} else if (c == groupingSeparator
+					&& groupingUsed
+					&& digits > 0
+					&& i + 1 < length
+					&& isDigit(text.charAt(i + 1))) {
+				// grouping separators between digits are ignored like the DecimalFormat does
+				continue;
+			} else {
+				break;
+			}
+		}
+		int kind = INTEGER;
+		if (i < length && text.charAt(i) == decimalSeparator) {
+			for (i++; i < length; i++) {
+				char c = text.charAt(i);
+				if (isDigit(c) == false) {
+					return OTHER;
+				}
+				digits++;
+				if (c != '0') {
+					kind = DECIMAL;
+				}
+			}
+		}
+		if (i < length || digits == 0 || digits > MAX_DIGITS) {
+			return OTHER;
+		}
+		return kind;
+	}
+
+	/**
+	 * the integer part of a classified text
+	 */
+	private long integerValue(String text) {
+		int length = text.length();
+		boolean negative = text.charAt(0) == minusSign;
+		long value = 0;
+		for (int i = negative ? 1 : 0; i < length; i++) {
+			char c = text.charAt(i);
+			if (isDigit(c)) {
+				value = value * 10 + (c - '0');
+			} else if (c == decimalSeparator) {
+				break;
+			}
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * the value of a classified text with fraction
+	 */
+	private double decimalValue(String text) throws ParseException {
+		int length = text.length();
+		boolean negative = text.charAt(0) == minusSign;
+		boolean fraction = false;
+		long mantissa = 0;
+		int scale = 0;
+		for (int i = negative ? 1 : 0; i < length; i++) {
+			char c = text.charAt(i);
+			if (isDigit(c)) {
+				mantissa = mantissa * 10 + (c - '0');
+				if (fraction) {
+					scale++;
+				}
+			} else if (c == decimalSeparator) {
+				fraction = true;
+			}
+		}
+		if (mantissa > MAX_EXACT_MANTISSA || scale >= POWERS_OF_TEN.length) {
+			// the division would not be correctly rounded
+			return fallbackFormat.get().parse(text).doubleValue();
+		}
+		// both values are exact, therefore the quotient is correctly rounded
+		double value = mantissa / POWERS_OF_TEN[scale];
+		return negative ? -value : value;
+	}
+
+	public long parseLong(String text) throws ParseException {
+		switch (classify(text)) {
+		case INTEGER:
+			return integerValue(text);
+		case DECIMAL:
+			return (long) decimalValue(text);
+		default:
+			return fallbackFormat.get().parse(text).longValue();
+		}
+	}
+
+	public int parseInt(String text) throws ParseException {
+		switch (classify(text)) {
+		case INTEGER:
+			return (int) integerValue(text);
+		case DECIMAL:
+			return (int) decimalValue(text);
+		default:
+			return fallbackFormat.get().parse(text).intValue();
+		}
+	}
+
+	public short parseShort(String text) throws ParseException {
+		switch (classify(text)) {
+		case INTEGER:
+			return (short) integerValue(text);
+		case DECIMAL:
+			return (short) (int) decimalValue(text);
+		default:
+			return fallbackFormat.get().parse(text).shortValue();
+		}
+	}
+
+	public double parseDouble(String text) throws ParseException {
+		switch (classify(text)) {
+		case INTEGER:
+			long value = integerValue(text);
+			if (value == 0 && text.charAt(0) == minusSign) {
+				// the DecimalFormat delivers a negative zero
+				return -0.0d;
+			}
+			return value;
+		case DECIMAL:
+			return decimalValue(text);
+		default:
+			return fallbackFormat.get().parse(text).doubleValue();
+		}
+	}
+
+	public float parseFloat(String text) throws ParseException {
+		switch (classify(text)) {
+		case INTEGER:
+			long value = integerValue(text);
+			if (value == 0 && text.charAt(0) == minusSign) {
+				return -0.0f;
+			}
+			return value;
+		case DECIMAL:
+			return (float) decimalValue(text);
+		default:
+			return fallbackFormat.get().parse(text).floatValue();
+		}
+	}
+
+	public boolean isFastPath() {
+		return fastPath;
+	}
+
+}
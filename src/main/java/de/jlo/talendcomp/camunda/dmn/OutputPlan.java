@@ -0,0 +1,323 @@
+/**
+ * Copyright 2021 Jan Lolling jan.lolling@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jlo.talendcomp.camunda.dmn;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.camunda.bpm.dmn.engine.DmnDecisionResult;
+import org.camunda.bpm.dmn.engine.DmnDecisionResultEntries;
+import org.camunda.bpm.dmn.engine.impl.DmnDecisionResultImpl;
+
+/**
+ * The outgoing schema columns resolved to indexes, built once per loaded decision.
+ * The values of a result are read and converted into the column types only once per result,
+ * the converted rows are attached to the result and are kept in the result cache with it.
+ * Reading a value for a result row is then an array access.
+ * Columns filled by other decisions than the first one are not part of the converted rows.
+ * This class is immutable.
+ *
+ * @author jan.lolling@gmail.com
+ */
+public final class OutputPlan {
+
+	public static final int TYPE_OBJECT = 0;
+	public static final int TYPE_STRING = 1;
+	public static final int TYPE_INTEGER = 2;
+	public static final int TYPE_LONG = 3;
+	public static final int TYPE_DOUBLE = 4;
+	public static final int TYPE_FLOAT = 5;
+	public static final int TYPE_BIG_DECIMAL = 6;
+	public static final int TYPE_BOOLEAN = 7;
+	public static final int TYPE_DATE = 8;
+	public static final int TYPE_SHORT = 9;
+	private final String[] names;
+	private final int[] types;
+	private final boolean[] nullables;
+	private final String[] patterns;
+	private final int[] decisionIndexes;
+
+	/**
+	 * An outgoing schema column
+	 */
+	public static final class Column {
+
+		private final String name;
+		private final int type;
+		private final boolean nullable;
+		private final String pattern;
+
+		/**
+		 * @param name the column name, must be the name of an output of the decision
+		 * @param javaClassName the simple class name of the column type (String, Integer, Long, Double, Float, BigDecimal, Boolean, Date, Short or Object)
+		 * @param nullable if false a missing value is an error
+		 * @param pattern the date pattern for Date columns, can be null
+		 */
+		public Column(String name, String javaClassName, boolean nullable, String pattern) {
+			if (DmnRunner.isEmpty(name)) {
+				throw new IllegalArgumentException("name cannot be null or empty");
+			}
+			this.name = name;
+			this.type = getType(javaClassName);
+			this.nullable = nullable;
+			this.pattern = pattern;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+	}
+
+	/**
+	 * A decision result with the values already converted for the columns of a plan
+	 */
+	static final class PlannedResult extends DmnDecisionResultImpl {
+
+		private static final long serialVersionUID = 1L;
+		private final transient OutputPlan plan;
+		private final transient Object[][] rows;
+
+		private PlannedResult(DmnDecisionResult result, OutputPlan plan, Object[][] rows) {
+			super(new ArrayList<DmnDecisionResultEntries>(result));
+			this.plan = plan;
+			this.rows = rows;
+		}
+
+		long estimateRowsSize() {
+			long size = 16 + 8 * rows.length;
+			for (Object[] row : rows) {
+				size = size + 16 + 8 * row.length;
+				for (Object value : row) {
+					size = size + ResultCache.estimateSize(value);
+				}
+			}
+			return size;
+		}
+
+	}
+
+	/**
+	 * A value which could not be converted, the error is thrown when the value is read
+	 */
+	private static final class ConversionError {
+
+		private final String message;
+		private final Exception cause;
+
+		private ConversionError(String message, Exception cause) {
+			this.message = message;
+			this.cause = cause;
+		}
+
+	}
+
+	/**
+	 * creates the plan
+	 * @param columns the outgoing schema columns, the index in the list is the column index
+	 * @param decisionIndexes the index of the decision delivering the value per column
+	 */
+	public OutputPlan(List<Column> columns, int[] decisionIndexes) {
+		if (columns == null) {
+			throw new IllegalArgumentException("columns cannot be null");
+		}
+		if (decisionIndexes == null || decisionIndexes.length != columns.size()) {
+			throw new IllegalArgumentException("decisionIndexes must have one index per column");
+		}
+		int size = columns.size();
+		names = new String[size];
+		types = new int[size];
+		nullables = new boolean[size];
+		patterns = new String[size];
+		for (int i = 0; i < size; i++) {
+			Column column = columns.get(i);
+			names[i] = column.name;
+			types[i] = column.type;
+			nullables[i] = column.nullable;
+			patterns[i] = column.pattern;
+		}
+		this.decisionIndexes = decisionIndexes.clone();
+	}
+
+	/**
+	 * @param javaClassName the simple class name of the column type
+	 * @return the type code
+	 */
+	public static int getType(String javaClassName) {
+		if ("String".equals(javaClassName)) {
+			return TYPE_STRING;
+		} else if ("Integer".equals(javaClassName)) {
+			return TYPE_INTEGER;
+		} else if ("Long".equals(javaClassName)) {
+			return TYPE_LONG;
+		} else if ("Double".equals(javaClassName)) {
+			return TYPE_DOUBLE;
+		} else if ("Float".equals(javaClassName)) {
+			return TYPE_FLOAT;
+		} else if ("BigDecimal".equals(javaClassName)) {
+			return TYPE_BIG_DECIMAL;
+		} else if ("Boolean".equals(javaClassName)) {
+			return TYPE_BOOLEAN;
+		} else if ("Date".equals(javaClassName)) {
+			return TYPE_DATE;
+		} else if ("Short".equals(javaClassName)) {
+			return TYPE_SHORT;
+		} else if ("Object".equals(javaClassName)) {
+			return TYPE_OBJECT;
+		} else {
+			throw new IllegalArgumentException("Unsupported column type: " + javaClassName);
+		}
+	}
+
+	/**
+	 * converts a value of the decision into the column type
+	 * @param column the column index
+	 * @param value the value of the decision
+	 * @param typeUtil the converter
+	 * @return the converted value
+	 * @throws Exception if the value cannot be converted
+	 */
+	public Object convert(int column, Object value, TypeUtil typeUtil) throws Exception {
+		switch (types[column]) {
+		case TYPE_STRING:
+			return typeUtil.convertToString(value, null);
+		case TYPE_INTEGER:
+			return typeUtil.convertToInteger(value, null);
+		case TYPE_LONG:
+			return typeUtil.convertToLong(value, null);
+		case TYPE_DOUBLE:
+			return typeUtil.convertToDouble(value, null);
+		case TYPE_FLOAT:
+			return typeUtil.convertToFloat(value, null);
+		case TYPE_BIG_DECIMAL:
+			return typeUtil.convertToBigDecimal(value, null);
+		case TYPE_BOOLEAN:
+			return typeUtil.convertToBoolean(value, null);
+		case TYPE_DATE:
+			return typeUtil.convertToDate(value, patterns[column], null);
+		case TYPE_SHORT:
+			return typeUtil.convertToShort(value, null);
+		default:
+			return value;
+		}
+	}
+
+	/**
+	 * reads and converts the values of all result records for the columns of the first decision
+	 * @param result the result of the first decision
+	 * @param typeUtil the converter
+	 * @return the converted values per result record and column
+	 */
+	public Object[][] extract(DmnDecisionResult result, TypeUtil typeUtil) {
+		Object[][] rows = new Object[result.size()][];
+		for (int r = 0; r < rows.length; r++) {
+			rows[r] = extractRow(result.get(r), typeUtil);
+		}
+		return rows;
+	}
+
+	/**
+	 * reads and converts the values of one result record for the columns of the first decision
+	 * @param entries the result record of the first decision
+	 * @param typeUtil the converter
+	 * @return the converted values per column
+	 */
+	public Object[] extractRow(DmnDecisionResultEntries entries, TypeUtil typeUtil) {
+		Object[] row = new Object[names.length];
+		for (int c = 0; c < names.length; c++) {
+			if (decisionIndexes[c] != 0) {
+				continue;
+			}
+			Object value = entries.get(names[c]);
+			if (value == null && nullables[c] == false) {
+				row[c] = new ConversionError("For column: " + names[c] + " null value detected but column is configured as not nullable", null);
+				continue;
+			}
+			try {
+				row[c] = convert(c, value, typeUtil);
+			} catch (Exception e) {
+				row[c] = new ConversionError(e.getMessage(), e);
+			}
+		}
+		return row;
+	}
+
+	/**
+	 * attaches the converted values to the result, the returned result should be cached instead of the given one
+	 * @param result the result of the first decision
+	 * @param typeUtil the converter
+	 * @return the result with the converted values
+	 */
+	public DmnDecisionResult attach(DmnDecisionResult result, TypeUtil typeUtil) {
+		if (result == null || isAttached(result)) {
+			return result;
+		}
+		return new PlannedResult(result, this, extract(result, typeUtil));
+	}
+
+	private boolean isAttached(DmnDecisionResult result) {
+		return result instanceof PlannedResult && ((PlannedResult) result).plan == this;
+	}
+
+	/**
+	 * returns the converted values of the result, uses the attached values if the result was attached to this plan
+	 * @param result the result of the first decision
+	 * @param typeUtil the converter
+	 * @return the converted values per result record and column
+	 */
+	public Object[][] getRows(DmnDecisionResult result, TypeUtil typeUtil) {
+		if (isAttached(result)) {
+			return ((PlannedResult) result).rows;
+		}
+		return extract(result, typeUtil);
+	}
+
+	/**
+	 * returns a converted value
+	 * @param row the converted values of a result record
+	 * @param column the column index
+	 * @return the value, Dates are copied because they are mutable
+	 * @throws Exception if the value could not be converted
+	 */
+	public Object getValue(Object[] row, int column) throws Exception {
+		Object value = row[column];
+		if (value instanceof ConversionError) {
+			ConversionError error = (ConversionError) value;
+			throw new Exception(error.message, error.cause);
+		} else if (value instanceof Date) {
+			return new Date(((Date) value).getTime());
+		}
+		return value;
+	}
+
+	public int size() {
+		return names.length;
+	}
+
+	public String getName(int column) {
+		return names[column];
+	}
+
+	public boolean isNullable(int column) {
+		return nullables[column];
+	}
+
+	public int getDecisionIndex(int column) {
+		return decisionIndexes[column];
+	}
+
+}
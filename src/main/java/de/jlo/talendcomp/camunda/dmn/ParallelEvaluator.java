@@ -0,0 +1,206 @@
+/**
+ * Copyright 2021 Jan Lolling jan.lolling@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jlo.talendcomp.camunda.dmn;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.camunda.bpm.dmn.engine.DmnDecision;
+import org.camunda.bpm.dmn.engine.DmnDecisionResult;
+import org.camunda.bpm.dmn.engine.DmnEngine;
+import org.camunda.bpm.engine.variable.VariableMap;
+import org.camunda.bpm.engine.variable.Variables;
+
+/**
+ * Evaluates input rows with a bounded pool of worker threads.
+ * The results are returned in the same order as the rows were submitted.
+ * Not more than maxPendingRows rows can be in progress, if the evaluator is full
+ * the caller has to take results before submitting further rows (backpressure).
+ * Every worker uses its own variable map, the engine and the decision are shared.
+ * Submit and take must be called from the same thread.
+ *
+ * @author jan.lolling@gmail.com
+ */
+public class ParallelEvaluator {
+
+	private static final AtomicInteger poolCounter = new AtomicInteger();
+	private final DmnEngine dmnEngine;
+	private final DmnDecision decision;
+	private final String[] variableNames;
+	private final ExecutorService executor;
+	private final int maxPendingRows;
+	private CompiledDecisionEvaluator compiledEvaluator = null;
+	private final ArrayDeque<Future<DmnDecisionResult>> pendingResults = new ArrayDeque<>();
+	private final ThreadLocal<VariableMap> workerVariables = new ThreadLocal<VariableMap>() {
+
+		@Override
+		protected VariableMap initialValue() {
+			return Variables.createVariables();
+		}
+
+	};
+
+	/**
+	 * @param dmnEngine the engine
+	 * @param decision the decision
+	 * @param variableNames the names of the input variables, in the order of the values in the rows
+	 * @param numberWorkers number of worker threads, 0 or less means number of available processors
+	 * @param maxPendingRows max number of rows submitted but not taken yet, 0 or less means 4 times the number of workers
+	 */
+	public ParallelEvaluator(DmnEngine dmnEngine, DmnDecision decision, String[] variableNames, int numberWorkers, int maxPendingRows) {
+		if (dmnEngine == null) {
+			throw new IllegalArgumentException("dmnEngine cannot be null");
+		}
+		if (decision == null) {
+			throw new IllegalArgumentException("decision cannot be null");
+		}
+		if (variableNames == null || variableNames.length == 0) {
+			throw new IllegalArgumentException("variableNames cannot be null or empty");
+		}
+		if (numberWorkers <= 0) {
+			numberWorkers = Runtime.getRuntime().availableProcessors();
+		}
+		if (maxPendingRows <= 0) {
+			maxPendingRows = numberWorkers * 4;
+		}
+		this.dmnEngine = dmnEngine;
+		this.decision = decision;
+		this.variableNames = variableNames.clone();
+		this.maxPendingRows = maxPendingRows;
+		final String poolName = "dmn-worker-" + poolCounter.incrementAndGet() + "-";
+		this.executor = Executors.newFixedThreadPool(numberWorkers, new ThreadFactory() {
+
+			private final AtomicInteger threadCounter = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, poolName + threadCounter.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+
+		});
+	}
+
+	/**
+	 * let the workers use the compiled decision tables. Must be set before submitting rows.
+	 * @param compiledEvaluator the evaluator for the same decision, null means the Camunda engine
+	 */
+	void setCompiledEvaluator(CompiledDecisionEvaluator compiledEvaluator) {
+		this.compiledEvaluator = compiledEvaluator;
+	}
+
+	/**
+	 * submits a row for the evaluation
+	 * @param row the values in the order of the variable names
+	 * @throws IllegalStateException if already maxPendingRows are in progress
+	 */
+	public void submit(Object[] row) {
+		if (row == null || row.length != variableNames.length) {
+			throw new IllegalArgumentException("The row must have " + variableNames.length + " values");
+		}
+		if (isFull()) {
+			throw new IllegalStateException("Already " + maxPendingRows + " rows in progress, take results first");
+		}
+		final Object[] values = row.clone();
+		pendingResults.add(executor.submit(new Callable<DmnDecisionResult>() {
+
+			@Override
+			public DmnDecisionResult call() throws Exception {
+				return evaluate(values);
+			}
+
+		}));
+	}
+
+	/**
+	 * @return true if maxPendingRows rows are in progress and the next result must be taken before submitting
+	 */
+	public boolean isFull() {
+		return pendingResults.size() >= maxPendingRows;
+	}
+
+	private DmnDecisionResult evaluate(Object[] values) throws Exception {
+		VariableMap variables = workerVariables.get();
+		variables.clear();
+		for (int i = 0; i < variableNames.length; i++) {
+			variables.putValue(variableNames[i], values[i]);
+		}
+		try {
+			if (compiledEvaluator != null) {
+				return compiledEvaluator.evaluate(variables.asVariableContext());
+			}
+			return dmnEngine.evaluateDecision(decision, variables);
+		} catch (Exception e) {
+			throw new Exception("Evaluating decision: " + decision.getName() + " and variables: " + variables + " failed: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * @return true if there are submitted rows whose results are not taken yet
+	 */
+	public boolean hasPendingResults() {
+		return pendingResults.isEmpty() == false;
+	}
+
+	/**
+	 * @return true if the result of the oldest submitted row is already available
+	 */
+	public boolean isNextResultReady() {
+		Future<DmnDecisionResult> f = pendingResults.peek();
+		return f != null && f.isDone();
+	}
+
+	/**
+	 * returns the result of the oldest submitted row and waits for it if necessary
+	 * @return the result
+	 * @throws Exception if the evaluation of this row has failed
+	 */
+	public DmnDecisionResult take() throws Exception {
+		Future<DmnDecisionResult> f = pendingResults.poll();
+		if (f == null) {
+			throw new IllegalStateException("No pending rows");
+		}
+		try {
+			return f.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			} else {
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * stops the worker threads. Pending rows will be cancelled.
+	 */
+	public void close() {
+		for (Future<DmnDecisionResult> f : pendingResults) {
+			f.cancel(false);
+		}
+		pendingResults.clear();
+		executor.shutdownNow();
+	}
+
+}
@@ -0,0 +1,908 @@
+/**
+ * Copyright 2021 Jan Lolling jan.lolling@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jlo.talendcomp.camunda.dmn;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.camunda.bpm.dmn.engine.DmnDecisionResult;
+import org.camunda.bpm.dmn.engine.DmnDecisionResultEntries;
+import org.camunda.bpm.dmn.engine.impl.DmnDecisionResultEntriesImpl;
+import org.camunda.bpm.dmn.engine.impl.DmnDecisionResultImpl;
+import org.camunda.bpm.engine.variable.Variables;
+import org.camunda.bpm.engine.variable.value.TypedValue;
+
+/**
+ * Disk tier of the {@link ResultCache}. The results survive the job run and are used by the next runs.
+ * The file starts with the SHA-256 hash of the DMN content and the end of the committed records.
+ * If the DMN has been changed, the records will be discarded.
+ * The records (creation time, input key, result entries) are only appended, a newer record for the same key replaces the older one.
+ * The file is opened lazily with the first access. Superseded and expired records are removed when the file is opened
+ * and they take at least the half of the records, the file never grows beyond the size limit.
+ * The index in memory keeps only the hash of the key and the offset of the record (about 16 to 32 bytes per key),
+ * the keys are compared with the records in the file. The records are read from a memory mapped buffer.
+ * The file is locked exclusively, a second runner using the same file works without the disk tier.
+ * The directory is created owner-only, on POSIX file systems a file owned by another user or writable by others is not used.
+ * Only the value types String, Integer, Long, Double, Float, Short, Byte, Boolean, BigDecimal, BigInteger and Date can be stored.
+ * I/O errors disable the disk tier, the cache is only an optimization.
+ * This class is not thread safe, every ResultCache has its own disk tier.
+ *
+ * @author jan.lolling@gmail.com
+ */
+public final class PersistentResultCache implements Closeable {
+
+	private static final int MAGIC = 0x444D4E52; // DMNR
+	public static final int FORMAT_VERSION = 2;
+	public static final String FILE_EXTENSION = ".dmnr";
+	public static final long DEFAULT_MAX_BYTES = 256L * 1024L * 1024L;
+	/** magic, format version, end of the committed records and length of the content hash */
+	private static final int HEADER_FIXED_SIZE = 20;
+	private static final int END_POSITION = 8;
+	/** length, creation time and key length */
+	private static final int RECORD_HEAD_SIZE = 16;
+	/** records beyond the mapped buffer are read directly from the channel until this size is reached */
+	private static final long REMAP_THRESHOLD = 1024 * 1024;
+	private static final int INITIAL_INDEX_CAPACITY = 1024;
+	private static final byte VALUE_NULL = 0;
+	private static final byte VALUE_STRING = 1;
+	private static final byte VALUE_INTEGER = 2;
+	private static final byte VALUE_LONG = 3;
+	private static final byte VALUE_DOUBLE = 4;
+	private static final byte VALUE_BOOLEAN = 5;
+	private static final byte VALUE_DATE = 6;
+	private static final byte VALUE_BIG_DECIMAL = 7;
+	private static final byte VALUE_BIG_INTEGER = 8;
+	private static final byte VALUE_SHORT = 9;
+	private static final byte VALUE_BYTE = 10;
+	private static final byte VALUE_FLOAT = 11;
+	private final File file;
+	private byte[] contentHash;
+	private long maxBytes = DEFAULT_MAX_BYTES;
+	private long timeToLiveMillis = 0;
+	/** open addressing index: hash of the serialized key and offset of the newest record, offset 0 marks an empty slot */
+	private int[] indexHashes = new int[INITIAL_INDEX_CAPACITY];
+	private long[] indexOffsets = new long[INITIAL_INDEX_CAPACITY];
+	private int indexSize = 0;
+	/** bytes of superseded and expired records found while opening the file */
+	private long deadBytes = 0;
+	private FileChannel channel = null;
+	private FileLock lock = null;
+	private MappedByteBuffer mapped = null;
+	private long end = 0;
+	private boolean disabled = false;
+	private IOException lastError = null;
+	private long hits = 0;
+	private long writes = 0;
+	private int compactions = 0;
+
+	/**
+	 * A stored result with its creation time
+	 */
+	static final class Entry {
+
+		final DmnDecisionResult result;
+		final long createdAt;
+
+		Entry(DmnDecisionResult result, long createdAt) {
+			this.result = result;
+			this.createdAt = createdAt;
+		}
+
+	}
+
+	/**
+	 * creates the disk tier, the file will be opened with the first access
+	 * @param file the cache file
+	 * @param contentHash the hash of the current DMN content
+	 */
+	public PersistentResultCache(File file, byte[] contentHash) {
+		if (file == null) {
+			throw new IllegalArgumentException("file cannot be null");
+		}
+		if (contentHash == null) {
+			throw new IllegalArgumentException("contentHash cannot be null");
+		}
+		this.file = file;
+		this.contentHash = contentHash;
+	}
+
+	/**
+	 * returns the cache file for a decision source
+	 * @param cacheDir the directory of the cache files
+	 * @param sourceKey identifies the engine, DMN source and decision key
+	 * @return the file
+	 */
+	public static File getCacheFile(File cacheDir, String sourceKey) {
+		byte[] h = DecisionSnapshot.hash(sourceKey.getBytes(StandardCharsets.UTF_8));
+		StringBuilder sb = new StringBuilder(48);
+		for (int i = 0; i < 16; i++) {
+			sb.append(String.format("%02x", h[i] & 0xFF));
+		}
+		sb.append(FILE_EXTENSION);
+		return new File(cacheDir, sb.toString());
+	}
+
+	private boolean ensureOpen() {
+		if (disabled) {
+			return false;
+		}
+		if (channel == null) {
+			try {
+				open(true);
+			} catch (IOException e) {
+				disable(e);
+				return false;
+			} catch (OverlappingFileLockException e) {
+				// another runner of this JVM uses the file
+				disable(new IOException("Cache file: " + file + " is used by another runner", e));
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * opens the file and reads the index. Nothing is mapped while opening,
+	 * so the file can be truncated and replaced by the compaction.
+	 * @param compactIfNecessary false if the file has just been compacted
+	 */
+	private void open(boolean compactIfNecessary) throws IOException {
+		DecisionSnapshot.createPrivateDirectory(file.getAbsoluteFile().getParentFile());
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		lock = channel.tryLock();
+		if (lock == null) {
+			throw new IOException("Cache file: " + file + " is used by another process");
+		}
+		if (DecisionSnapshot.isTrusted(file) == false) {
+			throw new IOException("Cache file: " + file + " is owned by another user or writable by others");
+		}
+		clearIndex();
+		long size = channel.size();
+		long committedEnd = readHeader();
+		if (committedEnd < 0 || committedEnd > size) {
+			reset();
+			return;
+		}
+		// records behind the committed end (e.g. written before the DMN has been changed) are not truncated
+		// because a closed runner may still have the file mapped, they will be overwritten or removed by the compaction
+		end = committedEnd;
+		if (loadIndex() == false) {
+			reset();
+			return;
+		}
+		if (compactIfNecessary && isCompactionNecessary()) {
+			compact();
+			open(false);
+		}
+	}
+
+	private int getHeaderSize() {
+		return HEADER_FIXED_SIZE + contentHash.length;
+	}
+
+	/**
+	 * @return the end of the committed records or -1 if the file does not start with a header for the current content hash
+	 */
+	private long readHeader() throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(getHeaderSize());
+		channel.read(header, 0);
+		header.flip();
+		if (header.remaining() < header.capacity()) {
+			return -1;
+		}
+		if (header.getInt() != MAGIC || header.getInt() != FORMAT_VERSION) {
+			return -1;
+		}
+		long committedEnd = header.getLong();
+		if (header.getInt() != contentHash.length) {
+			return -1;
+		}
+		byte[] storedHash = new byte[contentHash.length];
+		header.get(storedHash);
+		if (Arrays.equals(storedHash, contentHash) == false || committedEnd < header.capacity()) {
+			return -1;
+		}
+		return committedEnd;
+	}
+
+	private ByteBuffer createHeader(long committedEnd) {
+		ByteBuffer header = ByteBuffer.allocate(getHeaderSize());
+		header.putInt(MAGIC);
+		header.putInt(FORMAT_VERSION);
+		header.putLong(committedEnd);
+		header.putInt(contentHash.length);
+		header.put(contentHash);
+		header.flip();
+		return header;
+	}
+
+	/**
+	 * discards all records by writing the header for the current content hash.
+	 * The file is not truncated because a buffer may still be mapped (truncating a mapped file fails on Windows),
+	 * the records behind the committed end will be overwritten or removed with the next open.
+	 */
+	private void reset() throws IOException {
+		mapped = null;
+		clearIndex();
+		end = getHeaderSize();
+		writeFully(channel, createHeader(end), 0);
+	}
+
+	/**
+	 * reads the keys of all committed records with the channel, records the bytes of superseded and expired records
+	 * @return false if the records are corrupted
+	 */
+	private boolean loadIndex() throws IOException {
+		long now = System.currentTimeMillis();
+		long position = getHeaderSize();
+		channel.position(position);
+		// the stream must not be closed, it would close the channel
+		DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 65536));
+		try {
+			while (position < end) {
+				int length = in.readInt();
+				if (length < RECORD_HEAD_SIZE - 4 || position + 4 + length > end) {
+					return false;
+				}
+				long createdAt = in.readLong();
+				int keyLength = in.readInt();
+				if (keyLength < 0 || keyLength > length - RECORD_HEAD_SIZE + 4) {
+					return false;
+				}
+				byte[] keyBytes = new byte[keyLength];
+				in.readFully(keyBytes);
+				skipFully(in, length - RECORD_HEAD_SIZE + 4 - keyLength);
+				if (isExpired(createdAt, now)) {
+					deadBytes = deadBytes + 4 + length;
+				}
+				int hash = hash(keyBytes);
+				int slot = findSlot(hash, keyBytes);
+				if (indexOffsets[slot] != 0) {
+					ByteBuffer previous = ByteBuffer.allocate(12);
+					readFully(previous, indexOffsets[slot]);
+					if (isExpired(previous.getLong(4), now) == false) {
+						// an expired record has already been counted
+						deadBytes = deadBytes + 4 + previous.getInt(0);
+					}
+					indexOffsets[slot] = position;
+				} else {
+					insert(slot, hash, position);
+				}
+				position = position + 4 + length;
+			}
+		} catch (EOFException e) {
+			return false;
+		}
+		return true;
+	}
+
+	private static void skipFully(DataInputStream in, int count) throws IOException {
+		while (count > 0) {
+			int skipped = in.skipBytes(count);
+			if (skipped <= 0) {
+				throw new EOFException();
+			}
+			count = count - skipped;
+		}
+	}
+
+	/**
+	 * the file will be compacted if the superseded and expired records take at least the half of the records
+	 * or the file exceeds the size limit
+	 */
+	private boolean isCompactionNecessary() {
+		long recordBytes = end - getHeaderSize();
+		if (deadBytes > 0 && deadBytes * 2 >= recordBytes) {
+			return true;
+		}
+		return maxBytes > 0 && end > maxBytes;
+	}
+
+	/**
+	 * writes the current and not expired records into a new file which replaces the cache file.
+	 * If these records exceed the size limit, only the newest records are kept.
+	 * The file is closed afterwards and has to be opened again.
+	 */
+	private void compact() throws IOException {
+		long now = System.currentTimeMillis();
+		long[] offsets = new long[indexSize];
+		int count = 0;
+		for (long offset : indexOffsets) {
+			if (offset != 0) {
+				offsets[count++] = offset;
+			}
+		}
+		Arrays.sort(offsets);
+		long size = getHeaderSize();
+		ByteBuffer head = ByteBuffer.allocate(12);
+		for (int i = count - 1; i >= 0; i--) {
+			head.clear();
+			readFully(head, offsets[i]);
+			long recordSize = 4 + head.getInt(0);
+			if (isExpired(head.getLong(4), now)) {
+				offsets[i] = 0;
+			} else if (maxBytes > 0 && size + recordSize > maxBytes) {
+				// the older records are dropped
+				Arrays.fill(offsets, 0, i + 1, 0);
+				break;
+			} else {
+				size = size + recordSize;
+			}
+		}
+		Path tempFile = Files.createTempFile(file.getAbsoluteFile().getParentFile().toPath(), file.getName(), ".tmp");
+		try {
+			FileChannel target = FileChannel.open(tempFile, StandardOpenOption.WRITE);
+			try {
+				long position = getHeaderSize();
+				ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+				for (long offset : offsets) {
+					if (offset == 0) {
+						continue;
+					}
+					lengthBuffer.clear();
+					readFully(lengthBuffer, offset);
+					ByteBuffer record = ByteBuffer.allocate(4 + lengthBuffer.getInt(0));
+					readFully(record, offset);
+					record.flip();
+					position = position + writeFully(target, record, position);
+				}
+				writeFully(target, createHeader(position), 0);
+				target.force(false);
+			} finally {
+				target.close();
+			}
+			closeChannel();
+			try {
+				try {
+					Files.move(tempFile, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				} catch (AtomicMoveNotSupportedException e) {
+					Files.move(tempFile, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				}
+				compactions++;
+			} catch (IOException e) {
+				// e.g. on Windows the file is still mapped by a closed runner, the former file will be used
+			}
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+	}
+
+	private void clearIndex() {
+		if (indexOffsets.length > INITIAL_INDEX_CAPACITY) {
+			indexHashes = new int[INITIAL_INDEX_CAPACITY];
+			indexOffsets = new long[INITIAL_INDEX_CAPACITY];
+		} else {
+			Arrays.fill(indexOffsets, 0);
+		}
+		indexSize = 0;
+		deadBytes = 0;
+	}
+
+	private static int hash(byte[] keyBytes) {
+		int h = Arrays.hashCode(keyBytes);
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * looks up the key, the keys with the same hash are compared with the records in the file
+	 * @return the slot of the key or the empty slot for the key
+	 */
+	private int findSlot(int hash, byte[] keyBytes) throws IOException {
+		int mask = indexOffsets.length - 1;
+		int slot = hash & mask;
+		while (indexOffsets[slot] != 0) {
+			if (indexHashes[slot] == hash && isKeyAt(indexOffsets[slot], keyBytes)) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private boolean isKeyAt(long offset, byte[] keyBytes) throws IOException {
+		ByteBuffer head = ByteBuffer.allocate((int) Math.min(RECORD_HEAD_SIZE + keyBytes.length, end - offset));
+		readFully(head, offset);
+		head.flip();
+		head.position(12);
+		return matchesKey(head, keyBytes);
+	}
+
+	/**
+	 * compares the key of a record, the buffer must be positioned at the key length.
+	 * If the key matches the buffer is positioned at the result.
+	 */
+	private static boolean matchesKey(ByteBuffer record, byte[] keyBytes) {
+		if (record.remaining() < 4 + keyBytes.length || record.getInt() != keyBytes.length) {
+			return false;
+		}
+		for (int i = 0; i < keyBytes.length; i++) {
+			if (record.get() != keyBytes[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void insert(int slot, int hash, long offset) {
+		indexHashes[slot] = hash;
+		indexOffsets[slot] = offset;
+		indexSize++;
+		if (indexSize * 4L > indexOffsets.length * 3L) {
+			int[] oldHashes = indexHashes;
+			long[] oldOffsets = indexOffsets;
+			indexHashes = new int[oldHashes.length * 2];
+			indexOffsets = new long[oldOffsets.length * 2];
+			int mask = indexOffsets.length - 1;
+			for (int i = 0; i < oldOffsets.length; i++) {
+				if (oldOffsets[i] != 0) {
+					// the keys are unique, no need to compare them
+					int s = oldHashes[i] & mask;
+					while (indexOffsets[s] != 0) {
+						s = (s + 1) & mask;
+					}
+					indexHashes[s] = oldHashes[i];
+					indexOffsets[s] = oldOffsets[i];
+				}
+			}
+		}
+	}
+
+	private boolean isExpired(long createdAt, long now) {
+		return timeToLiveMillis > 0 && (now - createdAt) > timeToLiveMillis;
+	}
+
+	/**
+	 * returns the stored result
+	 * @param key the input key
+	 * @return the result with its creation time or null if the key is not stored or the disk tier is disabled
+	 */
+	Entry get(CacheKey key) {
+		if (ensureOpen() == false) {
+			return null;
+		}
+		byte[] keyBytes = writeKey(key);
+		if (keyBytes == null) {
+			return null;
+		}
+		int hash = hash(keyBytes);
+		int mask = indexOffsets.length - 1;
+		int slot = hash & mask;
+		try {
+			while (indexOffsets[slot] != 0) {
+				if (indexHashes[slot] == hash) {
+					ByteBuffer record = readRecord(indexOffsets[slot]);
+					long createdAt = record.getLong();
+					if (matchesKey(record, keyBytes)) {
+						DmnDecisionResult result = readResult(record);
+						hits++;
+						return new Entry(result, createdAt);
+					}
+				}
+				slot = (slot + 1) & mask;
+			}
+		} catch (IOException e) {
+			disable(e);
+		} catch (BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException e) {
+			disable(new IOException("Cache file: " + file + " is corrupted at offset: " + indexOffsets[slot], e));
+		}
+		return null;
+	}
+
+	private ByteBuffer readRecord(long offset) throws IOException {
+		long mappable = Math.min(end, Integer.MAX_VALUE);
+		if (mapped == null || (mappable - mapped.capacity()) > REMAP_THRESHOLD) {
+			mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, mappable);
+		}
+		if (offset + 4 <= mapped.capacity()) {
+			ByteBuffer record = mapped.duplicate();
+			int position = (int) offset;
+			record.position(position);
+			int length = record.getInt();
+			if (position + 4 + length <= mapped.capacity()) {
+				record.limit(position + 4 + length);
+				return record;
+			}
+		}
+		// appended after the buffer has been mapped
+		ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+		readFully(lengthBuffer, offset);
+		int length = lengthBuffer.getInt(0);
+		if (length <= 0 || offset + 4 + length > end) {
+			throw new IllegalArgumentException("Invalid record length: " + length);
+		}
+		ByteBuffer record = ByteBuffer.allocate(length);
+		readFully(record, offset + 4);
+		record.flip();
+		return record;
+	}
+
+	/**
+	 * appends a result and commits the new end of the records in the header
+	 * @param key the input key
+	 * @param result the result
+	 * @param createdAt the creation time of the result
+	 * @return true if the result has been stored, false if it contains values which cannot be stored,
+	 * the size limit is reached or the disk tier is disabled
+	 */
+	boolean put(CacheKey key, DmnDecisionResult result, long createdAt) {
+		if (ensureOpen() == false) {
+			return false;
+		}
+		byte[] keyBytes = writeKey(key);
+		if (keyBytes == null) {
+			return false;
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeInt(0); // length, set below
+			out.writeLong(createdAt);
+			out.writeInt(keyBytes.length);
+			out.write(keyBytes);
+			out.writeInt(result.size());
+			for (DmnDecisionResultEntries entries : result) {
+				out.writeInt(entries.size());
+				for (Map.Entry<String, Object> entry : entries.entrySet()) {
+					writeString(out, entry.getKey());
+					if (writeValue(out, entry.getValue()) == false) {
+						return false;
+					}
+				}
+			}
+			out.flush();
+		} catch (IOException e) {
+			// cannot happen with a ByteArrayOutputStream
+			throw new IllegalStateException(e);
+		}
+		ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+		record.putInt(0, record.capacity() - 4);
+		if (maxBytes > 0 && end + record.capacity() > maxBytes) {
+			// the superseded and expired records will be removed with the next open
+			return false;
+		}
+		try {
+			int hash = hash(keyBytes);
+			int slot = findSlot(hash, keyBytes);
+			long offset = end;
+			writeFully(channel, record, offset);
+			end = end + record.capacity();
+			ByteBuffer committedEnd = ByteBuffer.allocate(8);
+			committedEnd.putLong(0, end);
+			writeFully(channel, committedEnd, END_POSITION);
+			if (indexOffsets[slot] != 0) {
+				indexOffsets[slot] = offset;
+			} else {
+				insert(slot, hash, offset);
+			}
+		} catch (IOException e) {
+			disable(e);
+			return false;
+		}
+		writes++;
+		return true;
+	}
+
+	/**
+	 * discards all stored results because the DMN has been changed
+	 * @param newContentHash the hash of the new DMN content
+	 */
+	void invalidate(byte[] newContentHash) {
+		if (newContentHash == null) {
+			throw new IllegalArgumentException("newContentHash cannot be null");
+		}
+		if (Arrays.equals(contentHash, newContentHash)) {
+			return;
+		}
+		contentHash = newContentHash;
+		if (channel != null && disabled == false) {
+			try {
+				reset();
+			} catch (IOException e) {
+				disable(e);
+			}
+		}
+	}
+
+	private static long writeFully(FileChannel target, ByteBuffer buffer, long position) throws IOException {
+		long start = position;
+		while (buffer.hasRemaining()) {
+			position = position + target.write(buffer, position);
+		}
+		return position - start;
+	}
+
+	private void readFully(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int count = channel.read(buffer, position);
+			if (count < 0) {
+				throw new IOException("Cache file: " + file + " ends unexpectedly at: " + position);
+			}
+			position = position + count;
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * serializes the key, equal keys have equal bytes
+	 * @return the bytes or null if the key contains values which cannot be stored
+	 */
+	private static byte[] writeKey(CacheKey key) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeInt(key.size());
+			for (int i = 0; i < key.size(); i++) {
+				writeString(out, key.getName(i));
+				if (writeValue(out, key.getValue(i)) == false) {
+					return null;
+				}
+			}
+			out.flush();
+		} catch (IOException e) {
+			// cannot happen with a ByteArrayOutputStream
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * reads a length and checks it against the remaining bytes, protects against corrupted lengths
+	 */
+	private static int readLength(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		if (length < 0 || length > buffer.remaining()) {
+			throw new IllegalArgumentException("Invalid length: " + length);
+		}
+		return length;
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		byte[] bytes = new byte[readLength(buffer)];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static boolean writeValue(DataOutputStream out, Object value) throws IOException {
+		if (value == null) {
+			out.writeByte(VALUE_NULL);
+		} else if (value instanceof String) {
+			out.writeByte(VALUE_STRING);
+			writeString(out, (String) value);
+		} else if (value instanceof Integer) {
+			out.writeByte(VALUE_INTEGER);
+			out.writeInt((Integer) value);
+		} else if (value instanceof Long) {
+			out.writeByte(VALUE_LONG);
+			out.writeLong((Long) value);
+		} else if (value instanceof Double) {
+			out.writeByte(VALUE_DOUBLE);
+			out.writeDouble((Double) value);
+		} else if (value instanceof Boolean) {
+			out.writeByte(VALUE_BOOLEAN);
+			out.writeBoolean((Boolean) value);
+		} else if (value instanceof Date) {
+			out.writeByte(VALUE_DATE);
+			out.writeLong(((Date) value).getTime());
+		} else if (value instanceof BigDecimal) {
+			out.writeByte(VALUE_BIG_DECIMAL);
+			writeString(out, value.toString());
+		} else if (value instanceof BigInteger) {
+			out.writeByte(VALUE_BIG_INTEGER);
+			writeString(out, value.toString());
+		} else if (value instanceof Short) {
+			out.writeByte(VALUE_SHORT);
+			out.writeShort((Short) value);
+		} else if (value instanceof Byte) {
+			out.writeByte(VALUE_BYTE);
+			out.writeByte((Byte) value);
+		} else if (value instanceof Float) {
+			out.writeByte(VALUE_FLOAT);
+			out.writeFloat((Float) value);
+		} else {
+			return false;
+		}
+		return true;
+	}
+
+	private static Object readValue(ByteBuffer buffer) {
+		byte type = buffer.get();
+		switch (type) {
+		case VALUE_NULL: return null;
+		case VALUE_STRING: return readString(buffer);
+		case VALUE_INTEGER: return buffer.getInt();
+		case VALUE_LONG: return buffer.getLong();
+		case VALUE_DOUBLE: return buffer.getDouble();
+		case VALUE_BOOLEAN: return buffer.get() != 0;
+		case VALUE_DATE: return new Date(buffer.getLong());
+		case VALUE_BIG_DECIMAL: return new BigDecimal(readString(buffer));
+		case VALUE_BIG_INTEGER: return new BigInteger(readString(buffer));
+		case VALUE_SHORT: return buffer.getShort();
+		case VALUE_BYTE: return buffer.get();
+		case VALUE_FLOAT: return buffer.getFloat();
+		default: throw new IllegalArgumentException("Unknown value type: " + type);
+		}
+	}
+
+	/**
+	 * the values get the same types as they would get from the output type definitions
+	 */
+	private static TypedValue toTypedValue(Object value) {
+		if (value == null) {
+			return Variables.untypedNullValue();
+		} else if (value instanceof String) {
+			return Variables.stringValue((String) value);
+		} else if (value instanceof Integer) {
+			return Variables.integerValue((Integer) value);
+		} else if (value instanceof Long) {
+			return Variables.longValue((Long) value);
+		} else if (value instanceof Double) {
+			return Variables.doubleValue((Double) value);
+		} else if (value instanceof Boolean) {
+			return Variables.booleanValue((Boolean) value);
+		} else if (value instanceof Date) {
+			return Variables.dateValue((Date) value);
+		} else if (value instanceof Short) {
+			return Variables.shortValue((Short) value);
+		} else {
+			return Variables.untypedValue(value);
+		}
+	}
+
+	private static DmnDecisionResult readResult(ByteBuffer buffer) {
+		int size = readLength(buffer);
+		List<DmnDecisionResultEntries> list = new ArrayList<>(size);
+		for (int r = 0; r < size; r++) {
+			int count = readLength(buffer);
+			DmnDecisionResultEntriesImpl entries = new DmnDecisionResultEntriesImpl();
+			for (int e = 0; e < count; e++) {
+				String name = readString(buffer);
+				entries.putValue(name, toTypedValue(readValue(buffer)));
+			}
+			list.add(entries);
+		}
+		return new DmnDecisionResultImpl(list);
+	}
+
+	private void disable(IOException e) {
+		lastError = e;
+		close();
+	}
+
+	private void closeChannel() {
+		mapped = null;
+		if (channel != null) {
+			try {
+				if (lock != null && lock.isValid()) {
+					lock.release();
+				}
+				channel.close();
+			} catch (IOException e) {
+				// the records have been written already
+			}
+			channel = null;
+			lock = null;
+		}
+	}
+
+	/**
+	 * releases the lock and closes the file. The stored results are kept for the next runs.
+	 */
+	@Override
+	public void close() {
+		closeChannel();
+		clearIndex();
+		disabled = true;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * Set the size limit of the file. Results are not stored if the limit is reached,
+	 * the next open removes the superseded and expired records and if necessary the oldest records.
+	 * Must be set before the first access.
+	 * @param maxBytes 0 or less means no limit
+	 */
+	public void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Set the time-to-live of the results, expired records are removed when the file is compacted
+	 * @param timeToLiveMillis 0 or less means the results never expire
+	 */
+	public void setTimeToLiveMillis(long timeToLiveMillis) {
+		this.timeToLiveMillis = timeToLiveMillis;
+	}
+
+	/**
+	 * @return number of stored keys (expired keys included until the next compaction), opens the file if not already done
+	 */
+	public int size() {
+		ensureOpen();
+		return indexSize;
+	}
+
+	/**
+	 * @return the end of the committed records
+	 */
+	public long getFileSize() {
+		return end;
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getWrites() {
+		return writes;
+	}
+
+	/**
+	 * @return number of times the file has been rewritten without the superseded and expired records
+	 */
+	public int getCompactions() {
+		return compactions;
+	}
+
+	public boolean isDisabled() {
+		return disabled;
+	}
+
+	/**
+	 * @return the error which has disabled the disk tier or null
+	 */
+	public IOException getLastError() {
+		return lastError;
+	}
+
+}
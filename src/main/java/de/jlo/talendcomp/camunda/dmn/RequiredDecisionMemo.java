@@ -0,0 +1,236 @@
+/**
+ * Copyright 2021 Jan Lolling jan.lolling@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jlo.talendcomp.camunda.dmn;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.camunda.bpm.dmn.engine.DmnDecision;
+import org.camunda.bpm.dmn.engine.DmnDecisionLogic;
+import org.camunda.bpm.dmn.engine.DmnDecisionResult;
+import org.camunda.bpm.dmn.engine.delegate.DmnDecisionLogicEvaluationEvent;
+import org.camunda.bpm.dmn.engine.impl.DefaultDmnEngineConfiguration;
+import org.camunda.bpm.dmn.engine.impl.DmnDecisionLiteralExpressionImpl;
+import org.camunda.bpm.dmn.engine.impl.DmnDecisionTableImpl;
+import org.camunda.bpm.dmn.engine.impl.DmnDecisionTableInputImpl;
+import org.camunda.bpm.dmn.engine.impl.DmnDecisionTableRuleImpl;
+import org.camunda.bpm.dmn.engine.impl.DmnExpressionImpl;
+import org.camunda.bpm.dmn.engine.impl.evaluation.ExpressionEvaluationHandler;
+import org.camunda.bpm.engine.variable.context.VariableContext;
+import org.camunda.bpm.engine.variable.value.TypedValue;
+
+/**
+ * Bounded cache for the results of a required decision within a DRG.
+ * The key contains only the variables the decision uses: a variable is used if its name
+ * occurs in one of the FEEL expressions of the decision or is the input variable of an input column.
+ * The results of upstream decisions are variables as well, therefore every required decision
+ * can be cached independently.
+ * If the cache exceeds the maximum number of entries it will be cleared.
+ * This class is thread safe.
+ *
+ * @author jan.lolling@gmail.com
+ */
+public final class RequiredDecisionMemo {
+
+	private final DmnDecision decision;
+	private final String[] expressions;
+	private final int maxEntries;
+	private final ConcurrentHashMap<String, Boolean> usedVariables = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<CacheKey, Entry> cache = new ConcurrentHashMap<>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * The evaluation of the decision: the event for the listeners and the result for the downstream decisions
+	 */
+	static final class Entry {
+
+		final DmnDecisionLogicEvaluationEvent event;
+		final DmnDecisionResult result;
+
+		Entry(DmnDecisionLogicEvaluationEvent event, DmnDecisionResult result) {
+			this.event = event;
+			this.result = result;
+		}
+
+	}
+
+	private RequiredDecisionMemo(DmnDecision decision, List<String> expressions, int maxEntries) {
+		this.decision = decision;
+		this.expressions = expressions.toArray(new String[expressions.size()]);
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * creates the memo for a decision
+	 * @param decision the required decision
+	 * @param configuration the engine configuration
+	 * @param maxEntries the maximum number of cached results
+	 * @return the memo or null if the decision uses expressions which are not FEEL (their variables cannot be detected)
+	 */
+	static RequiredDecisionMemo create(DmnDecision decision, DefaultDmnEngineConfiguration configuration, int maxEntries) {
+		List<String> texts = collectExpressions(decision, configuration);
+		if (texts == null) {
+			return null;
+		}
+		return new RequiredDecisionMemo(decision, texts, maxEntries);
+	}
+
+	/**
+	 * collects the FEEL expressions and the input variable names of the decision
+	 * @param decision the decision
+	 * @param configuration the engine configuration
+	 * @return the texts or null if the decision uses expressions which are not FEEL
+	 */
+	static List<String> collectExpressions(DmnDecision decision, DefaultDmnEngineConfiguration configuration) {
+		ExpressionEvaluationHandler expressionHandler = new ExpressionEvaluationHandler(configuration);
+		List<String> texts = new ArrayList<>();
+		DmnDecisionLogic logic = decision.getDecisionLogic();
+		if (logic instanceof DmnDecisionTableImpl) {
+			DmnDecisionTableImpl table = (DmnDecisionTableImpl) logic;
+			for (DmnDecisionTableInputImpl input : table.getInputs()) {
+				if (input.getInputVariable() != null) {
+					texts.add(input.getInputVariable());
+				}
+				if (addExpression(texts, input.getExpression(), configuration.getDefaultInputExpressionExpressionLanguage(), expressionHandler) == false) {
+					return null;
+				}
+			}
+			for (DmnDecisionTableRuleImpl rule : table.getRules()) {
+				for (DmnExpressionImpl condition : rule.getConditions()) {
+					if (addExpression(texts, condition, configuration.getDefaultInputEntryExpressionLanguage(), expressionHandler) == false) {
+						return null;
+					}
+				}
+				for (DmnExpressionImpl conclusion : rule.getConclusions()) {
+					if (addExpression(texts, conclusion, configuration.getDefaultOutputEntryExpressionLanguage(), expressionHandler) == false) {
+						return null;
+					}
+				}
+			}
+		} else if (logic instanceof DmnDecisionLiteralExpressionImpl) {
+			DmnDecisionLiteralExpressionImpl literal = (DmnDecisionLiteralExpressionImpl) logic;
+			if (addExpression(texts, literal.getExpression(), configuration.getDefaultLiteralExpressionLanguage(), expressionHandler) == false) {
+				return null;
+			}
+		} else {
+			return null;
+		}
+		return texts;
+	}
+
+	private static boolean addExpression(List<String> texts, DmnExpressionImpl expression, String defaultLanguage, ExpressionEvaluationHandler expressionHandler) {
+		if (CompiledDecisionTable.isNonEmptyExpression(expression) == false) {
+			return true;
+		}
+		if (CompiledDecisionTable.isFeel(expressionHandler, expression.getExpressionLanguage(), defaultLanguage) == false) {
+			return false;
+		}
+		texts.add(expression.getExpression());
+		return true;
+	}
+
+	/**
+	 * builds the key from the used variables
+	 * @param variables the current variables including the results of the upstream decisions
+	 * @return the key or null if a used variable has a value which cannot be part of a key
+	 */
+	CacheKey createKey(VariableContext variables) {
+		CacheKey key = new CacheKey(8);
+		for (String name : variables.keySet()) {
+			if (isUsed(name)) {
+				TypedValue typedValue = variables.resolve(name);
+				Object value = typedValue != null ? typedValue.getValue() : null;
+				if (value instanceof Date) {
+					// Date is mutable
+					value = new Date(((Date) value).getTime());
+				} else if (isImmutable(value) == false) {
+					return null;
+				}
+				key.set(name, value);
+			}
+		}
+		return key;
+	}
+
+	private static boolean isImmutable(Object value) {
+		return value == null
+				|| value instanceof String
+				|| value instanceof Boolean
+				|| value instanceof Integer
+				|| value instanceof Long
+				|| value instanceof Short
+				|| value instanceof Byte
+				|| value instanceof Double
+				|| value instanceof Float
+				|| value instanceof BigDecimal
+				|| value instanceof BigInteger;
+	}
+
+	private boolean isUsed(String name) {
+		Boolean used = usedVariables.get(name);
+		if (used == null) {
+			used = Boolean.FALSE;
+			for (String text : expressions) {
+				if (text.contains(name)) {
+					used = Boolean.TRUE;
+					break;
+				}
+			}
+			usedVariables.put(name, used);
+		}
+		return used;
+	}
+
+	Entry get(CacheKey key) {
+		Entry entry = cache.get(key);
+		if (entry != null) {
+			hits.incrementAndGet();
+		} else {
+			misses.incrementAndGet();
+		}
+		return entry;
+	}
+
+	void put(CacheKey key, Entry entry) {
+		if (cache.size() >= maxEntries) {
+			cache.clear();
+		}
+		cache.put(key, entry);
+	}
+
+	public DmnDecision getDecision() {
+		return decision;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public int size() {
+		return cache.size();
+	}
+
+}
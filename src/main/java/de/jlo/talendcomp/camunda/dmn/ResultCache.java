@@ -0,0 +1,362 @@
+/**
+ * Copyright 2021 Jan Lolling jan.lolling@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jlo.talendcomp.camunda.dmn;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.camunda.bpm.dmn.engine.DmnDecisionResult;
+import org.camunda.bpm.dmn.engine.DmnDecisionResultEntries;
+
+/**
+ * Bounded cache for decision results.
+ * Entries are evicted in least-recently-used order as soon as
+ * the maximum number of entries or the approximate memory budget is exceeded.
+ * Optionally entries expire after a time-to-live.
+ * With a {@link PersistentResultCache} the evicted entries are written to disk (the remaining entries when the disk tier is closed)
+ * and results missing in memory are looked up on disk. Only results of a single decision are written to disk.
+ * This class is not thread safe, every DmnRunner has its own cache.
+ *
+ * @author jan.lolling@gmail.com
+ */
+public class ResultCache {
+
+	public static final int DEFAULT_MAX_ENTRIES = 100000;
+	private static final long ENTRY_OVERHEAD = 64;
+	private final LinkedHashMap<Object, CacheEntry> map = new LinkedHashMap<>(1024, 0.75f, true);
+	private int maxEntries = DEFAULT_MAX_ENTRIES;
+	private long maxBytes = 0;
+	private long timeToLiveMillis = 0;
+	private long currentBytes = 0;
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+	private PersistentResultCache persistentCache = null;
+
+	private static class CacheEntry {
+
+		private final DmnDecisionResult result;
+		/** the results of all decisions if multiple decisions are evaluated together, otherwise null */
+		private final DmnDecisionResult[] results;
+		private final long size;
+		private final long createdAt;
+		/** true if the entry has been read from the disk tier and must not be written again */
+		private final boolean persisted;
+
+		private CacheEntry(DmnDecisionResult result, DmnDecisionResult[] results, long size, long createdAt, boolean persisted) {
+			this.result = result;
+			this.results = results;
+			this.size = size;
+			this.createdAt = createdAt;
+			this.persisted = persisted;
+		}
+
+	}
+
+	/**
+	 * returns the cached result
+	 * @param key the input key
+	 * @return the result or null if there is no (valid) entry
+	 */
+	public DmnDecisionResult get(Object key) {
+		CacheEntry entry = getEntry(key);
+		return entry != null ? entry.result : null;
+	}
+
+	/**
+	 * returns the cached results of multiple decisions
+	 * @param key the input key
+	 * @return the results in the order they have been put or null if there is no (valid) entry
+	 */
+	public DmnDecisionResult[] getAll(Object key) {
+		CacheEntry entry = getEntry(key);
+		if (entry == null) {
+			return null;
+		} else if (entry.results != null) {
+			return entry.results;
+		} else {
+			return new DmnDecisionResult[] {entry.result};
+		}
+	}
+
+	private CacheEntry getEntry(Object key) {
+		CacheEntry entry = map.get(key);
+		if (entry != null && isExpired(entry.createdAt)) {
+			removeEntry(key, entry);
+			evictions++;
+			entry = null;
+		}
+		if (entry == null && persistentCache != null && key instanceof CacheKey) {
+			entry = loadPersisted((CacheKey) key);
+		}
+		if (entry != null) {
+			hits++;
+		} else {
+			misses++;
+		}
+		return entry;
+	}
+
+	private boolean isExpired(long createdAt) {
+		return timeToLiveMillis > 0 && (System.currentTimeMillis() - createdAt) > timeToLiveMillis;
+	}
+
+	/**
+	 * takes a result from the disk tier into memory
+	 * @param key the input key, can be the reused key of the current row
+	 * @return the entry or null if the result is not stored or expired
+	 */
+	private CacheEntry loadPersisted(CacheKey key) {
+		PersistentResultCache.Entry persisted = persistentCache.get(key);
+		if (persisted == null || isExpired(persisted.createdAt)) {
+			return null;
+		}
+		CacheKey copy = key.copy();
+		long size = ENTRY_OVERHEAD + estimateSize(copy) + estimateSize(persisted.result);
+		CacheEntry entry = new CacheEntry(persisted.result, null, size, persisted.createdAt, true);
+		map.put(copy, entry);
+		currentBytes = currentBytes + size;
+		evictIfNecessary();
+		return entry;
+	}
+
+	/**
+	 * puts a result into the cache and evicts the oldest entries if a limit is exceeded
+	 * @param key the input key
+	 * @param result the decision result
+	 */
+	public void put(Object key, DmnDecisionResult result) {
+		if (result == null) {
+			throw new IllegalArgumentException("result cannot be null");
+		}
+		putEntry(key, result, null, estimateSize(result));
+	}
+
+	/**
+	 * puts the results of multiple decisions evaluated with the same input into the cache
+	 * @param key the input key
+	 * @param results the decision results
+	 */
+	public void putAll(Object key, DmnDecisionResult[] results) {
+		if (results == null || results.length == 0) {
+			throw new IllegalArgumentException("results cannot be null or empty");
+		}
+		long size = 0;
+		for (DmnDecisionResult result : results) {
+			if (result == null) {
+				throw new IllegalArgumentException("result cannot be null");
+			}
+			size = size + estimateSize(result);
+		}
+		putEntry(key, results[0], results, size);
+	}
+
+	private void putEntry(Object key, DmnDecisionResult result, DmnDecisionResult[] results, long resultSize) {
+		if (key == null) {
+			throw new IllegalArgumentException("key cannot be null");
+		}
+		long size = ENTRY_OVERHEAD + estimateSize(key) + resultSize;
+		CacheEntry previous = map.put(key, new CacheEntry(result, results, size, System.currentTimeMillis(), false));
+		if (previous != null) {
+			currentBytes = currentBytes - previous.size;
+		}
+		currentBytes = currentBytes + size;
+		evictIfNecessary();
+	}
+
+	private void evictIfNecessary() {
+		Iterator<Map.Entry<Object, CacheEntry>> it = map.entrySet().iterator();
+		while (it.hasNext() && isLimitExceeded()) {
+			Map.Entry<Object, CacheEntry> eldest = it.next();
+			it.remove();
+			currentBytes = currentBytes - eldest.getValue().size;
+			evictions++;
+			spill(eldest.getKey(), eldest.getValue());
+		}
+	}
+
+	/**
+	 * writes an entry to the disk tier if it is not already stored there
+	 */
+	private void spill(Object key, CacheEntry entry) {
+		if (persistentCache != null
+				&& entry.persisted == false
+				&& entry.results == null
+				&& key instanceof CacheKey
+				&& isExpired(entry.createdAt) == false) {
+			persistentCache.put((CacheKey) key, entry.result, entry.createdAt);
+		}
+	}
+
+	private boolean isLimitExceeded() {
+		if (maxEntries > 0 && map.size() > maxEntries) {
+			return true;
+		}
+		if (maxBytes > 0 && currentBytes > maxBytes) {
+			return true;
+		}
+		return false;
+	}
+
+	private void removeEntry(Object key, CacheEntry entry) {
+		map.remove(key);
+		currentBytes = currentBytes - entry.size;
+	}
+
+	/**
+	 * removes all entries. The statistic counters will be kept.
+	 */
+	public void clear() {
+		map.clear();
+		currentBytes = 0;
+	}
+
+	public int size() {
+		return map.size();
+	}
+
+	/**
+	 * Set the disk tier. A former disk tier will be closed without writing the entries in memory.
+	 * @param persistentCache the disk tier, null disables the disk tier
+	 */
+	public void setPersistentCache(PersistentResultCache persistentCache) {
+		if (this.persistentCache != null && this.persistentCache != persistentCache) {
+			this.persistentCache.close();
+		}
+		this.persistentCache = persistentCache;
+		if (persistentCache != null) {
+			persistentCache.setTimeToLiveMillis(timeToLiveMillis);
+		}
+	}
+
+	public PersistentResultCache getPersistentCache() {
+		return persistentCache;
+	}
+
+	/**
+	 * writes the entries in memory to the disk tier and closes it. The entries in memory will be kept.
+	 */
+	public void closePersistentCache() {
+		if (persistentCache != null) {
+			for (Map.Entry<Object, CacheEntry> entry : map.entrySet()) {
+				spill(entry.getKey(), entry.getValue());
+			}
+			persistentCache.close();
+			persistentCache = null;
+		}
+	}
+
+	/**
+	 * estimates the memory footprint of a cache key or result value
+	 * @param value
+	 * @return approximated number of bytes
+	 */
+	static long estimateSize(Object value) {
+		if (value == null) {
+			return 0;
+		} else if (value instanceof String) {
+			return 40 + 2 * ((String) value).length();
+		} else if (value instanceof CacheKey) {
+			CacheKey key = (CacheKey) value;
+			long size = 40 + 8 * key.size();
+			for (int i = 0; i < key.size(); i++) {
+				// the names are shared with the input schema
+				size = size + estimateSize(key.getValue(i));
+			}
+			return size;
+		} else if (value instanceof DmnDecisionResult) {
+			long size = 40;
+			for (DmnDecisionResultEntries entries : (DmnDecisionResult) value) {
+				size = size + 48;
+				for (Map.Entry<String, Object> entry : entries.entrySet()) {
+					// the map node, the typed value wrapper and the value itself, the name is shared
+					size = size + 32 + 24 + estimateSize(entry.getValue());
+				}
+			}
+			if (value instanceof OutputPlan.PlannedResult) {
+				size = size + ((OutputPlan.PlannedResult) value).estimateRowsSize();
+			}
+			return size;
+		} else if (value instanceof BigDecimal) {
+			return 40 + ((BigDecimal) value).unscaledValue().bitLength() / 8;
+		} else if (value instanceof Number || value instanceof Boolean || value instanceof Date) {
+			return 24;
+		} else {
+			return 32;
+		}
+	}
+
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	/**
+	 * Set the maximum number of entries
+	 * @param maxEntries 0 or less means no limit
+	 */
+	public void setMaxEntries(int maxEntries) {
+		this.maxEntries = maxEntries;
+		evictIfNecessary();
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * Set the approximate memory budget
+	 * @param maxBytes 0 or less means no limit
+	 */
+	public void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+		evictIfNecessary();
+	}
+
+	public long getTimeToLiveMillis() {
+		return timeToLiveMillis;
+	}
+
+	/**
+	 * Set the time-to-live for entries, also for the entries of the disk tier
+	 * @param timeToLiveMillis 0 or less means the entries never expire
+	 */
+	public void setTimeToLiveMillis(long timeToLiveMillis) {
+		this.timeToLiveMillis = timeToLiveMillis;
+		if (persistentCache != null) {
+			persistentCache.setTimeToLiveMillis(timeToLiveMillis);
+		}
+	}
+
+	public long getEstimatedBytes() {
+		return currentBytes;
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	public long getEvictions() {
+		return evictions;
+	}
+
+}
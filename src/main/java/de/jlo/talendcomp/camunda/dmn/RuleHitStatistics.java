@@ -0,0 +1,210 @@
+/**
+ * Copyright 2021 Jan Lolling jan.lolling@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jlo.talendcomp.camunda.dmn;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.camunda.bpm.dmn.engine.impl.DmnDecisionTableImpl;
+import org.camunda.bpm.dmn.engine.impl.DmnDecisionTableRuleImpl;
+import org.camunda.bpm.dmn.engine.impl.hitpolicy.HitPolicyEntry;
+import org.camunda.bpm.model.dmn.HitPolicy;
+
+/**
+ * Counts how often the rules of a decision table match.
+ * For the hit policies UNIQUE and ANY the order of the rules does not change the result,
+ * therefore the evaluation order can be adapted periodically (only if a reorder interval is given):
+ * the rules with the most hits are tested first and the evaluation stops at the first matching rule.
+ * The adaptive order does not detect violations of the hit policy and counts only the first matching rule.
+ * This class is thread safe.
+ *
+ * @author jan.lolling@gmail.com
+ */
+public final class RuleHitStatistics {
+
+	public static final int DEFAULT_REORDER_INTERVAL = 10000;
+	private final DmnDecisionTableImpl decisionTable;
+	private final LongAdder[] hits;
+	private final LongAdder evaluations = new LongAdder();
+	private final boolean adaptiveOrder;
+	private final int reorderInterval;
+	/** evaluations since the last reorder, lost updates only delay the next reorder */
+	private int countSinceReorder = 0;
+	private volatile int[] order;
+	private volatile int[] rank;
+
+	/**
+	 * creates the statistics
+	 * @param decisionTable the decision table
+	 * @param reorderInterval number of evaluations between the adaptions of the rule order, 0 or less means the rules stay in document order
+	 */
+	RuleHitStatistics(DmnDecisionTableImpl decisionTable, int reorderInterval) {
+		this.decisionTable = decisionTable;
+		this.reorderInterval = reorderInterval;
+		int countRules = decisionTable.getRules().size();
+		hits = new LongAdder[countRules];
+		int[] initialOrder = new int[countRules];
+		for (int r = 0; r < countRules; r++) {
+			hits[r] = new LongAdder();
+			initialOrder[r] = r;
+		}
+		order = initialOrder;
+		rank = initialOrder.clone();
+		adaptiveOrder = reorderInterval > 0 && isOrderInsensitive(decisionTable);
+	}
+
+	/**
+	 * @return true if the hit policy delivers the same result for any order of the rules and at most one distinct result
+	 */
+	static boolean isOrderInsensitive(DmnDecisionTableImpl decisionTable) {
+		if (decisionTable.getHitPolicyHandler() == null) {
+			return false;
+		}
+		HitPolicyEntry entry = decisionTable.getHitPolicyHandler().getHitPolicyEntry();
+		return entry != null && entry.getAggregator() == null && (entry.getHitPolicy() == HitPolicy.UNIQUE || entry.getHitPolicy() == HitPolicy.ANY);
+	}
+
+	void recordHit(int rule) {
+		hits[rule].increment();
+	}
+
+	/**
+	 * counts an evaluation of the decision table and adapts the rule order if the interval has been reached
+	 */
+	void recordEvaluation() {
+		evaluations.increment();
+		if (adaptiveOrder && ++countSinceReorder >= reorderInterval) {
+			countSinceReorder = 0;
+			reorder();
+		}
+	}
+
+	private synchronized void reorder() {
+		final long[] counts = getHitCounts();
+		Integer[] sorted = new Integer[counts.length];
+		for (int r = 0; r < sorted.length; r++) {
+			sorted[r] = r;
+		}
+		// stable sort: rules with the same number of hits keep the document order
+		Arrays.sort(sorted, new Comparator<Integer>() {
+
+			@Override
+			public int compare(Integer r1, Integer r2) {
+				return Long.compare(counts[r2], counts[r1]);
+			}
+
+		});
+		int[] newOrder = new int[sorted.length];
+		int[] newRank = new int[sorted.length];
+		for (int p = 0; p < sorted.length; p++) {
+			newOrder[p] = sorted[p];
+			newRank[sorted[p]] = p;
+		}
+		rank = newRank;
+		order = newOrder;
+	}
+
+	/**
+	 * @return true if the rules are tested in the adapted order and the evaluation stops at the first match
+	 */
+	public boolean isAdaptiveOrder() {
+		return adaptiveOrder;
+	}
+
+	/**
+	 * @return the rule indexes in evaluation order (must not be modified)
+	 */
+	int[] getOrder() {
+		return order;
+	}
+
+	/**
+	 * sorts the candidate rules by the current evaluation order
+	 * @param candidates the rule indexes
+	 * @param count number of used candidates
+	 */
+	void sortByOrder(int[] candidates, int count) {
+		if (count <= 16) {
+			int[] currentRank = rank;
+			// insertion sort for the usual few candidates of an index
+			for (int i = 1; i < count; i++) {
+				int r = candidates[i];
+				int rr = currentRank[r];
+				int j = i - 1;
+				while (j >= 0 && currentRank[candidates[j]] > rr) {
+					candidates[j + 1] = candidates[j];
+					j--;
+				}
+				candidates[j + 1] = r;
+			}
+		} else {
+			int[] currentOrder = order;
+			long[] marked = new long[(currentOrder.length + 63) / 64];
+			for (int i = 0; i < count; i++) {
+				marked[candidates[i] >>> 6] |= 1L << candidates[i];
+			}
+			int c = 0;
+			for (int p = 0; p < currentOrder.length && c < count; p++) {
+				if (BitsetRuleMatcher.isSet(marked, currentOrder[p])) {
+					candidates[c++] = currentOrder[p];
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the number of hits per rule in document order
+	 */
+	public long[] getHitCounts() {
+		long[] counts = new long[hits.length];
+		for (int r = 0; r < counts.length; r++) {
+			counts[r] = hits[r].sum();
+		}
+		return counts;
+	}
+
+	public long getEvaluations() {
+		return evaluations.sum();
+	}
+
+	public DmnDecisionTableImpl getDecisionTable() {
+		return decisionTable;
+	}
+
+	/**
+	 * @param decisionKey the key of the decision of the table
+	 * @return one line per rule with the rule id and its hits, rules without hits are marked
+	 */
+	public String createReport(String decisionKey) {
+		long[] counts = getHitCounts();
+		long total = getEvaluations();
+		List<DmnDecisionTableRuleImpl> rules = decisionTable.getRules();
+		StringBuilder sb = new StringBuilder();
+		sb.append("Decision: " + decisionKey + " evaluations: " + total + (adaptiveOrder ? " (adaptive rule order)" : "") + "\n");
+		for (int r = 0; r < counts.length; r++) {
+			String id = rules.get(r).getId() != null ? rules.get(r).getId() : rules.get(r).getName();
+			sb.append("  rule " + (r + 1) + " (" + id + "): " + counts[r] + " hits");
+			if (counts[r] == 0) {
+				sb.append(" - never matched");
+			}
+			sb.append("\n");
+		}
+		return sb.toString();
+	}
+
+}
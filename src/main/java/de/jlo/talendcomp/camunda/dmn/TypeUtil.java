@@ -17,32 +17,137 @@ package de.jlo.talendcomp.camunda.dmn;
 
 import java.math.BigDecimal;
 import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
 import java.text.NumberFormat;
 import java.text.ParsePosition;
 import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Calendar;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.GregorianCalendar;
 import java.util.Locale;
-import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Converts the values between the schema types and the DMN variables.
+ * This class is thread safe and can be shared by all threads without locking:
+ * dates are formatted with an immutable DateTimeFormatter (or a SimpleDateFormat per thread if the default locale
+ * does not use the Gregorian calendar and ASCII digits) and every thread uses its own copies of the DecimalFormats.
+ *
+ * @author jan.lolling@gmail.com
+ */
 public final class TypeUtil {
 	
-	private final Map<String, DecimalFormat> numberformatMap = new HashMap<String, DecimalFormat>();
-	private SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+	private static final String DEFAULT_LOCALE = "en_UK";
+	private static final String DATE_PATTERN = "yyyy-MM-dd HH:mm:ss.SSS";
+	private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern(DATE_PATTERN);
+	/** 1582-10-15 (start of the Gregorian calendar) plus one day for the time zones */
+	private static final long MIN_ISO_TIME = -12219292800000L + 86400000L;
+	/** 10000-01-01 minus one day for the time zones */
+	private static final long MAX_ISO_TIME = 253402300800000L - 86400000L;
+	/** the locale and time zone of the former SimpleDateFormat, taken when the TypeUtil is created */
+	private final Locale dateLocale = Locale.getDefault(Locale.Category.FORMAT);
+	private final TimeZone dateTimeZone = TimeZone.getDefault();
+	private final ZoneId dateZoneId = dateTimeZone.toZoneId();
+	/** the DateTimeFormatter always writes ISO years with ASCII digits */
+	private final boolean isoDates = isIsoLocale(dateLocale);
+	private final ThreadLocal<SimpleDateFormat> legacyDateFormat = new ThreadLocal<SimpleDateFormat>() {
+
+		@Override
+		protected SimpleDateFormat initialValue() {
+			SimpleDateFormat format = new SimpleDateFormat(DATE_PATTERN, dateLocale);
+			format.setTimeZone(dateTimeZone);
+			return format;
+		}
+
+	};
+	private final ConcurrentHashMap<String, LocaleNumbers> localeNumbersMap = new ConcurrentHashMap<String, LocaleNumbers>();
+
+	/**
+	 * The number formats of a locale
+	 */
+	private static final class LocaleNumbers {
+
+		private final NumberParser parser;
+		private final ThreadLocal<DecimalFormat> format;
+
+		LocaleNumbers(String localeStr) {
+			final DecimalFormat prototype = (DecimalFormat) NumberFormat.getInstance(new Locale(localeStr));
+			// the format is only used to parse BigDecimal, the other types use the parser
+			prototype.setParseBigDecimal(true);
+			parser = new NumberParser(prototype);
+			format = new ThreadLocal<DecimalFormat>() {
+
+				@Override
+				protected DecimalFormat initialValue() {
+					return (DecimalFormat) prototype.clone();
+				}
+
+			};
+		}
+
+	}
 	
 	public TypeUtil() {}
-	
-	public DecimalFormat getNumberFormat(String localeStr) {
+
+	/**
+	 * @return true if a SimpleDateFormat for the locale uses the Gregorian calendar and the digits 0-9
+	 * (not e.g. for th_TH with the Buddhist calendar, the Japanese imperial calendar or ar_EG with Arabic-Indic digits)
+	 */
+	static boolean isIsoLocale(Locale locale) {
+		return Calendar.getInstance(locale).getClass() == GregorianCalendar.class
+				&& DecimalFormatSymbols.getInstance(locale).getZeroDigit() == '0';
+	}
+
+	private LocaleNumbers getLocaleNumbers(String localeStr) {
 		if (localeStr == null || localeStr.trim().isEmpty()) {
-			localeStr = "en_UK";
+			localeStr = DEFAULT_LOCALE;
 		}
-		DecimalFormat nf = numberformatMap.get(localeStr);
-		if (nf == null) {
-			Locale locale = new Locale(localeStr);
-			nf = (DecimalFormat) NumberFormat.getInstance(locale);
-			numberformatMap.put(localeStr, nf);
+		LocaleNumbers numbers = localeNumbersMap.get(localeStr);
+		if (numbers == null) {
+			numbers = new LocaleNumbers(localeStr);
+			LocaleNumbers existing = localeNumbersMap.putIfAbsent(localeStr, numbers);
+			if (existing != null) {
+				numbers = existing;
+			}
 		}
-		return nf;
+		return numbers;
+	}
+	
+	/**
+	 * returns the number format of the locale for the current thread, it must not be passed to other threads
+	 * @param localeStr the locale, null or empty means en_UK
+	 * @return the format
+	 */
+	public DecimalFormat getNumberFormat(String localeStr) {
+		return getLocaleNumbers(localeStr).format.get();
+	}
+
+	/**
+	 * returns the parser for plain numbers with the separators of the locale
+	 * @param localeStr the locale, null or empty means en_UK
+	 * @return the parser
+	 */
+	public NumberParser getNumberParser(String localeStr) {
+		return getLocaleNumbers(localeStr).parser;
+	}
+
+	/**
+	 * formats the date with the pattern yyyy-MM-dd HH:mm:ss.SSS in the default time zone and locale
+	 * @param date the date
+	 * @return the formatted date
+	 */
+	public String formatDate(Date date) {
+		long time = date.getTime();
+		if (isoDates && time > MIN_ISO_TIME && time < MAX_ISO_TIME) {
+			return DATE_FORMATTER.format(Instant.ofEpochMilli(time).atZone(dateZoneId));
+		}
+		// SimpleDateFormat uses the Julian calendar before 1582, writes years after 9999 without sign
+		// and uses the calendar and digits of the locale
+		return legacyDateFormat.get().format(date);
 	}
 	
 	public Object convertToDatatype(String value, String dataType, String options) throws Exception {
@@ -185,7 +290,7 @@ public final class TypeUtil {
 			DecimalFormat decfrm = getNumberFormat(locale);
 			return decfrm.format(value);
 		} else if (value instanceof Date) {
-			return sdf.format((Date) value);
+			return formatDate((Date) value);
 		} else if (value != null) {
 			return String.valueOf(value);
 		} else {
@@ -215,9 +320,7 @@ public final class TypeUtil {
 			if (value == null || valueStr.isEmpty()) {
 				return null;
 			}
-			DecimalFormat decfrm = getNumberFormat(locale);
-			decfrm.setParseBigDecimal(false);
-			return decfrm.parse(valueStr).doubleValue();
+			return getNumberParser(locale).parseDouble(valueStr);
 		} else if (value instanceof Number) {
 			Number valueNum = (Number) value;
 			return valueNum.doubleValue();
@@ -234,9 +337,7 @@ public final class TypeUtil {
 			if (value == null || valueStr.isEmpty()) {
 				return null;
 			}
-			DecimalFormat decfrm = getNumberFormat(locale);
-			decfrm.setParseBigDecimal(false);
-			return decfrm.parse(valueStr).intValue();
+			return getNumberParser(locale).parseInt(valueStr);
 		} else if (value instanceof Number) {
 			Number valueNum = (Number) value;
 			return valueNum.intValue();
@@ -253,9 +354,7 @@ public final class TypeUtil {
 			if (value == null || valueStr.isEmpty()) {
 				return null;
 			}
-			DecimalFormat decfrm = getNumberFormat(locale);
-			decfrm.setParseBigDecimal(false);
-			return decfrm.parse(valueStr).shortValue();
+			return getNumberParser(locale).parseShort(valueStr);
 		} else if (value instanceof Number) {
 			Number valueNum = (Number) value;
 			return valueNum.shortValue();
@@ -272,9 +371,7 @@ public final class TypeUtil {
 			if (value == null || valueStr.isEmpty()) {
 				return null;
 			}
-			DecimalFormat decfrm = getNumberFormat(locale);
-			decfrm.setParseBigDecimal(false);
-			return decfrm.parse(valueStr).floatValue();
+			return getNumberParser(locale).parseFloat(valueStr);
 		} else if (value instanceof Number) {
 			Number valueNum = (Number) value;
 			return valueNum.floatValue();
@@ -291,9 +388,7 @@ public final class TypeUtil {
 			if (value == null || valueStr.isEmpty()) {
 				return null;
 			}
-			DecimalFormat decfrm = getNumberFormat(locale);
-			decfrm.setParseBigDecimal(false);
-			return decfrm.parse(valueStr).longValue();
+			return getNumberParser(locale).parseLong(valueStr);
 		} else if (value instanceof Number) {
 			Number valueNum = (Number) value;
 			return valueNum.longValue();
@@ -311,7 +406,6 @@ public final class TypeUtil {
 				return null;
 			}
 			DecimalFormat decfrm = getNumberFormat(locale);
-			decfrm.setParseBigDecimal(true);
 			ParsePosition pp = new ParsePosition(0);
 			return (BigDecimal) decfrm.parse(valueStr, pp);
 		} else if (value instanceof BigDecimal) {
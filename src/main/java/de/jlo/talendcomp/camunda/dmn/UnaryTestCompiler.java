@@ -0,0 +1,373 @@
+/**
+ * Copyright 2021 Jan Lolling jan.lolling@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jlo.talendcomp.camunda.dmn;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compiles the commonly used subset of FEEL simple unary tests:
+ * "-", string, number and boolean literals, comparisons (&lt; &lt;= &gt; &gt;=) with numbers,
+ * numeric ranges like [1..8] or ]1..8[, comma separated lists of them and not(...).
+ * Everything else is not compiled and remains with the FEEL engine.
+ *
+ * @author jan.lolling@gmail.com
+ */
+public final class UnaryTestCompiler {
+
+	private final String expression;
+	private int pos = 0;
+
+	private UnaryTestCompiler(String expression) {
+		this.expression = expression;
+	}
+
+	/**
+	 * compiles the unary tests
+	 * @param expression the text of the input entry
+	 * @return the compiled test or null if the expression cannot be compiled
+	 */
+	public static CompiledUnaryTest compile(String expression) {
+		if (expression == null) {
+			return null;
+		}
+		String text = expression.trim();
+		if (text.isEmpty() || text.equals("-")) {
+			return AnyTest.INSTANCE;
+		}
+		return new UnaryTestCompiler(text).parse();
+	}
+
+	private CompiledUnaryTest parse() {
+		CompiledUnaryTest test = null;
+		if (expression.startsWith("not(") || expression.startsWith("not (")) {
+			pos = expression.indexOf('(') + 1;
+			CompiledUnaryTest inner = parseList();
+			skipWhitespace();
+			if (inner == null || consume(')') == false) {
+				return null;
+			}
+			test = new NotTest(inner);
+		} else {
+			test = parseList();
+		}
+		skipWhitespace();
+		if (pos < expression.length()) {
+			return null;
+		}
+		return test;
+	}
+
+	private CompiledUnaryTest parseList() {
+		List<CompiledUnaryTest> tests = new ArrayList<>();
+		while (true) {
+			CompiledUnaryTest test = parsePositiveTest();
+			if (test == null) {
+				return null;
+			}
+			tests.add(test);
+			skipWhitespace();
+			if (consume(',') == false) {
+				break;
+			}
+		}
+		if (tests.size() == 1) {
+			return tests.get(0);
+		} else {
+			return new AnyOfTest(tests.toArray(new CompiledUnaryTest[tests.size()]));
+		}
+	}
+
+	private CompiledUnaryTest parsePositiveTest() {
+		skipWhitespace();
+		if (pos >= expression.length()) {
+			return null;
+		}
+		char c = expression.charAt(pos);
+		if (c == '"') {
+			String s = parseString();
+			return s != null ? new StringEqualsTest(s) : null;
+		} else if (c == '<' || c == '>') {
+			pos++;
+			boolean orEqual = consume('=');
+			skipWhitespace();
+			BigDecimal n = parseNumber();
+			if (n == null) {
+				return null;
+			}
+			if (c == '<') {
+				return new RangeTest(null, false, n, orEqual);
+			} else {
+				return new RangeTest(n, orEqual, null, false);
+			}
+		} else if (c == '[' || c == '(' || c == ']') {
+			pos++;
+			boolean lowInclusive = c == '[';
+			skipWhitespace();
+			BigDecimal low = parseNumber();
+			skipWhitespace();
+			if (low == null || expression.startsWith("..", pos) == false) {
+				return null;
+			}
+			pos = pos + 2;
+			skipWhitespace();
+			BigDecimal high = parseNumber();
+			skipWhitespace();
+			if (high == null || pos >= expression.length()) {
+				return null;
+			}
+			char end = expression.charAt(pos++);
+			if (end != ']' && end != ')' && end != '[') {
+				return null;
+			}
+			return new RangeTest(low, lowInclusive, high, end == ']');
+		} else if (expression.startsWith("true", pos) && isTokenEnd(pos + 4)) {
+			pos = pos + 4;
+			return new BooleanEqualsTest(Boolean.TRUE);
+		} else if (expression.startsWith("false", pos) && isTokenEnd(pos + 5)) {
+			pos = pos + 5;
+			return new BooleanEqualsTest(Boolean.FALSE);
+		} else {
+			BigDecimal n = parseNumber();
+			return n != null ? new RangeTest(n, true, n, true) : null;
+		}
+	}
+
+	/**
+	 * parses a string literal without escape sequences
+	 * @return the string or null if it is not a simple string literal
+	 */
+	private String parseString() {
+		int end = expression.indexOf('"', pos + 1);
+		if (end < 0) {
+			return null;
+		}
+		String s = expression.substring(pos + 1, end);
+		if (s.indexOf('\\') >= 0) {
+			return null;
+		}
+		pos = end + 1;
+		return s;
+	}
+
+	private BigDecimal parseNumber() {
+		int start = pos;
+		int i = pos;
+		if (i < expression.length() && expression.charAt(i) == '-') {
+			i++;
+		}
+		int digitsStart = i;
+		while (i < expression.length() && Character.isDigit(expression.charAt(i))) {
+			i++;
+		}
+		if (i == digitsStart) {
+			return null;
+		}
+		// a dot followed by a digit is the decimal point, ".." is the range separator
+		if (i + 1 < expression.length() && expression.charAt(i) == '.' && Character.isDigit(expression.charAt(i + 1))) {
+			i++;
+			while (i < expression.length() && Character.isDigit(expression.charAt(i))) {
+				i++;
+			}
+		}
+		if (isTokenEnd(i) == false) {
+			return null;
+		}
+		pos = i;
+		return new BigDecimal(expression.substring(start, i));
+	}
+
+	private boolean isTokenEnd(int index) {
+		if (index >= expression.length()) {
+			return true;
+		}
+		char c = expression.charAt(index);
+		return Character.isWhitespace(c) || c == ',' || c == ')' || c == ']' || c == '[' || c == '.';
+	}
+
+	private boolean consume(char c) {
+		if (pos < expression.length() && expression.charAt(pos) == c) {
+			pos++;
+			return true;
+		}
+		return false;
+	}
+
+	private void skipWhitespace() {
+		while (pos < expression.length() && Character.isWhitespace(expression.charAt(pos))) {
+			pos++;
+		}
+	}
+
+	/**
+	 * converts the value into the number the FEEL engine would compare
+	 * @param value the input value
+	 * @return the number or null if the value is not a number or cannot be converted exactly
+	 */
+	static BigDecimal toBigDecimal(Object value) {
+		if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+			return BigDecimal.valueOf(((Number) value).longValue());
+		} else if (value instanceof BigDecimal) {
+			return (BigDecimal) value;
+		} else if (value instanceof BigInteger) {
+			return new BigDecimal((BigInteger) value);
+		} else if (value instanceof Double) {
+			double d = (Double) value;
+			if (Double.isNaN(d) || Double.isInfinite(d)) {
+				return null;
+			}
+			return BigDecimal.valueOf(d);
+		}
+		return null;
+	}
+
+	static final class AnyTest extends CompiledUnaryTest {
+
+		static final AnyTest INSTANCE = new AnyTest();
+
+		@Override
+		public int test(Object value) {
+			return MATCH;
+		}
+
+	}
+
+	static final class StringEqualsTest extends CompiledUnaryTest {
+
+		final String literal;
+
+		StringEqualsTest(String literal) {
+			this.literal = literal;
+		}
+
+		@Override
+		public int test(Object value) {
+			if (value instanceof String) {
+				return literal.equals(value) ? MATCH : NO_MATCH;
+			}
+			return UNKNOWN;
+		}
+
+	}
+
+	static final class BooleanEqualsTest extends CompiledUnaryTest {
+
+		final Boolean literal;
+
+		BooleanEqualsTest(Boolean literal) {
+			this.literal = literal;
+		}
+
+		@Override
+		public int test(Object value) {
+			if (value instanceof Boolean) {
+				return literal.equals(value) ? MATCH : NO_MATCH;
+			}
+			return UNKNOWN;
+		}
+
+	}
+
+	/**
+	 * Numeric test, used for ranges, comparisons (one open end) and equality (low == high)
+	 */
+	static final class RangeTest extends CompiledUnaryTest {
+
+		final BigDecimal low;
+		final boolean lowInclusive;
+		final BigDecimal high;
+		final boolean highInclusive;
+
+		RangeTest(BigDecimal low, boolean lowInclusive, BigDecimal high, boolean highInclusive) {
+			this.low = low;
+			this.lowInclusive = lowInclusive;
+			this.high = high;
+			this.highInclusive = highInclusive;
+		}
+
+		boolean isEquality() {
+			return low != null && low == high;
+		}
+
+		@Override
+		public int test(Object value) {
+			BigDecimal n = toBigDecimal(value);
+			if (n == null) {
+				return UNKNOWN;
+			}
+			if (low != null) {
+				int c = n.compareTo(low);
+				if (c < 0 || (c == 0 && lowInclusive == false)) {
+					return NO_MATCH;
+				}
+			}
+			if (high != null) {
+				int c = n.compareTo(high);
+				if (c > 0 || (c == 0 && highInclusive == false)) {
+					return NO_MATCH;
+				}
+			}
+			return MATCH;
+		}
+
+	}
+
+	static final class AnyOfTest extends CompiledUnaryTest {
+
+		final CompiledUnaryTest[] tests;
+
+		AnyOfTest(CompiledUnaryTest[] tests) {
+			this.tests = tests;
+		}
+
+		@Override
+		public int test(Object value) {
+			// same order as FEEL: the first match wins, a test FEEL may treat differently stops the compiled evaluation
+			for (CompiledUnaryTest t : tests) {
+				int r = t.test(value);
+				if (r != NO_MATCH) {
+					return r;
+				}
+			}
+			return NO_MATCH;
+		}
+
+	}
+
+	static final class NotTest extends CompiledUnaryTest {
+
+		final CompiledUnaryTest test;
+
+		NotTest(CompiledUnaryTest test) {
+			this.test = test;
+		}
+
+		@Override
+		public int test(Object value) {
+			int r = test.test(value);
+			if (r == MATCH) {
+				return NO_MATCH;
+			} else if (r == NO_MATCH) {
+				return MATCH;
+			}
+			return UNKNOWN;
+		}
+
+	}
+
+}
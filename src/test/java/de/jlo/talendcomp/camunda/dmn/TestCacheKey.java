@@ -0,0 +1,78 @@
+package de.jlo.talendcomp.camunda.dmn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class TestCacheKey {
+
+	@Test
+	public void testEqualKeys() throws Exception {
+		Date varDate = new Date();
+		CacheKey key1 = new CacheKey();
+		key1.set("varStr", "äöü1234567890");
+		key1.set("varLong", 9999999l);
+		key1.set("varDate", varDate);
+		CacheKey key2 = new CacheKey();
+		key2.set("varStr", "äöü1234567890");
+		key2.set("varLong", 9999999l);
+		key2.set("varDate", new Date(varDate.getTime()));
+		assertEquals(key1.hashCode(), key2.hashCode());
+		assertTrue("Keys are not equal", key1.equals(key2));
+	}
+
+	@Test
+	public void testNoCollisionBetweenNameAndValue() throws Exception {
+		CacheKey key1 = new CacheKey();
+		key1.set("a", "1b");
+		CacheKey key2 = new CacheKey();
+		key2.set("a1", "b");
+		assertFalse("Keys must not be equal", key1.equals(key2));
+	}
+
+	@Test
+	public void testReuseAndCopy() throws Exception {
+		Map<CacheKey, String> map = new HashMap<>();
+		CacheKey current = new CacheKey(1);
+		current.set("season", "Winter");
+		current.set("guestCount", 2);
+		map.put(current.copy(), "Roastbeef");
+		current.clear();
+		current.set("season", "Summer");
+		current.set("guestCount", 2);
+		map.put(current.copy(), "Salad");
+		current.clear();
+		current.set("season", "Winter");
+		current.set("guestCount", 2);
+		assertEquals("Roastbeef", map.get(current));
+		// replacing a value must be reflected in the hash code
+		current.set("season", "Summer");
+		assertEquals("Salad", map.get(current));
+		assertEquals(2, current.size());
+		assertNotNull(current.toString());
+	}
+
+	@Test
+	public void testCopyKeepsDate() throws Exception {
+		Date varDate = new Date(1600000000000L);
+		CacheKey key = new CacheKey();
+		key.set("varDate", varDate);
+		CacheKey copy = key.copy();
+		int hash = copy.hashCode();
+		// the row value is changed after the key has been stored
+		varDate.setTime(0);
+		assertEquals(hash, copy.hashCode());
+		assertEquals(new Date(1600000000000L), copy.getValue(0));
+		CacheKey lookup = new CacheKey();
+		lookup.set("varDate", new Date(1600000000000L));
+		assertTrue("Stored key not found", lookup.equals(copy));
+	}
+
+}
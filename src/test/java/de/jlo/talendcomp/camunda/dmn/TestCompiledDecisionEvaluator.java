@@ -0,0 +1,356 @@
+package de.jlo.talendcomp.camunda.dmn;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Set;
+
+import org.camunda.bpm.dmn.engine.DmnDecision;
+import org.camunda.bpm.dmn.engine.DmnEngine;
+import org.camunda.bpm.dmn.engine.impl.DmnDecisionTableImpl;
+import org.camunda.bpm.engine.variable.VariableMap;
+import org.camunda.bpm.engine.variable.Variables;
+import org.camunda.bpm.engine.variable.context.VariableContext;
+import org.camunda.bpm.engine.variable.value.TypedValue;
+import org.junit.Test;
+
+public class TestCompiledDecisionEvaluator {
+
+	private DmnDecision parse(DmnEngine engine, String decisionKey, String resource) throws Exception {
+		InputStream in = TestCompiledDecisionEvaluator.class.getResourceAsStream(resource);
+		try {
+			return engine.parseDecision(decisionKey, in);
+		} finally {
+			in.close();
+		}
+	}
+
+	private void assertSameResult(DmnEngine engine, DmnDecision decision, CompiledDecisionEvaluator evaluator, VariableMap variables) {
+		assertEquals("Variables: " + variables, engine.evaluateDecision(decision, variables).getResultList(), evaluator.evaluate(variables.asVariableContext()).getResultList());
+	}
+
+	@Test
+	public void testCollectSum() throws Exception {
+		DmnEngine engine = DmnEngineRegistry.getEngine(null);
+		DmnDecision decision = parse(engine, "surcharge", "/collect_sum_example.dmn");
+		CompiledDecisionEvaluator evaluator = new CompiledDecisionEvaluator(engine, decision);
+		assertTrue(evaluator.countCompiledConditions() == evaluator.countConditions());
+		assertTrue(evaluator.getCompiledTable((DmnDecisionTableImpl) decision.getDecisionLogic()).countIndexes() > 0);
+		for (String product : new String[] {"Product1", "Product2", "Product4", "Product6", "Product9"}) {
+			for (String type : new String[] {"1", "2", "3", "4"}) {
+				for (String grade : new String[] {"4301", "4016", "4404"}) {
+					for (int width : new int[] {0, 1000, 1250, 2000, 3000}) {
+						VariableMap variables = Variables.createVariables()
+								.putValue("product", product)
+								.putValue("type", type)
+								.putValue("grade", grade)
+								.putValue("width", width);
+						assertSameResult(engine, decision, evaluator, variables);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testIndexMergeKeepsDocumentOrder() throws Exception {
+		assertArrayEquals(new int[] {0, 2, 3, 5, 7}, EqualityIndex.merge(new int[] {2, 5, 7}, new int[] {0, 3, 5}));
+		assertArrayEquals(new int[] {1, 4}, EqualityIndex.merge(new int[] {}, new int[] {1, 4}));
+	}
+
+	@Test
+	public void testRangeIndex() throws Exception {
+		DmnEngine engine = DmnEngineRegistry.getEngine(null);
+		DmnDecision decision = parse(engine, "decision", "/dish-decision.dmn11.dmn");
+		CompiledDecisionEvaluator evaluator = new CompiledDecisionEvaluator(engine, decision);
+		assertEquals(1, evaluator.getCompiledTable((DmnDecisionTableImpl) decision.getDecisionLogic()).countRangeIndexes());
+		for (String season : new String[] {"Fall", "Winter", "Spring", "Summer"}) {
+			for (Object guestCount : new Object[] {-1, 4, 5, 8, 9L, 100}) {
+				VariableMap variables = Variables.createVariables()
+						.putValue("season", season)
+						.putValue("guestCount", guestCount);
+				assertSameResult(engine, decision, evaluator, variables);
+			}
+		}
+	}
+
+	@Test
+	public void testRuleHitStatistics() throws Exception {
+		DmnEngine engine = DmnEngineRegistry.getEngine(null);
+		DmnDecision decision = parse(engine, "decision", "/dish-decision.dmn11.dmn");
+		for (boolean bitsetMatching : new boolean[] {false, true}) {
+			CompiledDecisionEvaluator evaluator = new CompiledDecisionEvaluator(engine, decision, bitsetMatching);
+			evaluator.enableRuleHitStatistics(10);
+			RuleHitStatistics statistics = evaluator.getCompiledTable((DmnDecisionTableImpl) decision.getDecisionLogic()).getRuleHitStatistics();
+			assertTrue(statistics.isAdaptiveOrder());
+			for (int row = 0; row < 100; row++) {
+				// Summer is the hot rule 6
+				String season = row % 10 == 0 ? "Winter" : "Summer";
+				VariableMap variables = Variables.createVariables()
+						.putValue("season", season)
+						.putValue("guestCount", row % 12);
+				assertSameResult(engine, decision, evaluator, variables);
+			}
+			assertEquals(100, statistics.getEvaluations());
+			assertEquals(90, statistics.getHitCounts()[5]);
+			assertEquals(8, statistics.getHitCounts()[1]);
+			// Winter with more than 8 guests
+			assertEquals(2, statistics.getHitCounts()[4]);
+			assertEquals(5, statistics.getOrder()[0]);
+			assertEquals(1, statistics.getOrder()[1]);
+			assertTrue(evaluator.createRuleHitReport().contains("never matched"));
+		}
+		// COLLECT depends on the rule order
+		DmnDecision collect = parse(engine, "surcharge", "/collect_sum_example.dmn");
+		CompiledDecisionEvaluator evaluator = new CompiledDecisionEvaluator(engine, collect);
+		evaluator.enableRuleHitStatistics(10);
+		assertFalse(evaluator.getCompiledTable((DmnDecisionTableImpl) collect.getDecisionLogic()).getRuleHitStatistics().isAdaptiveOrder());
+	}
+
+	@Test
+	public void testIntervalIndexLookup() throws Exception {
+		Random random = new Random(4711);
+		int count = 500;
+		double[] lows = new double[count];
+		double[] highs = new double[count];
+		int[] rules = new int[count];
+		for (int i = 0; i < count; i++) {
+			// some rules have two intervals
+			rules[i] = i - random.nextInt(2);
+			lows[i] = random.nextInt(10) == 0 ? Double.NEGATIVE_INFINITY : random.nextInt(1000);
+			if (random.nextInt(10) == 0) {
+				highs[i] = Double.POSITIVE_INFINITY;
+			} else if (Double.isInfinite(lows[i])) {
+				highs[i] = random.nextInt(1000);
+			} else {
+				highs[i] = lows[i] + random.nextInt(100);
+			}
+		}
+		Arrays.sort(rules);
+		int[] wildcardRules = new int[] {3, 600};
+		IntervalIndex index = new IntervalIndex(0, lows, highs, rules, wildcardRules);
+		for (int x = -10; x < 1200; x++) {
+			int[] expected = wildcardRules;
+			for (int i = 0; i < count; i++) {
+				if (lows[i] <= x && x <= highs[i]) {
+					expected = EqualityIndex.merge(new int[] {rules[i]}, expected);
+				}
+			}
+			assertArrayEquals("x=" + x, expected, index.lookup(x));
+		}
+		assertArrayEquals(new int[] {2, 5}, CompiledDecisionTable.intersect(new int[] {1, 2, 5, 7}, new int[] {2, 3, 5}));
+	}
+
+	@Test
+	public void testCollectSumAggregation() throws Exception {
+		DmnEngine engine = DmnEngineRegistry.getEngine(null);
+		DmnDecision decision = parse(engine, "surcharges", "/surcharge_example.dmn");
+		CompiledDecisionEvaluator evaluator = new CompiledDecisionEvaluator(engine, decision);
+		for (String material : new String[] {"Stahl", "Kupfer", "Plaste", "Gold"}) {
+			for (String finish : new String[] {"poliert", "lackiert", null}) {
+				for (String foiling : new String[] {"Papierlage", "Kunststofffolie"}) {
+					for (int width : new int[] {1000, 2000, 6000}) {
+						VariableMap variables = Variables.createVariables()
+								.putValue("material", material)
+								.putValue("finish", finish)
+								.putValue("foiling", foiling)
+								.putValue("width", width)
+								.putValue("length", 10);
+						assertSameResult(engine, decision, evaluator, variables);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testCollectAggregationWithPrimitives() throws Exception {
+		DmnEngine engine = DmnEngineRegistry.getEngine(null);
+		String dmn = new String(Files.readAllBytes(Paths.get(TestCompiledDecisionEvaluator.class.getResource("/surcharge_example.dmn").toURI())), "UTF-8");
+		for (String aggregation : new String[] {"SUM", "MIN", "MAX", "COUNT"}) {
+			for (String typeRef : new String[] {"typeRef=\"integer\"", "typeRef=\"long\"", "typeRef=\"double\"", ""}) {
+				String changed = dmn.replace("aggregation=\"SUM\"", "aggregation=\"" + aggregation + "\"")
+						.replace("name=\"surcharge\" typeRef=\"integer\"", "name=\"surcharge\" " + typeRef);
+				DmnDecision decision = engine.parseDecision("surcharges", new ByteArrayInputStream(changed.getBytes("UTF-8")));
+				CompiledDecisionEvaluator evaluator = new CompiledDecisionEvaluator(engine, decision);
+				assertNotNull(evaluator.getCompiledTable((DmnDecisionTableImpl) decision.getDecisionLogic()).getCollectAggregation());
+				for (String material : new String[] {"Stahl", "Kupfer", "Gold"}) {
+					for (String foiling : new String[] {"Papierlage", "Kunststofffolie"}) {
+						for (int width : new int[] {1000, 2000, 6000}) {
+							VariableMap variables = Variables.createVariables()
+									.putValue("material", material)
+									.putValue("finish", "poliert")
+									.putValue("foiling", foiling)
+									.putValue("width", width)
+									.putValue("length", 10);
+							assertSameResult(engine, decision, evaluator, variables);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testCollectCountChecksOutputEntries() throws Exception {
+		DmnEngine engine = DmnEngineRegistry.getEngine(null);
+		String dmn = new String(Files.readAllBytes(Paths.get(TestCompiledDecisionEvaluator.class.getResource("/surcharge_example.dmn").toURI())), "UTF-8")
+				.replace("aggregation=\"SUM\"", "aggregation=\"COUNT\"");
+		// an expression and a literal which cannot be converted into the output type must be left to the Camunda handler
+		for (String outputEntry : new String[] {"<text>length * 2</text>", "<text>\"abc\"</text>"}) {
+			String changed = dmn.replace("<text>20</text>", outputEntry);
+			DmnDecision decision = engine.parseDecision("surcharges", new ByteArrayInputStream(changed.getBytes("UTF-8")));
+			CompiledDecisionEvaluator evaluator = new CompiledDecisionEvaluator(engine, decision);
+			assertNull(evaluator.getCompiledTable((DmnDecisionTableImpl) decision.getDecisionLogic()).getCollectAggregation());
+			for (String material : new String[] {"Stahl", "Kupfer", "Gold"}) {
+				VariableMap variables = Variables.createVariables()
+						.putValue("material", material)
+						.putValue("finish", "poliert")
+						.putValue("foiling", "Papierlage")
+						.putValue("width", 2000)
+						.putValue("length", 10);
+				String expected = null;
+				try {
+					expected = String.valueOf(engine.evaluateDecision(decision, variables).getResultList());
+				} catch (RuntimeException e) {
+					expected = e.getClass().getName();
+				}
+				String actual = null;
+				try {
+					actual = String.valueOf(evaluator.evaluate(variables.asVariableContext()).getResultList());
+				} catch (RuntimeException e) {
+					actual = e.getClass().getName();
+				}
+				assertEquals("Variables: " + variables, expected, actual);
+			}
+		}
+	}
+
+	@Test
+	public void testBitsetMatching() throws Exception {
+		DmnEngine engine = DmnEngineRegistry.getEngine(null);
+		DmnDecision decision = parse(engine, "surcharges", "/surcharge_example.dmn");
+		CompiledDecisionEvaluator evaluator = new CompiledDecisionEvaluator(engine, decision, true);
+		for (int repeat = 0; repeat < 2; repeat++) {
+			for (String material : new String[] {"Stahl", "Kupfer", "Plaste", "Gold"}) {
+				for (String finish : new String[] {"poliert", "lackiert", null}) {
+					for (int width : new int[] {1000, 2000, 6000}) {
+						VariableMap variables = Variables.createVariables()
+								.putValue("material", material)
+								.putValue("finish", finish)
+								.putValue("foiling", "Papierlage")
+								.putValue("width", width)
+								.putValue("length", 10);
+						assertSameResult(engine, decision, evaluator, variables);
+					}
+				}
+			}
+		}
+		BitsetRuleMatcher matcher = evaluator.getCompiledTable((DmnDecisionTableImpl) decision.getDecisionLogic()).getBitsetMatcher();
+		// the values are memoized per column, not per input record
+		assertEquals(4, matcher.countMemoizedValues(0));
+	}
+
+	/**
+	 * counts the calls of keySet(), the Camunda evaluation copies the variables into a VariableMap with it
+	 */
+	private static final class CountingVariableContext implements VariableContext {
+
+		private final VariableContext variables;
+		private int countKeySet = 0;
+
+		private CountingVariableContext(VariableMap variables) {
+			this.variables = variables.asVariableContext();
+		}
+
+		@Override
+		public TypedValue resolve(String variableName) {
+			return variables.resolve(variableName);
+		}
+
+		@Override
+		public boolean containsVariable(String variableName) {
+			return variables.containsVariable(variableName);
+		}
+
+		@Override
+		public Set<String> keySet() {
+			countKeySet++;
+			return variables.keySet();
+		}
+
+	}
+
+	@Test
+	public void testEvaluateWithoutVariableMap() throws Exception {
+		DmnEngine engine = DmnEngineRegistry.getEngine(null);
+		DmnDecision dish = parse(engine, "decision", "/dish-decision.dmn11.dmn");
+		DmnDecision beverages = parse(engine, "beverages", "/drg_dishes.dmn");
+		for (DmnDecision decision : new DmnDecision[] {dish, beverages}) {
+			CompiledDecisionEvaluator evaluator = new CompiledDecisionEvaluator(engine, decision);
+			for (String season : new String[] {"Fall", "Winter", "Spring", "Summer"}) {
+				VariableMap variables = Variables.createVariables()
+						.putValue("season", season)
+						.putValue("guestCount", 6)
+						.putValue("guestsWithChildren", true);
+				CountingVariableContext context = new CountingVariableContext(variables);
+				assertEquals(engine.evaluateDecision(decision, variables).getResultList(), evaluator.evaluate(context).getResultList());
+				assertEquals("Variables copied for: " + decision.getKey(), 0, context.countKeySet);
+			}
+		}
+	}
+
+	@Test
+	public void testRequiredDecisions() throws Exception {
+		DmnEngine engine = DmnEngineRegistry.getEngine(null);
+		DmnDecision decision = parse(engine, "beverages", "/drg_dishes.dmn");
+		CompiledDecisionEvaluator evaluator = new CompiledDecisionEvaluator(engine, decision);
+		for (String season : new String[] {"Fall", "Winter", "Spring", "Summer"}) {
+			for (int guestCount : new int[] {2, 6, 10}) {
+				for (boolean children : new boolean[] {true, false}) {
+					VariableMap variables = Variables.createVariables()
+							.putValue("season", season)
+							.putValue("guestCount", guestCount)
+							.putValue("guestsWithChildren", children);
+					assertSameResult(engine, decision, evaluator, variables);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testRequiredDecisionMemo() throws Exception {
+		DmnEngine engine = DmnEngineRegistry.getEngine(null);
+		DmnDecision decision = parse(engine, "beverages", "/drg_dishes.dmn");
+		CompiledDecisionEvaluator evaluator = new CompiledDecisionEvaluator(engine, decision, false, 100);
+		assertEquals(1, evaluator.getRequiredDecisionMemos().size());
+		for (int repeat = 0; repeat < 2; repeat++) {
+			for (String season : new String[] {"Fall", "Winter", "Spring", "Summer"}) {
+				for (int guestCount : new int[] {2, 6, 10}) {
+					for (boolean children : new boolean[] {true, false}) {
+						VariableMap variables = Variables.createVariables()
+								.putValue("season", season)
+								.putValue("guestCount", guestCount)
+								.putValue("guestsWithChildren", children);
+						assertSameResult(engine, decision, evaluator, variables);
+					}
+				}
+			}
+		}
+		RequiredDecisionMemo memo = evaluator.getRequiredDecisionMemos().iterator().next();
+		// the dish decision does not use guestsWithChildren
+		assertEquals(12, memo.getMisses());
+		assertEquals(36, memo.getHits());
+	}
+
+}
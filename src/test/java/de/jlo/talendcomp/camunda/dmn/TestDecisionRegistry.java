@@ -0,0 +1,90 @@
+package de.jlo.talendcomp.camunda.dmn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.camunda.bpm.dmn.engine.DmnDecision;
+import org.camunda.bpm.dmn.engine.impl.DmnDecisionImpl;
+import org.junit.Test;
+
+public class TestDecisionRegistry {
+
+	@Test
+	public void testSingleFlight() throws Exception {
+		final String key = "test:single-flight";
+		DecisionRegistry.remove(key);
+		final AtomicInteger countLoads = new AtomicInteger();
+		final Callable<DmnDecision> loader = new Callable<DmnDecision>() {
+
+			@Override
+			public DmnDecision call() throws Exception {
+				countLoads.incrementAndGet();
+				Thread.sleep(200);
+				DmnDecisionImpl d = new DmnDecisionImpl();
+				d.setKey("decision");
+				return d;
+			}
+
+		};
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<DmnDecision>> futures = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			futures.add(executor.submit(new Callable<DmnDecision>() {
+
+				@Override
+				public DmnDecision call() throws Exception {
+					return DecisionRegistry.getDecision(key, loader);
+				}
+
+			}));
+		}
+		DmnDecision first = futures.get(0).get();
+		for (Future<DmnDecision> f : futures) {
+			assertSame(first, f.get());
+		}
+		executor.shutdown();
+		assertEquals(1, countLoads.get());
+		DecisionRegistry.remove(key);
+	}
+
+	@Test
+	public void testFailedLoadIsNotRegistered() throws Exception {
+		String key = "test:failure";
+		try {
+			DecisionRegistry.getDecision(key, new Callable<DmnDecision>() {
+
+				@Override
+				public DmnDecision call() throws Exception {
+					throw new Exception("parse failed");
+				}
+
+			});
+			fail("Exception expected");
+		} catch (Exception e) {
+			assertEquals("parse failed", e.getMessage());
+		}
+		assertFalse(DecisionRegistry.contains(key));
+		DecisionRegistry.getDecision(key, new Callable<DmnDecision>() {
+
+			@Override
+			public DmnDecision call() throws Exception {
+				return new DmnDecisionImpl();
+			}
+
+		});
+		assertTrue(DecisionRegistry.contains(key));
+		DecisionRegistry.remove(key);
+	}
+
+}
@@ -0,0 +1,54 @@
+package de.jlo.talendcomp.camunda.dmn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.camunda.bpm.dmn.engine.DmnEngine;
+import org.camunda.bpm.dmn.engine.impl.DefaultDmnEngineConfiguration;
+import org.camunda.bpm.dmn.engine.impl.DmnDecisionImpl;
+import org.junit.Test;
+
+public class TestDmnEngineRegistry {
+
+	@Test
+	public void testSharedDefaultEngine() throws Exception {
+		DmnRunner runner1 = new DmnRunner();
+		DmnRunner runner2 = new DmnRunner(null);
+		assertEquals(DmnEngineRegistry.DEFAULT_ENGINE_NAME, runner2.getEngineName());
+		assertSame(DmnEngineRegistry.getEngine(null), DmnEngineRegistry.getEngine(runner1.getEngineName()));
+	}
+
+	@Test
+	public void testCustomConfiguration() throws Exception {
+		DmnEngineRegistry.registerConfiguration("juel", DmnEngineRegistry.createConfiguration("juel", null));
+		DmnEngine engine = DmnEngineRegistry.getEngine("juel");
+		assertSame(engine, DmnEngineRegistry.getEngine("juel"));
+		assertNotSame(engine, DmnEngineRegistry.getEngine(null));
+		assertEquals("juel", ((DefaultDmnEngineConfiguration) engine.getConfiguration()).getDefaultInputEntryExpressionLanguage());
+	}
+
+	@Test
+	public void testReRegisterRemovesDecisions() throws Exception {
+		DecisionRegistry.put("reregistered|resource:/dish-decision.dmn11.dmn#decision", new DmnDecisionImpl());
+		DecisionRegistry.put("reregistered2|resource:/dish-decision.dmn11.dmn#decision", new DmnDecisionImpl());
+		DmnEngineRegistry.registerConfiguration("reregistered", DmnEngineRegistry.createConfiguration("juel", null));
+		assertFalse(DecisionRegistry.contains("reregistered|resource:/dish-decision.dmn11.dmn#decision"));
+		assertTrue(DecisionRegistry.contains("reregistered2|resource:/dish-decision.dmn11.dmn#decision"));
+		DecisionRegistry.remove("reregistered2|resource:/dish-decision.dmn11.dmn#decision");
+	}
+
+	@Test
+	public void testUnknownEngine() throws Exception {
+		try {
+			new DmnRunner("unknown");
+			fail("Exception expected");
+		} catch (Exception e) {
+			assertTrue(e.getMessage().contains("unknown"));
+		}
+	}
+
+}
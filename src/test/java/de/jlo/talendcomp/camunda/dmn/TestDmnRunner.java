@@ -1,9 +1,23 @@
 package de.jlo.talendcomp.camunda.dmn;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.junit.Test;
 
@@ -124,6 +138,78 @@ public class TestDmnRunner {
 		assertEquals(1, count);
 	}
 	
+	@Test
+	public void testBatch() throws Exception {
+		DmnRunner runner = new DmnRunner();
+		runner.loadDmnFromResource("decision", "/dish-decision.dmn11.dmn");
+		runner.setCacheResults(true);
+		Object[][] rows = new Object[][] {
+			{"Winter", 2},
+			{"Summer", 4},
+			{"Winter", 2},
+			{"Spring", 6}
+		};
+		BatchResult result = runner.evaluateBatch(new String[] {"season", "guestCount"}, rows);
+		assertEquals(4, result.size());
+		assertEquals(3, result.countDistinctRows());
+		assertEquals(3, runner.getCacheMisses());
+		String[] expected = new String[] {"Roastbeef", "Light Salad and a nice Steak", "Roastbeef", "Steak"};
+		for (int r = 0; r < result.size(); r++) {
+			runner.useBatchResult(result, r);
+			assertTrue(runner.next());
+			assertEquals(expected[r], runner.getOutputValue("desiredDish", true));
+		}
+	}
+
+	@Test
+	public void testBatchSharesCacheWithRows() throws Exception {
+		DmnRunner runner = new DmnRunner();
+		runner.loadDmnFromResource("decision", "/dish-decision.dmn11.dmn");
+		runner.setCacheResults(true);
+		// the column comment is not used by the decision and must not split the cache entries
+		Object[][] rows = new Object[][] {
+			{"Winter", 2, "a"},
+			{"Winter", 2, "b"}
+		};
+		BatchResult result = runner.evaluateBatch(new String[] {"season", "guestCount", "comment"}, rows);
+		assertEquals(1, result.countDistinctRows());
+		assertEquals(1, runner.getCacheMisses());
+		runner.clearVariables();
+		runner.addInputValue("season", "Winter");
+		runner.addInputValue("guestCount", 2);
+		runner.evaluate();
+		assertEquals(1, runner.getCacheHits());
+		assertEquals(1, runner.getCacheMisses());
+		assertTrue(runner.next());
+		assertEquals("Roastbeef", runner.getOutputValue("desiredDish", true));
+	}
+
+	@Test
+	public void testParallel() throws Exception {
+		DmnRunner runner = new DmnRunner();
+		runner.loadDmnFromResource("decision", "/dish-decision.dmn11.dmn");
+		String[] seasons = new String[] {"Winter", "Summer", "Spring"};
+		String[] expected = new String[] {"Roastbeef", "Light Salad and a nice Steak", "Steak"};
+		ParallelEvaluator evaluator = runner.createParallelEvaluator(new String[] {"season", "guestCount"}, 4, 16);
+		try {
+			int taken = 0;
+			for (int r = 0; r < 1000; r++) {
+				evaluator.submit(new Object[] {seasons[r % 3], 6});
+				while (evaluator.isFull() || evaluator.isNextResultReady()) {
+					assertEquals(expected[taken % 3], evaluator.take().getSingleResult().getEntry("desiredDish"));
+					taken++;
+				}
+			}
+			while (evaluator.hasPendingResults()) {
+				assertEquals(expected[taken % 3], evaluator.take().getSingleResult().getEntry("desiredDish"));
+				taken++;
+			}
+			assertEquals(1000, taken);
+		} finally {
+			evaluator.close();
+		}
+	}
+
 	@Test
 	public void testGenerateCacheKey() throws Exception {
 		String varStr = "äöü1234567890";
@@ -144,4 +230,384 @@ public class TestDmnRunner {
 		assertEquals("Key generation is not equal", key1, key2);
 	}
 
+	@Test
+	public void testReloadChangedFile() throws Exception {
+		File file = copyResourceToTempFile("/dish-decision.dmn11.dmn", null, null);
+		DmnRunner runner = new DmnRunner();
+		runner.setCacheResults(true);
+		runner.setWatchDmnFile(true);
+		runner.loadDmnFromFile("decision", file.getAbsolutePath());
+		try {
+			assertEquals("Roastbeef", evaluateDish(runner, "Winter", 2));
+			writeResource(file, "/dish-decision.dmn11.dmn", "\"Roastbeef\"", "\"Pot Roast\"");
+			String dish = null;
+			for (int i = 0; i < 100; i++) {
+				Thread.sleep(100);
+				dish = evaluateDish(runner, "Winter", 2);
+				if ("Pot Roast".equals(dish)) {
+					break;
+				}
+			}
+			assertEquals("Pot Roast", dish);
+			assertEquals(1, runner.getReloadCount());
+			assertEquals(0, runner.getReloadErrorCount());
+		} finally {
+			runner.close();
+		}
+	}
+
+	@Test
+	public void testDecisionSnapshot() throws Exception {
+		String snapshotDir = Files.createTempDirectory("dmn-snapshots").toFile().getAbsolutePath();
+		DmnRunner parsed = new DmnRunner();
+		parsed.setSnapshotDir(snapshotDir);
+		parsed.loadDmnFromResource("beverages", "/drg_dishes.dmn");
+		assertFalse(parsed.isLoadedFromSnapshot());
+		DmnRunner fromSnapshot = new DmnRunner();
+		fromSnapshot.setSnapshotDir(snapshotDir);
+		fromSnapshot.loadDmnFromResource("beverages", "/drg_dishes.dmn");
+		assertTrue(fromSnapshot.isLoadedFromSnapshot());
+		for (String season : new String[] {"Fall", "Winter", "Spring", "Summer"}) {
+			for (int guestCount : new int[] {2, 6, 10}) {
+				for (boolean children : new boolean[] {true, false}) {
+					assertEquals(evaluateBeverages(parsed, season, guestCount, children), evaluateBeverages(fromSnapshot, season, guestCount, children));
+				}
+			}
+		}
+		// a changed DMN file must not use the former snapshot
+		File file = copyResourceToTempFile("/dish-decision.dmn11.dmn", null, null);
+		DmnRunner runner = new DmnRunner();
+		runner.setSnapshotDir(snapshotDir);
+		runner.loadDmnFromFile("decision", file.getAbsolutePath());
+		assertFalse(runner.isLoadedFromSnapshot());
+		writeResource(file, "/dish-decision.dmn11.dmn", "\"Roastbeef\"", "\"Pot Roast\"");
+		runner = new DmnRunner();
+		runner.setSnapshotDir(snapshotDir);
+		runner.loadDmnFromFile("decision", file.getAbsolutePath());
+		assertFalse(runner.isLoadedFromSnapshot());
+		assertEquals("Pot Roast", evaluateDish(runner, "Winter", 2));
+		runner = new DmnRunner();
+		runner.setSnapshotDir(snapshotDir);
+		runner.loadDmnFromFile("decision", file.getAbsolutePath());
+		assertTrue(runner.isLoadedFromSnapshot());
+		assertEquals("Pot Roast", evaluateDish(runner, "Winter", 2));
+		// a modified snapshot body must not be used
+		File snapshotFile = DecisionSnapshot.getSnapshotFile(new File(snapshotDir), runner.getEngineName() + "|file:" + file.getAbsolutePath() + "#decision");
+		byte[] snapshot = Files.readAllBytes(snapshotFile.toPath());
+		String body = new String(snapshot, StandardCharsets.ISO_8859_1);
+		int pos = body.indexOf("Pot Roast");
+		assertTrue(pos > 0);
+		snapshot[pos] = 'H';
+		Files.write(snapshotFile.toPath(), snapshot);
+		runner = new DmnRunner();
+		runner.setSnapshotDir(snapshotDir);
+		runner.loadDmnFromFile("decision", file.getAbsolutePath());
+		assertFalse(runner.isLoadedFromSnapshot());
+		assertEquals("Pot Roast", evaluateDish(runner, "Winter", 2));
+	}
+
+	@Test
+	public void testPersistentResultCache() throws Exception {
+		String cacheDir = Files.createTempDirectory("dmn-results").toFile().getAbsolutePath();
+		File file = copyResourceToTempFile("/dish-decision.dmn11.dmn", null, null);
+		String[] seasons = new String[] {"Fall", "Winter", "Spring", "Summer"};
+		DmnRunner first = createPersistentCacheRunner(cacheDir, file);
+		List<String> expected = new ArrayList<>();
+		for (String season : seasons) {
+			expected.add(evaluateDish(first, season, 2));
+		}
+		// only one result in memory, the others have been written to disk
+		assertEquals(1, first.getCacheSize());
+		assertEquals(Arrays.asList("Spareribs", "Roastbeef", "Dry Aged Gourmet Steak", "Light Salad and a nice Steak"), expected);
+		first.close();
+		DmnRunner second = createPersistentCacheRunner(cacheDir, file);
+		for (int i = 0; i < seasons.length; i++) {
+			assertEquals(expected.get(i), evaluateDish(second, seasons[i], 2));
+		}
+		assertEquals(4, second.getCachePersistentHits());
+		assertEquals(4, second.getCacheHits());
+		assertEquals(0, second.getCacheMisses());
+		second.close();
+		// a changed DMN must not use the former results
+		writeResource(file, "/dish-decision.dmn11.dmn", "\"Roastbeef\"", "\"Pot Roast\"");
+		DmnRunner changed = createPersistentCacheRunner(cacheDir, file);
+		assertEquals("Pot Roast", evaluateDish(changed, "Winter", 2));
+		assertEquals(0, changed.getCachePersistentHits());
+		changed.close();
+	}
+
+	private DmnRunner createPersistentCacheRunner(String cacheDir, File file) throws Exception {
+		DmnRunner runner = new DmnRunner();
+		runner.setCachePersistentDir(cacheDir);
+		runner.loadDmnFromFile("decision", file.getAbsolutePath());
+		runner.setCacheResults(true);
+		runner.setCacheMaxEntries(1);
+		return runner;
+	}
+
+	@Test
+	public void testRuleHitStatisticsKeepHitPolicyCheck() throws Exception {
+		// Winter with up to 8 guests matches rule 1 and 2, a violation of the hit policy UNIQUE
+		File file = copyResourceToTempFile("/dish-decision.dmn11.dmn", "<text>\"Fall\"</text>", "<text>\"Fall\", \"Winter\"</text>");
+		for (String mode : new String[] {DmnRunner.EVALUATION_MODE_COMPILED, DmnRunner.EVALUATION_MODE_BITSET}) {
+			DmnRunner runner = new DmnRunner();
+			runner.setEvaluationMode(mode);
+			runner.setRuleHitStatistics(true);
+			runner.loadDmnFromFile("decision", file.getAbsolutePath());
+			try {
+				evaluateDish(runner, "Winter", 2);
+				fail("Violation of the hit policy UNIQUE not detected in mode: " + mode);
+			} catch (Exception e) {
+				// expected
+			}
+			assertEquals("Spareribs", evaluateDish(runner, "Fall", 2));
+			assertTrue(runner.getRuleHitReport(), runner.getRuleHitReport().contains("rule 1 (row-950612891-1): 2 hits"));
+			assertTrue(runner.getRuleHitReport(), runner.getRuleHitReport().contains("rule 2 (row-950612891-2): 1 hits"));
+		}
+	}
+
+	@Test
+	public void testMultipleDecisions() throws Exception {
+		DmnRunner beverages = new DmnRunner();
+		beverages.loadDmnFromResource("beverages", "/drg_dishes.dmn");
+		DmnRunner dish = new DmnRunner();
+		dish.loadDmnFromResource("dish", "/drg_dishes.dmn");
+		for (String mode : new String[] {DmnRunner.EVALUATION_MODE_CAMUNDA, DmnRunner.EVALUATION_MODE_COMPILED}) {
+			DmnRunner runner = new DmnRunner();
+			runner.setEvaluationMode(mode);
+			runner.setCacheResults(true);
+			runner.loadDmnFromResource("beverages, dish", "/drg_dishes.dmn");
+			assertEquals(2, runner.getDecisionKeys().size());
+			runner.addExpectedOutputVariable("beverages");
+			runner.addExpectedOutputVariable("desiredDish", "dish");
+			runner.validateOutputVariables();
+			for (int pass = 0; pass < 2; pass++) {
+				for (String season : new String[] {"Fall", "Winter", "Spring", "Summer"}) {
+					for (int guestCount : new int[] {2, 6, 10}) {
+						runner.clearVariables();
+						runner.addInputValue("season", season);
+						runner.addInputValue("guestCount", guestCount);
+						runner.addInputValue("guestsWithChildren", true);
+						runner.evaluate();
+						List<Object> listBeverages = new ArrayList<>();
+						String expectedDish = evaluateDish(dish, season, guestCount);
+						while (runner.next()) {
+							listBeverages.add(runner.getOutputValue("beverages", true));
+							assertEquals(expectedDish, runner.getOutputValue("desiredDish", true));
+						}
+						assertEquals(evaluateBeverages(beverages, season, guestCount, true), listBeverages);
+					}
+				}
+			}
+			assertEquals(12, runner.getCacheMisses());
+		}
+		// only the first decision can deliver multiple records
+		DmnRunner runner = new DmnRunner();
+		runner.loadDmnFromResource("dish,beverages", "/drg_dishes.dmn");
+		runner.addExpectedOutputVariable("desiredDish");
+		runner.addExpectedOutputVariable("beverages", "beverages");
+		runner.addExpectedOutputVariable("unknown", "unknownDecision");
+		try {
+			runner.validateOutputVariables();
+			assertTrue("unknown decision not detected", false);
+		} catch (Exception e) {
+			assertTrue(e.getMessage().contains("unknownDecision"));
+		}
+		runner.clearVariables();
+		runner.addInputValue("season", "Winter");
+		runner.addInputValue("guestCount", 4);
+		runner.addInputValue("guestsWithChildren", true);
+		runner.evaluate();
+		assertTrue(runner.next());
+		assertEquals("Roastbeef", runner.getOutputValue("desiredDish", true));
+		try {
+			runner.getOutputValue("beverages", true);
+			assertTrue("multiple records of the second decision not detected", false);
+		} catch (Exception e) {
+			assertTrue(e.getMessage().contains("result records"));
+		}
+	}
+
+	@Test
+	public void testInputBinding() throws Exception {
+		DmnRunner runner = new DmnRunner();
+		runner.setCacheResults(true);
+		runner.loadDmnFromResource("decision", "/dish-decision.dmn11.dmn");
+		int season = runner.bindInputVariable("season");
+		int guestCount = runner.bindInputVariable("guestCount");
+		// not used by the decision, must not prevent cache hits
+		int comment = runner.bindInputVariable("comment");
+		assertEquals(season, runner.bindInputVariable("season"));
+		for (int i = 0; i < 5; i++) {
+			runner.clearVariables();
+			runner.setInputValue(season, "Winter");
+			runner.setInputValue(guestCount, 2);
+			runner.setInputValue(comment, "row " + i);
+			runner.evaluate();
+			assertTrue(runner.next());
+			assertEquals("Roastbeef", runner.getOutputValue("desiredDish", true));
+			assertEquals("seasonWinterguestCount2", runner.getValueKeyForCurrentVariables());
+		}
+		assertEquals(1, runner.getCacheMisses());
+		assertEquals(4, runner.getCacheHits());
+		// the values of the former row are not visible after clear
+		runner.clearVariables();
+		runner.setInputValue(season, "Spring");
+		assertEquals("seasonSpring", runner.getValueKeyForCurrentVariables());
+	}
+
+	@Test
+	public void testOutputPlan() throws Exception {
+		DmnRunner runner = new DmnRunner();
+		runner.setCacheResults(true);
+		runner.loadDmnFromResource("surcharge", "/collect_sum_example.dmn");
+		runner.addExpectedOutputVariable("surcharge");
+		runner.validateOutputVariables();
+		int asLong = runner.bindOutputColumn("surcharge", "Long", false, null);
+		int asString = runner.bindOutputColumn("surcharge", "String", true, null);
+		int[] slots = new int[] {runner.bindInputVariable("product"), runner.bindInputVariable("type"), runner.bindInputVariable("grade"), runner.bindInputVariable("width")};
+		for (int i = 0; i < 3; i++) {
+			runner.clearVariables();
+			runner.setInputValue(slots[0], "Product1");
+			runner.setInputValue(slots[1], "1");
+			runner.setInputValue(slots[2], "4307");
+			runner.setInputValue(slots[3], 2000);
+			runner.evaluate();
+			assertTrue(runner.next());
+			assertEquals(Long.valueOf(10), runner.getOutputValueAsLong(asLong));
+			assertEquals(10L, runner.getOutputLong(asLong));
+			assertEquals("10", runner.getOutputValueAsString(asString));
+			assertTrue(runner.next());
+			assertEquals(250L, runner.getOutputLong(asLong));
+			assertFalse(runner.next());
+		}
+		assertEquals(2, runner.getCacheHits());
+		try {
+			runner.bindOutputColumn("surcharge", "Character", true, null);
+			fail("Unsupported type not detected");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testStreamCollectResults() throws Exception {
+		String[][] inputs = new String[][] {{"Product1", "2000"}, {"Product1", "100"}, {"Product1", "5000"}, {"Unknown", "2000"}};
+		for (String mode : new String[] {DmnRunner.EVALUATION_MODE_CAMUNDA, DmnRunner.EVALUATION_MODE_COMPILED, DmnRunner.EVALUATION_MODE_BITSET}) {
+			DmnRunner expected = new DmnRunner();
+			expected.setEvaluationMode(mode);
+			expected.loadDmnFromResource("surcharge", "/collect_sum_example.dmn");
+			DmnRunner streamed = new DmnRunner();
+			streamed.setEvaluationMode(mode);
+			streamed.setStreamCollectResults(true);
+			streamed.setProvideOneRecordIfNoDecsionResult(true);
+			streamed.loadDmnFromResource("surcharge", "/collect_sum_example.dmn");
+			streamed.addExpectedOutputVariable("surcharge");
+			int column = streamed.bindOutputColumn("surcharge", "Integer", true, null);
+			for (String[] input : inputs) {
+				for (DmnRunner runner : new DmnRunner[] {expected, streamed}) {
+					runner.clearVariables();
+					runner.addInputValue("product", input[0]);
+					runner.addInputValue("type", "1");
+					runner.addInputValue("grade", "4307");
+					runner.addInputValue("width", Integer.parseInt(input[1]));
+					runner.evaluate();
+				}
+				assertEquals(expected.countResultRows(), streamed.countResultRows());
+				if (expected.countResultRows() == 0) {
+					assertTrue(streamed.next());
+					assertNull(streamed.getOutputValue(column));
+				}
+				while (expected.next()) {
+					assertTrue(streamed.next());
+					assertEquals(expected.getOutputValue("surcharge", true), streamed.getOutputValue("surcharge", true));
+					assertEquals(expected.getOutputValue("surcharge", true), streamed.getOutputValueAsInteger(column));
+				}
+				assertFalse(streamed.next());
+			}
+		}
+	}
+
+	@Test
+	public void testMetrics() throws Exception {
+		DmnRunner runner = new DmnRunner();
+		runner.setCacheResults(true);
+		runner.loadDmnFromResource("decision", "/dish-decision.dmn11.dmn");
+		runner.enableMetrics("TestDmnRunner.testMetrics");
+		try {
+			ObjectName name = runner.getMetrics().getObjectName();
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			assertTrue(server.isRegistered(name));
+			for (int i = 0; i < 10; i++) {
+				assertEquals("Roastbeef", evaluateDish(runner, "Winter", 2));
+				assertEquals("Steak", evaluateDish(runner, "Spring", 6));
+			}
+			assertEquals(20L, server.getAttribute(name, "RowsEvaluated"));
+			assertEquals(2L, server.getAttribute(name, "CacheMisses"));
+			assertEquals(18L, server.getAttribute(name, "CacheHits"));
+			assertEquals(2L, server.getAttribute(name, "ExecutedDecisionInstances"));
+			assertTrue(runner.getMetrics().getExecutedDecisionElements() > 0);
+			assertTrue(runner.getMetrics().getMaxEvaluationNanos() >= runner.getMetrics().getAverageEvaluationNanos());
+			assertEquals("decision", server.getAttribute(name, "DecisionKeys"));
+			runner.clearVariables();
+			try {
+				runner.evaluate();
+			} catch (Exception e) {
+				// expected, no variables
+			}
+			assertEquals(1L, runner.getMetrics().getErrors());
+			runner.getMetrics().reset();
+			assertEquals(0L, server.getAttribute(name, "CacheHits"));
+			// the name of a registered runner gets a number
+			DmnRunner second = new DmnRunner();
+			second.loadDmnFromResource("decision", "/dish-decision.dmn11.dmn");
+			second.enableMetrics("TestDmnRunner.testMetrics");
+			assertFalse(name.equals(second.getMetrics().getObjectName()));
+			second.close();
+			runner.close();
+			assertFalse(server.isRegistered(name));
+		} finally {
+			runner.close();
+		}
+	}
+
+	private List<Object> evaluateBeverages(DmnRunner runner, String season, int guestCount, boolean children) throws Exception {
+		runner.clearVariables();
+		runner.addInputValue("season", season);
+		runner.addInputValue("guestCount", guestCount);
+		runner.addInputValue("guestsWithChildren", children);
+		runner.evaluate();
+		List<Object> beverages = new ArrayList<>();
+		while (runner.next()) {
+			beverages.add(runner.getOutputValue("beverages", true));
+		}
+		return beverages;
+	}
+
+	private String evaluateDish(DmnRunner runner, String season, int guestCount) throws Exception {
+		runner.clearVariables();
+		runner.addInputValue("season", season);
+		runner.addInputValue("guestCount", guestCount);
+		runner.evaluate();
+		if (runner.next()) {
+			return (String) runner.getOutputValue("desiredDish", true);
+		}
+		return null;
+	}
+
+	private File copyResourceToTempFile(String resource, String replaceFrom, String replaceTo) throws Exception {
+		File file = File.createTempFile("dmn-test", ".dmn");
+		file.deleteOnExit();
+		writeResource(file, resource, replaceFrom, replaceTo);
+		return file;
+	}
+
+	private void writeResource(File file, String resource, String replaceFrom, String replaceTo) throws Exception {
+		String content = new String(Files.readAllBytes(Paths.get(TestDmnRunner.class.getResource(resource).toURI())), StandardCharsets.UTF_8);
+		if (replaceFrom != null) {
+			content = content.replace(replaceFrom, replaceTo);
+		}
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+	}
+
 }
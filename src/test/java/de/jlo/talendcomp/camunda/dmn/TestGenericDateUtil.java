@@ -0,0 +1,152 @@
+/**
+ * Copyright 2021 Jan Lolling jan.lolling@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jlo.talendcomp.camunda.dmn;
+
+import static org.junit.Assert.assertEquals;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestGenericDateUtil {
+
+	private static final String[] DATE_PATTERNS = new String[] {
+		"yyyy-MM-dd", "dd.MM.yyyy", "d.MM.yyyy", "d.M.yy", "dd.MM.yy", "dd.MMM.yyyy", "MM/dd/yyyy", "MM/dd/yy", "M/d/yy",
+		"dd/MM/yyyy", "dd/MM/yy", "dd/MMM/yyyy", "dd. MMMM yyyy", "dd. MMM. yyyy", "dd. MMM yyyy", "MMMM dd'th' yyyy",
+		"MMM dd'th' yyyy", "MMM dd, yyyy", "dd'th' MMMM yyyy", "dd'th' MMM yyyy", "'KW' w/yyyy", "'w/c' w.yyyy",
+		"'CW' w.yyyy", "MMMM yyyy", "dd-MM-yyyy", "dd-MM-yy", "dd-MMM-yyyy", "d-M-yy", "yyyyMMdd", "yyyyMM", "yyyy"
+	};
+	private static final String[] TIME_PATTERNS = new String[] {
+		" mm''ss'\"'", " mm''ss'“'", " mm''ss'”'", " mm'‘'ss'“'", " mm'’'ss'”'", " mm'′'ss'″'",
+		" HH'h'mm'm'ss's'", " HH'h'mm'm'", " mm'm'ss's'", "'T'HH:mm:ss.SSSZ", "'T'HH:mm:ss.SSS", " hh:mm:ss aaa",
+		" HH:mm:ss.SSS", " HH:mm:ss", " mm:ss", " HHmmss", " mmss"
+	};
+
+	/**
+	 * the former implementation: tries all patterns and uses the exceptions of SimpleDateFormat
+	 */
+	private static Date parseWithAllPatterns(String text, Locale locale, String... userPattern) throws ParseException {
+		List<String> datePatternList = new ArrayList<String>(Arrays.asList(DATE_PATTERNS));
+		if (userPattern != null) {
+			for (int i = userPattern.length - 1; i >= 0; i--) {
+				datePatternList.remove(userPattern[i]);
+				datePatternList.add(0, userPattern[i]);
+			}
+		}
+		if (locale == null) {
+			locale = Locale.ENGLISH;
+		}
+		SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd", locale);
+		for (String pattern : datePatternList) {
+			if (pattern != null) {
+				sdf.applyPattern(pattern.trim());
+				try {
+					Date dateValue = sdf.parse(text);
+					if (text.length() - pattern.length() >= 6) {
+						for (String timepattern : TIME_PATTERNS) {
+							sdf.applyPattern(pattern + timepattern);
+							try {
+								dateValue = sdf.parse(text);
+								break;
+							} catch (ParseException e1) {
+								// try the next
+							}
+						}
+					}
+					return dateValue;
+				} catch (ParseException e) {
+					continue;
+				}
+			}
+		}
+		throw new ParseException("The value: " + text + " could not be parsed to a Date.", 0);
+	}
+
+	private static String expected(String text, Locale locale, String... userPattern) {
+		try {
+			return String.valueOf(parseWithAllPatterns(text, locale, userPattern).getTime());
+		} catch (ParseException e) {
+			return e.getMessage();
+		}
+	}
+
+	private static String actual(String text, Locale locale, String... userPattern) {
+		try {
+			return String.valueOf(GenericDateUtil.parseDate(text, locale, userPattern).getTime());
+		} catch (ParseException e) {
+			return e.getMessage();
+		}
+	}
+
+	private static String randomDigits(Random random, String template) {
+		StringBuilder sb = new StringBuilder(template.length());
+		for (int i = 0; i < template.length(); i++) {
+			char c = template.charAt(i);
+			sb.append(c == '9' ? (char) ('0' + random.nextInt(10)) : c);
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void testSameResultsAsAllPatterns() throws Exception {
+		String[] templates = new String[] {
+			"9999-99-99", "9999-99-99 99:99:99", "9999-99-99 99:99:99.999", "9999-99-99T99:99:99.999",
+			"9999-99-99T99:99:99.999+9999", "9999-99-99T99:99:99.999-9999", "99.99.9999", "9.99.9999", "9.9.99", "99.99.99",
+			"99.Mai.9999", "99.May.9999", "99/99/9999", "99/99/99", "9/9/99", "99/Jan/9999", "99. December 9999",
+			"99. Dec. 9999", "March 99th 9999", "99th March 9999", "KW 99/9999", "CW 99.9999", "June 9999",
+			"99-99-9999", "99-Oct-9999", "99999999", "999999", "9999", "99.99.9999 99h99m99s", "99.99.9999 99h99m",
+			"99/99/9999 99:99:99 PM", "99/99/9999 99:99:99 am", "99.99.9999 99'99\"", "9999-99-99 999999",
+			"9999-99-99 abcdef", "abc", "99:99", "9999-99-99  99:99:99"
+		};
+		Random random = new Random(42);
+		for (int round = 0; round < 50; round++) {
+			for (String template : templates) {
+				String text = randomDigits(random, template);
+				assertEquals(text, expected(text, null), actual(text, null));
+				assertEquals(text, expected(text, Locale.GERMAN), actual(text, Locale.GERMAN));
+			}
+		}
+	}
+
+	@Test
+	public void testUserPatterns() throws Exception {
+		Random random = new Random(7);
+		String[][] userPatterns = new String[][] {
+			{"dd/MM/yyyy"}, {"yyyyMMddHHmmss"}, {"dd.MM.yyyy HH:mm"}, {"yyyy-MM-dd'T'HH:mm:ssZ"},
+			{"yyyy-MM-dd", "dd/MM/yyyy"}, {null, "dd/MM/yyyy", "dd/MM/yyyy"}
+		};
+		String[] templates = new String[] {
+			"99/99/9999", "99999999999999", "99.99.9999 99:99", "9999-99-99T99:99:99+9999", "9999-99-99T99:99:99+9999",
+			"9999-99-99", "99.99.9999"
+		};
+		for (int round = 0; round < 50; round++) {
+			for (String[] userPattern : userPatterns) {
+				for (String template : templates) {
+					String text = randomDigits(random, template);
+					assertEquals(text + " " + Arrays.toString(userPattern), expected(text, null, userPattern), actual(text, null, userPattern));
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright 2021 Jan Lolling jan.lolling@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jlo.talendcomp.camunda.dmn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.text.ParseException;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestNumberParser {
+
+	private static final String[] TEXTS = new String[] {
+		"0", "-0", "7", "-7", "007", "12345", "-12345", "1,234,567", "1.234.567", "1,2,3",
+		"12.5", "-12.5", "12,5", "0.1", "-0.001", ".5", "5.", "12.0", "12,000", "3000000000",
+		"-3000000000.0", "3000000000.5", "123456789012345678", "1234567890123456789", "9007199254740993.5",
+		"0.0000000000000000000001", "1E5", "1.5E-3", "12abc", "1,,2", ",5", "1 234", "1\u00a0234,5", "1\u202f234,5", "+5", "99999.99"
+	};
+
+	private Object parse(DecimalFormat format, String text, String type) {
+		DecimalFormat f = (DecimalFormat) format.clone();
+		f.setParseBigDecimal(false);
+		try {
+			Number n = f.parse(text);
+			if ("int".equals(type)) {
+				return n.intValue();
+			} else if ("long".equals(type)) {
+				return n.longValue();
+			} else if ("short".equals(type)) {
+				return n.shortValue();
+			} else if ("float".equals(type)) {
+				return n.floatValue();
+			} else {
+				return n.doubleValue();
+			}
+		} catch (ParseException e) {
+			return "ParseException";
+		}
+	}
+
+	private Object parse(NumberParser parser, String text, String type) {
+		try {
+			if ("int".equals(type)) {
+				return parser.parseInt(text);
+			} else if ("long".equals(type)) {
+				return parser.parseLong(text);
+			} else if ("short".equals(type)) {
+				return parser.parseShort(text);
+			} else if ("float".equals(type)) {
+				return parser.parseFloat(text);
+			} else {
+				return parser.parseDouble(text);
+			}
+		} catch (ParseException e) {
+			return "ParseException";
+		}
+	}
+
+	private void assertSameAsDecimalFormat(String locale, String text) {
+		DecimalFormat format = (DecimalFormat) NumberFormat.getInstance(new Locale(locale));
+		NumberParser parser = new NumberParser(format);
+		for (String type : new String[] {"int", "long", "short", "float", "double"}) {
+			assertEquals(locale + " " + type + " '" + text + "'", parse(format, text, type), parse(parser, text, type));
+		}
+	}
+
+	@Test
+	public void testSameAsDecimalFormat() throws Exception {
+		for (String locale : new String[] {"en_UK", "en", "de", "fr", "ch"}) {
+			for (String text : TEXTS) {
+				assertSameAsDecimalFormat(locale, text);
+			}
+		}
+	}
+
+	@Test
+	public void testRandomDecimals() throws Exception {
+		Random random = new Random(42);
+		for (int i = 0; i < 100000; i++) {
+			String text = String.valueOf(random.nextInt(2000000) - 1000000);
+			int scale = random.nextInt(8);
+			if (scale > 0) {
+				StringBuilder sb = new StringBuilder(text).append('.');
+				for (int s = 0; s < scale; s++) {
+					sb.append(random.nextInt(10));
+				}
+				text = sb.toString();
+			}
+			assertSameAsDecimalFormat("en", text);
+		}
+	}
+
+	@Test
+	public void testTypeUtilUsesLocale() throws Exception {
+		TypeUtil typeUtil = new TypeUtil();
+		assertEquals(1234.5d, typeUtil.convertToDouble("1,234.5", null), 0d);
+		assertEquals(1234.5d, typeUtil.convertToDouble("1.234,5", "de"), 0d);
+		assertEquals(Integer.valueOf(1234), typeUtil.convertToInteger("1.234", "de"));
+		assertEquals(Long.valueOf(-42), typeUtil.convertToLong("-42", null));
+		assertTrue(typeUtil.getNumberParser(null).isFastPath());
+	}
+
+}
@@ -0,0 +1,185 @@
+package de.jlo.talendcomp.camunda.dmn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.camunda.bpm.dmn.engine.DmnDecisionResult;
+import org.camunda.bpm.dmn.engine.DmnDecisionResultEntries;
+import org.camunda.bpm.dmn.engine.impl.DmnDecisionResultEntriesImpl;
+import org.camunda.bpm.dmn.engine.impl.DmnDecisionResultImpl;
+import org.camunda.bpm.engine.variable.Variables;
+import org.junit.Test;
+
+public class TestResultCache {
+
+	private DmnDecisionResult createResult(String dish) {
+		DmnDecisionResultEntriesImpl entries = new DmnDecisionResultEntriesImpl();
+		entries.putValue("desiredDish", Variables.stringValue(dish));
+		List<DmnDecisionResultEntries> list = new ArrayList<>();
+		list.add(entries);
+		return new DmnDecisionResultImpl(list);
+	}
+
+	@Test
+	public void testMaxEntries() throws Exception {
+		ResultCache cache = new ResultCache();
+		cache.setMaxEntries(2);
+		cache.put("a", createResult("Roastbeef"));
+		cache.put("b", createResult("Stew"));
+		// touch a to make b the least recently used entry
+		assertNotNull(cache.get("a"));
+		cache.put("c", createResult("Steak"));
+		assertEquals(2, cache.size());
+		assertNull(cache.get("b"));
+		assertNotNull(cache.get("a"));
+		assertNotNull(cache.get("c"));
+		assertEquals(1, cache.getEvictions());
+		assertEquals(3, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	public void testMaxBytes() throws Exception {
+		ResultCache cache = new ResultCache();
+		cache.setMaxEntries(0);
+		cache.setMaxBytes(1000);
+		for (int i = 0; i < 100; i++) {
+			cache.put("key" + i, createResult("Dish" + i));
+		}
+		assertTrue("Memory budget exceeded: " + cache.getEstimatedBytes(), cache.getEstimatedBytes() <= 1000);
+		assertTrue(cache.size() < 100);
+		assertNotNull(cache.get("key99"));
+		assertNull(cache.get("key0"));
+	}
+
+	@Test
+	public void testTimeToLive() throws Exception {
+		ResultCache cache = new ResultCache();
+		cache.setTimeToLiveMillis(50);
+		cache.put("a", createResult("Roastbeef"));
+		assertNotNull(cache.get("a"));
+		Thread.sleep(100);
+		assertNull(cache.get("a"));
+		assertEquals(0, cache.size());
+		assertEquals(1, cache.getEvictions());
+	}
+
+	private CacheKey createKey(String season, int guestCount) {
+		CacheKey key = new CacheKey();
+		key.set("season", season);
+		key.set("guestCount", guestCount);
+		return key;
+	}
+
+	private String getDish(PersistentResultCache.Entry entry) {
+		return entry != null ? (String) entry.result.getSingleResult().getEntry("desiredDish") : null;
+	}
+
+	private File createCacheFile() throws Exception {
+		return new File(Files.createTempDirectory("dmn-results").toFile(), "test" + PersistentResultCache.FILE_EXTENSION);
+	}
+
+	@Test
+	public void testPersistentCacheCompaction() throws Exception {
+		File file = createCacheFile();
+		byte[] contentHash = DecisionSnapshot.hash("dmn".getBytes(StandardCharsets.UTF_8));
+		PersistentResultCache cache = new PersistentResultCache(file, contentHash);
+		for (int i = 0; i < 10; i++) {
+			assertTrue(cache.put(createKey("Winter", 2), createResult("Roastbeef" + i), System.currentTimeMillis()));
+		}
+		assertTrue(cache.put(createKey("Fall", 2), createResult("Spareribs"), System.currentTimeMillis()));
+		assertEquals(2, cache.size());
+		cache.close();
+		long sizeBefore = file.length();
+		// the superseded records take more than the half of the file
+		cache = new PersistentResultCache(file, contentHash);
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getCompactions());
+		assertTrue("File not compacted: " + file.length(), file.length() < sizeBefore / 2);
+		assertEquals("Roastbeef9", getDish(cache.get(createKey("Winter", 2))));
+		assertEquals("Spareribs", getDish(cache.get(createKey("Fall", 2))));
+		assertNull(cache.get(createKey("Winter", 3)));
+		cache.close();
+		cache = new PersistentResultCache(file, contentHash);
+		assertEquals(2, cache.size());
+		assertEquals(0, cache.getCompactions());
+		cache.close();
+	}
+
+	@Test
+	public void testPersistentCacheMaxBytes() throws Exception {
+		File file = createCacheFile();
+		byte[] contentHash = DecisionSnapshot.hash("dmn".getBytes(StandardCharsets.UTF_8));
+		PersistentResultCache cache = new PersistentResultCache(file, contentHash);
+		cache.setMaxBytes(1000);
+		int stored = 0;
+		for (int i = 0; i < 100; i++) {
+			if (cache.put(createKey("Winter", i), createResult("Roastbeef" + i), System.currentTimeMillis())) {
+				stored++;
+			}
+		}
+		assertTrue(stored > 0 && stored < 100);
+		assertTrue("Limit exceeded: " + file.length(), file.length() <= 1000);
+		cache.close();
+		// a lower limit keeps the newest results
+		cache = new PersistentResultCache(file, contentHash);
+		cache.setMaxBytes(500);
+		assertTrue(cache.size() < stored);
+		assertEquals(1, cache.getCompactions());
+		assertTrue("Limit exceeded: " + file.length(), file.length() <= 500);
+		assertEquals("Roastbeef" + (stored - 1), getDish(cache.get(createKey("Winter", stored - 1))));
+		assertNull(cache.get(createKey("Winter", 0)));
+		cache.close();
+	}
+
+	@Test
+	public void testPersistentCacheTimeToLive() throws Exception {
+		File file = createCacheFile();
+		byte[] contentHash = DecisionSnapshot.hash("dmn".getBytes(StandardCharsets.UTF_8));
+		PersistentResultCache cache = new PersistentResultCache(file, contentHash);
+		assertTrue(cache.put(createKey("Winter", 2), createResult("Roastbeef"), System.currentTimeMillis() - 10000));
+		assertTrue(cache.put(createKey("Fall", 2), createResult("Spareribs"), System.currentTimeMillis()));
+		cache.close();
+		cache = new PersistentResultCache(file, contentHash);
+		cache.setTimeToLiveMillis(5000);
+		assertEquals(1, cache.size());
+		assertEquals(1, cache.getCompactions());
+		assertNull(cache.get(createKey("Winter", 2)));
+		assertEquals("Spareribs", getDish(cache.get(createKey("Fall", 2))));
+		cache.close();
+	}
+
+	@Test
+	public void testPersistentCacheInvalidate() throws Exception {
+		File file = createCacheFile();
+		byte[] contentHash = DecisionSnapshot.hash("dmn".getBytes(StandardCharsets.UTF_8));
+		byte[] newContentHash = DecisionSnapshot.hash("changed dmn".getBytes(StandardCharsets.UTF_8));
+		PersistentResultCache cache = new PersistentResultCache(file, contentHash);
+		assertTrue(cache.put(createKey("Winter", 2), createResult("Roastbeef"), System.currentTimeMillis()));
+		// maps the file
+		assertEquals("Roastbeef", getDish(cache.get(createKey("Winter", 2))));
+		cache.invalidate(newContentHash);
+		assertFalse(cache.isDisabled());
+		assertNull(cache.get(createKey("Winter", 2)));
+		assertTrue(cache.put(createKey("Fall", 2), createResult("Spareribs"), System.currentTimeMillis()));
+		cache.close();
+		cache = new PersistentResultCache(file, newContentHash);
+		assertEquals(1, cache.size());
+		assertNull(cache.get(createKey("Winter", 2)));
+		assertEquals("Spareribs", getDish(cache.get(createKey("Fall", 2))));
+		cache.close();
+		cache = new PersistentResultCache(file, contentHash);
+		assertEquals(0, cache.size());
+		cache.close();
+	}
+
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright 2021 Jan Lolling jan.lolling@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.jlo.talendcomp.camunda.dmn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class TestTypeUtil {
+
+	@Test
+	public void testFormatDateSameAsSimpleDateFormat() throws Exception {
+		TypeUtil typeUtil = new TypeUtil();
+		SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+		Random random = new Random(42);
+		long[] times = new long[] {0, -1, GenericDateUtil.ZERO_TIME, -12219292800000L, -12219292800001L, 253402300799999L, 253402300800000L, 400000000000000L, -70000000000000L};
+		for (long time : times) {
+			assertEquals(sdf.format(new Date(time)), typeUtil.convertToString(new Date(time), null));
+		}
+		for (int i = 0; i < 100000; i++) {
+			// from year 1000 until year 3000
+			long time = (long) ((random.nextDouble() * 2000 - 970) * 365.25 * 86400000L);
+			assertEquals(sdf.format(new Date(time)), typeUtil.convertToString(new Date(time), null));
+		}
+	}
+
+	@Test
+	public void testFormatDateWithLocaleCalendar() throws Exception {
+		Locale defaultLocale = Locale.getDefault();
+		try {
+			for (Locale locale : new Locale[] {new Locale("th", "TH"), Locale.forLanguageTag("ja-JP-u-ca-japanese"), Locale.forLanguageTag("ar-EG"), Locale.forLanguageTag("fa-IR"), Locale.GERMANY}) {
+				Locale.setDefault(locale);
+				TypeUtil typeUtil = new TypeUtil();
+				SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+				for (long time : new long[] {1600000000000L, 0, -12219292800001L}) {
+					assertEquals(locale.toString(), sdf.format(new Date(time)), typeUtil.convertToString(new Date(time), null));
+				}
+			}
+			assertFalse(TypeUtil.isIsoLocale(new Locale("th", "TH")));
+			assertTrue(TypeUtil.isIsoLocale(Locale.GERMANY));
+		} finally {
+			Locale.setDefault(defaultLocale);
+		}
+	}
+
+	@Test
+	public void testSharedByThreads() throws Exception {
+		final TypeUtil typeUtil = new TypeUtil();
+		final DecimalFormat de = (DecimalFormat) NumberFormat.getInstance(new Locale("de"));
+		final DecimalFormat en = (DecimalFormat) NumberFormat.getInstance(new Locale("en_UK"));
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Integer>> futures = new ArrayList<>();
+			for (int t = 0; t < 8; t++) {
+				final int seed = t;
+				futures.add(executor.submit(new Callable<Integer>() {
+
+					@Override
+					public Integer call() throws Exception {
+						Random random = new Random(seed);
+						// the reference formats are not thread safe
+						DecimalFormat deRef = (DecimalFormat) de.clone();
+						DecimalFormat enRef = (DecimalFormat) en.clone();
+						int count = 0;
+						for (int i = 0; i < 20000; i++) {
+							double value = Math.round(random.nextDouble() * 100000000d) / 100d;
+							String textDe = typeUtil.convertToString(value, "de");
+							String textEn = typeUtil.convertToString(value, null);
+							assertEquals(deRef.format(value), textDe);
+							assertEquals(enRef.format(value), textEn);
+							assertEquals(value, typeUtil.convertToDouble(textDe, "de"), 0d);
+							assertEquals(value, typeUtil.convertToBigDecimal(textEn, null).doubleValue(), 0d);
+							count++;
+						}
+						return count;
+					}
+
+				}));
+			}
+			for (Future<Integer> f : futures) {
+				assertEquals(20000, (int) f.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+}
@@ -0,0 +1,65 @@
+package de.jlo.talendcomp.camunda.dmn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+import org.junit.Test;
+
+public class TestUnaryTestCompiler {
+
+	private static int test(String expression, Object value) {
+		return UnaryTestCompiler.compile(expression).test(value);
+	}
+
+	@Test
+	public void testLiterals() throws Exception {
+		assertEquals(CompiledUnaryTest.MATCH, test("\"Winter\"", "Winter"));
+		assertEquals(CompiledUnaryTest.NO_MATCH, test("\"Winter\"", "Summer"));
+		assertEquals(CompiledUnaryTest.MATCH, test("\"Kupfer\",\"Messing\"", "Messing"));
+		assertEquals(CompiledUnaryTest.MATCH, test("true", Boolean.TRUE));
+		assertEquals(CompiledUnaryTest.MATCH, test("10", 10l));
+		assertEquals(CompiledUnaryTest.MATCH, test("10", new BigDecimal("10.00")));
+		assertEquals(CompiledUnaryTest.MATCH, test("-", null));
+		assertEquals(CompiledUnaryTest.MATCH, test(" ", "x"));
+	}
+
+	@Test
+	public void testComparisonsAndRanges() throws Exception {
+		assertEquals(CompiledUnaryTest.MATCH, test("<= 8", 8));
+		assertEquals(CompiledUnaryTest.NO_MATCH, test("< 8", 8));
+		assertEquals(CompiledUnaryTest.MATCH, test(">5000", 5000.5d));
+		assertEquals(CompiledUnaryTest.MATCH, test("[5..8]", 5));
+		assertEquals(CompiledUnaryTest.NO_MATCH, test("]5..8]", 5));
+		assertEquals(CompiledUnaryTest.NO_MATCH, test("[5..8)", 8));
+		assertEquals(CompiledUnaryTest.MATCH, test("[-1.5..2.5]", -1));
+		assertEquals(CompiledUnaryTest.MATCH, test("< 0, > 10", 11));
+	}
+
+	@Test
+	public void testNot() throws Exception {
+		assertEquals(CompiledUnaryTest.NO_MATCH, test("not(\"Plaste\")", "Plaste"));
+		assertEquals(CompiledUnaryTest.MATCH, test("not(\"Fall\", \"Winter\", \"Spring\", \"Summer\")", "Monsoon"));
+	}
+
+	@Test
+	public void testUnknownForFeel() throws Exception {
+		// values the compiled tests cannot decide exactly like FEEL
+		assertEquals(CompiledUnaryTest.UNKNOWN, test("\"Winter\"", null));
+		assertEquals(CompiledUnaryTest.UNKNOWN, test("10", "10"));
+		assertEquals(CompiledUnaryTest.UNKNOWN, test("< 10", new Date()));
+		assertEquals(CompiledUnaryTest.UNKNOWN, test("not(\"a\")", 1));
+	}
+
+	@Test
+	public void testNotCompiled() throws Exception {
+		assertNull(UnaryTestCompiler.compile("date and time(\"2021-01-01T00:00:00\")"));
+		assertNull(UnaryTestCompiler.compile("\"a\\\"b\""));
+		assertNull(UnaryTestCompiler.compile("guestCount + 2"));
+		assertNull(UnaryTestCompiler.compile("[1..x]"));
+		assertNull(UnaryTestCompiler.compile("10 10"));
+	}
+
+}